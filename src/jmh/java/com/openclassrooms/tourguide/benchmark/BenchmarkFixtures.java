@@ -0,0 +1,103 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.user.User;
+
+/**
+ * Données et doublures partagées par les benchmarks : catalogue synthétique, utilisateurs avec historique,
+ * et versions sans latence de {@link GpsUtil} et {@link RewardCentral}.
+ *
+ * <p>Les positions sont tirées avec une graine fixe pour que deux exécutions mesurent le même travail.</p>
+ */
+final class BenchmarkFixtures {
+
+	private static final long SEED = 42L;
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * @param size nombre d'attractions
+	 * @return catalogue de {@code size} attractions réparties sur le globe
+	 */
+	static List<Attraction> catalog(int size) {
+		Random random = new Random(SEED);
+		List<Attraction> attractions = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			attractions.add(new Attraction("Attraction " + i, "City", "State", randomLatitude(random), randomLongitude(random)));
+		}
+		return Collections.unmodifiableList(attractions);
+	}
+
+	/**
+	 * Crée des utilisateurs dont une partie des visites tombe sur des attractions du catalogue.
+	 *
+	 * @param count       nombre d'utilisateurs
+	 * @param historySize nombre de visites par utilisateur
+	 * @param catalog     catalogue d'attractions
+	 * @return utilisateurs
+	 */
+	static List<User> users(int count, int historySize, List<Attraction> catalog) {
+		Random random = new Random(SEED);
+		List<User> users = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			User user = new User(UUID.randomUUID(), "benchUser" + i, "000", "benchUser" + i + "@tourGuide.com");
+			for (int v = 0; v < historySize; v++) {
+				user.addToVisitedLocations(visit(user, random, catalog));
+			}
+			users.add(user);
+		}
+		return users;
+	}
+
+	/**
+	 * @return visite aléatoire, sur une attraction du catalogue une fois sur dix
+	 */
+	static VisitedLocation visit(User user, Random random, List<Attraction> catalog) {
+		Location location = (random.nextInt(10) == 0)
+				? catalog.get(random.nextInt(catalog.size()))
+				: new Location(randomLatitude(random), randomLongitude(random));
+		return new VisitedLocation(user.getUserId(), location, new Date());
+	}
+
+	static double randomLatitude(Random random) {
+		return -85.05112878 + random.nextDouble() * 2 * 85.05112878;
+	}
+
+	static double randomLongitude(Random random) {
+		return -180 + random.nextDouble() * 360;
+	}
+
+	/** {@link GpsUtil} sans latence, au catalogue fixe. */
+	static final class StubGpsUtil extends GpsUtil {
+		private final List<Attraction> catalog;
+
+		StubGpsUtil(List<Attraction> catalog) {
+			this.catalog = catalog;
+		}
+
+		@Override
+		public List<Attraction> getAttractions() {
+			return catalog;
+		}
+	}
+
+	/** {@link RewardCentral} sans latence, aux points déterministes. */
+	static final class StubRewardCentral extends RewardCentral {
+		@Override
+		public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+			return Math.floorMod(attractionId.hashCode() ^ userId.hashCode(), 1000) + 1;
+		}
+	}
+}
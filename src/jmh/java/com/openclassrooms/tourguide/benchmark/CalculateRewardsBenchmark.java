@@ -0,0 +1,88 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.benchmark.BenchmarkFixtures.StubGpsUtil;
+import com.openclassrooms.tourguide.benchmark.BenchmarkFixtures.StubRewardCentral;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.User;
+
+/**
+ * Coût CPU de {@link RewardsService#calculateRewards(User)} avec des entrées/sorties sans latence.
+ *
+ * <ul>
+ *   <li>{@link #fullHistory()} : changement de règles à chaque appel, tout l'historique est réévalué
+ *       (index spatial + distances ; les récompenses déjà acquises ne rappellent pas RewardCentral).</li>
+ *   <li>{@link #incremental()} : une nouvelle visite par utilisateur puis évaluation incrémentale (cas du tracking),
+ *       avec un historique borné à {@code historySize}.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateRewardsBenchmark {
+
+	@Param({ "1", "100" })
+	public int userCount;
+
+	@Param({ "10", "1000" })
+	public int historySize;
+
+	@Param({ "26", "1000" })
+	public int catalogSize;
+
+	private RewardsService rewardsService;
+	private List<Attraction> catalog;
+	private List<User> users;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		catalog = BenchmarkFixtures.catalog(catalogSize);
+		rewardsService = new RewardsService(new StubGpsUtil(catalog), new StubRewardCentral());
+		users = BenchmarkFixtures.users(userCount, historySize, catalog);
+		users.forEach(user -> user.setLocationHistoryCapacity(historySize));
+		random = new Random(42L);
+	}
+
+	@Benchmark
+	public int fullHistory() {
+		rewardsService.setDefaultProximityBuffer();
+		int rewards = 0;
+		for (User user : users) {
+			rewardsService.calculateRewards(user);
+			rewards += user.getUserRewards().size();
+		}
+		return rewards;
+	}
+
+	@Benchmark
+	public int incremental() {
+		int rewards = 0;
+		for (User user : users) {
+			user.addToVisitedLocations(BenchmarkFixtures.visit(user, random, catalog));
+			rewardsService.calculateRewards(user);
+			rewards += user.getUserRewards().size();
+		}
+		return rewards;
+	}
+}
@@ -0,0 +1,73 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import gpsUtil.location.Location;
+import com.openclassrooms.tourguide.benchmark.BenchmarkFixtures.StubGpsUtil;
+import com.openclassrooms.tourguide.benchmark.BenchmarkFixtures.StubRewardCentral;
+import com.openclassrooms.tourguide.geo.DistanceMode;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+/**
+ * Coût de {@link RewardsService#getDistance(Location, Location)} sur un lot de paires de points aléatoires,
+ * pour chaque {@link DistanceMode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+	// Nombre de paires (puissance de deux pour un parcours circulaire sans division)
+	private static final int PAIRS = 1024;
+
+	@Param({ "HAVERSINE", "EQUIRECTANGULAR", "LAW_OF_COSINES" })
+	public DistanceMode mode;
+
+	private RewardsService rewardsService;
+	private Location[] from;
+	private Location[] to;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		rewardsService = new RewardsService(new StubGpsUtil(BenchmarkFixtures.catalog(26)), new StubRewardCentral());
+		rewardsService.setDistanceMode(mode);
+		Random random = new Random(42L);
+		from = new Location[PAIRS];
+		to = new Location[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			from[i] = new Location(BenchmarkFixtures.randomLatitude(random), BenchmarkFixtures.randomLongitude(random));
+			to[i] = new Location(BenchmarkFixtures.randomLatitude(random), BenchmarkFixtures.randomLongitude(random));
+		}
+	}
+
+	@Benchmark
+	public double getDistance() {
+		int i = next++ & (PAIRS - 1);
+		return rewardsService.getDistance(from[i], to[i]);
+	}
+
+	@Benchmark
+	public void getDistanceBatch(Blackhole blackhole) {
+		for (int i = 0; i < PAIRS; i++) {
+			blackhole.consume(rewardsService.getDistance(from[i], to[i]));
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import com.openclassrooms.tourguide.benchmark.BenchmarkFixtures.StubGpsUtil;
+import com.openclassrooms.tourguide.benchmark.BenchmarkFixtures.StubRewardCentral;
+import com.openclassrooms.tourguide.geo.AttractionDistance;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+
+/**
+ * Sélection des attractions les plus proches : recherche k-NN de {@link RewardsService#getNearestAttractions(Location, int)}
+ * comparée au tri complet du catalogue (référence).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestAttractionsBenchmark {
+
+	private static final int LOCATIONS = 256;
+
+	@Param({ "26", "1000", "10000" })
+	public int catalogSize;
+
+	private RewardsService rewardsService;
+	private List<Attraction> catalog;
+	private Location[] locations;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		catalog = BenchmarkFixtures.catalog(catalogSize);
+		rewardsService = new RewardsService(new StubGpsUtil(catalog), new StubRewardCentral());
+		Random random = new Random(42L);
+		locations = new Location[LOCATIONS];
+		for (int i = 0; i < LOCATIONS; i++) {
+			locations[i] = new Location(BenchmarkFixtures.randomLatitude(random), BenchmarkFixtures.randomLongitude(random));
+		}
+	}
+
+	@Benchmark
+	public List<AttractionDistance> nearest() {
+		return rewardsService.getNearestAttractions(nextLocation(), TourGuideService.NEARBY_ATTRACTIONS_COUNT);
+	}
+
+	@Benchmark
+	public List<Attraction> fullSortBaseline() {
+		Location location = nextLocation();
+		return catalog.stream()
+				.sorted(Comparator.comparingDouble(attraction -> rewardsService.getDistance(attraction, location)))
+				.limit(TourGuideService.NEARBY_ATTRACTIONS_COUNT)
+				.collect(Collectors.toList());
+	}
+
+	private Location nextLocation() {
+		return locations[next++ % LOCATIONS];
+	}
+}
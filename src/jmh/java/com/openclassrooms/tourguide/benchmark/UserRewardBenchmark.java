@@ -0,0 +1,77 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+
+/**
+ * Coût de {@link User#addUserReward(UserReward)} : ajouts de nouvelles récompenses puis doublons refusés,
+ * sur un seul thread et en concurrence (4 threads sur le même utilisateur).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRewardBenchmark {
+
+	@Param({ "26", "1000" })
+	public int catalogSize;
+
+	private UserReward[] rewards;
+	private User user;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		List<Attraction> catalog = BenchmarkFixtures.catalog(catalogSize);
+		UUID userId = UUID.randomUUID();
+		rewards = new UserReward[catalogSize];
+		for (int i = 0; i < catalogSize; i++) {
+			Attraction attraction = catalog.get(i);
+			rewards[i] = new UserReward(new VisitedLocation(userId, attraction, new Date()), attraction, i);
+		}
+	}
+
+	// Utilisateur neuf à chaque itération : chaque itération mesure les premiers ajouts puis les doublons
+	@Setup(Level.Iteration)
+	public void newUser() {
+		user = new User(UUID.randomUUID(), "benchUser", "000", "benchUser@tourGuide.com");
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	public void addUserReward(Cursor cursor) {
+		user.addUserReward(rewards[cursor.next++ % rewards.length]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void addUserRewardContended(Cursor cursor) {
+		user.addUserReward(rewards[cursor.next++ % rewards.length]);
+	}
+}
@@ -0,0 +1,50 @@
+package com.openclassrooms.tourguide.DTO;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * DTO renvoyé ligne par ligne par l'endpoint groupé /getUsersSummary (NDJSON).
+ *
+ * <p>Résumé d'un utilisateur pour un tableau de bord :</p>
+ * <ul>
+ *   <li>Identité (id, nom)</li>
+ *   <li>Dernière position connue et son horodatage ({@code null} si l'utilisateur n'a encore aucune visite :
+ *       l'endpoint groupé ne déclenche pas d'appel GPS)</li>
+ *   <li>Nombre de récompenses et total des points</li>
+ * </ul>
+ *
+ * <p><b>Remarque :</b> champs publics pour une sérialisation JSON simple via Jackson, comme
+ * {@link NearbyAttractionDto}.</p>
+ */
+public class UserSummaryDto {
+    public UUID userId;
+    public String userName;
+    public Double latitude;
+    public Double longitude;
+    public Date timeVisited;
+    public int rewardCount;
+    public int rewardPoints;
+
+    /**
+     * Construit le résumé d'un utilisateur.
+     *
+     * @param userId       identifiant de l'utilisateur
+     * @param userName     nom d'utilisateur
+     * @param latitude     latitude de la dernière position, ou {@code null}
+     * @param longitude    longitude de la dernière position, ou {@code null}
+     * @param timeVisited  horodatage de la dernière position, ou {@code null}
+     * @param rewardCount  nombre de récompenses
+     * @param rewardPoints total des points de récompense
+     */
+    public UserSummaryDto(UUID userId, String userName, Double latitude, Double longitude, Date timeVisited,
+                          int rewardCount, int rewardPoints) {
+        this.userId = userId;
+        this.userName = userName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.timeVisited = timeVisited;
+        this.rewardCount = rewardCount;
+        this.rewardPoints = rewardPoints;
+    }
+}
@@ -1,22 +1,29 @@
 package com.openclassrooms.tourguide;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.stream.Collectors;
-import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import com.openclassrooms.tourguide.DTO.NearbyAttractionDto;
-import gpsUtil.location.Attraction;
-import gpsUtil.location.Location;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.DTO.NearbyAttractionDto;
+import com.openclassrooms.tourguide.DTO.UserSummaryDto;
+import com.openclassrooms.tourguide.cluster.PartitionFanOut;
+import com.openclassrooms.tourguide.cluster.PartitionForwardingFilter;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
 import com.openclassrooms.tourguide.user.UserReward;
-import com.openclassrooms.tourguide.service.RewardsService;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 import tripPricer.Provider;
@@ -29,6 +36,14 @@ import tripPricer.Provider;
  *   <li>Exposer les endpoints pour récupérer la position d’un utilisateur, ses récompenses, ses offres de voyage.</li>
  *   <li>Retourner les <b>5 attractions les plus proches</b> du dernier point de l’utilisateur, avec un payload enrichi
  *       (noms, lat/long, distance en miles, points de récompense).</li>
+ * </ul>
+ *
+ * <p>Les endpoints qui appellent des services distants ({@code /getLocation}, {@code /getNearbyAttractions},
+ * {@code /getTripDeals}) renvoient un {@link CompletableFuture} : Spring MVC libère le thread Tomcat et écrit la
+ * réponse lorsque le futur se termine, sur les pools dédiés du service (GPS, RewardCentral, TripPricer).</p>
+ *
+ * <p>{@code /getUsersSummary} résume tous les utilisateurs (ou une liste de noms) en une seule requête, en flux
+ * NDJSON ; dans un déploiement partitionné, la réponse est complétée auprès des autres nœuds.</p>
  */
 @RestController
 public class TourGuideController {
@@ -37,7 +52,10 @@ public class TourGuideController {
     TourGuideService tourGuideService;
 
     @Autowired
-    private RewardsService rewardsService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PartitionFanOut partitionFanOut;
 
     /**
      * Endpoint de santé / accueil.
@@ -50,14 +68,15 @@ public class TourGuideController {
 
     /**
      * Renvoie la dernière position connue de l’utilisateur (ou la calcule si nécessaire).
+     * <p>Réponse asynchrone : si un appel GPS est nécessaire, le thread Tomcat est libéré pendant l’attente.</p>
      *
      * @param userName nom d’utilisateur (ex. "internalUser0")
-     * @return une {@link VisitedLocation}
+     * @return futur d’une {@link VisitedLocation}
      * @throws ResponseStatusException 404 si l’utilisateur est introuvable
      */
     @RequestMapping("/getLocation")
-    public VisitedLocation getLocation(@RequestParam String userName) {
-        return tourGuideService.getUserLocation(getUser(userName));
+    public CompletableFuture<VisitedLocation> getLocation(@RequestParam String userName) {
+        return tourGuideService.getUserLocationAsync(getUser(userName));
     }
 
     /**
@@ -68,42 +87,16 @@ public class TourGuideController {
      *   <li>Lat/Long de l’attraction</li>
      *   <li>Lat/Long de l’utilisateur</li>
      *   <li>Distance (miles)</li>
-     *   <li>Points de récompense (via RewardCentral)</li>
+     *   <li>Points de récompense (via RewardCentral, les 5 demandes en parallèle)</li>
      * </ul>
      *
      * @param userName nom d’utilisateur
-     * @return liste de 5 {@link NearbyAttractionDto}
+     * @return futur de la liste de 5 {@link NearbyAttractionDto}
      * @throws ResponseStatusException 404 si l’utilisateur est introuvable
      */
     @RequestMapping("/getNearbyAttractions")
-    public List<NearbyAttractionDto> getNearbyAttractions(@RequestParam String userName) {
-        // 1) Récupérer l’utilisateur et sa dernière position
-        User user = tourGuideService.getUser(userName);
-        VisitedLocation visitedLocation = tourGuideService.getUserLocation(user);
-        Location userLocation = visitedLocation.location;
-
-        // 2) Trier toutes les attractions par distance croissante au point utilisateur, en garder 5
-        return tourGuideService.getAllAttractions().stream()
-                .sorted(Comparator.comparingDouble(attraction ->
-                        rewardsService.getDistance(userLocation, new Location(attraction.latitude, attraction.longitude))
-                ))
-                .limit(5)
-                // 3) Mapper vers un DTO enrichi (distance + points)
-                .map(attraction -> {
-                    double distance = rewardsService.getDistance(
-                            userLocation, new Location(attraction.latitude, attraction.longitude));
-                    int rewardPoints = rewardsService.getRewardPoints(attraction, user);
-                    return new NearbyAttractionDto(
-                            attraction.attractionName,
-                            attraction.latitude,
-                            attraction.longitude,
-                            userLocation.latitude,
-                            userLocation.longitude,
-                            distance,
-                            rewardPoints
-                    );
-                })
-                .collect(Collectors.toList());
+    public CompletableFuture<List<NearbyAttractionDto>> getNearbyAttractions(@RequestParam String userName) {
+        return tourGuideService.getNearbyAttractionsAsync(getUser(userName));
     }
 
     /**
@@ -118,14 +111,73 @@ public class TourGuideController {
     }
 
     /**
-     * Renvoie les offres de voyage (10 éléments) proposées à l’utilisateur.
+     * Renvoie les offres de voyage (10 éléments) proposées à l’utilisateur (réponse asynchrone).
      * @param userName nom d’utilisateur
-     * @return liste de {@link Provider}
+     * @return futur de la liste de {@link Provider}
      * @throws ResponseStatusException 404 si l’utilisateur est introuvable
      */
     @RequestMapping("/getTripDeals")
-    public List<Provider> getTripDeals(@RequestParam String userName) {
-        return tourGuideService.getTripDeals(getUser(userName));
+    public CompletableFuture<List<Provider>> getTripDeals(@RequestParam String userName) {
+        return tourGuideService.getTripDealsAsync(getUser(userName));
+    }
+
+    /**
+     * Renvoie en un seul appel le résumé de tous les utilisateurs, ou des noms fournis : dernière position connue,
+     * nombre et total des récompenses.
+     * <p>
+     * Réponse en flux NDJSON (un objet JSON {@link UserSummaryDto} par ligne), écrite au fil du parcours du registre
+     * des utilisateurs : la liste complète n’est jamais construite en mémoire. Les noms inconnus sont ignorés.
+     * Les utilisateurs des autres nœuds suivent, lus auprès de leur propriétaire ({@link PartitionFanOut}), sauf
+     * pour une requête déjà transmise par un nœud.
+     * </p>
+     *
+     * @param userNames   noms d’utilisateur (paramètre répété ou séparé par des virgules), tous si absent
+     * @param forwardedBy nœud émetteur d’une requête transmise (seuls les utilisateurs locaux sont alors résumés)
+     * @return flux NDJSON des résumés
+     */
+    @GetMapping("/getUsersSummary")
+    public ResponseEntity<StreamingResponseBody> getUsersSummary(
+            @RequestParam(required = false) List<String> userNames,
+            @RequestHeader(value = PartitionForwardingFilter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return streamUsersSummary(userNames, forwardedBy == null);
+    }
+
+    /**
+     * Variante POST de {@link #getUsersSummary(List, String)} pour les longues listes de noms (corps JSON : tableau
+     * de noms).
+     *
+     * @param userNames   noms d’utilisateur
+     * @param forwardedBy nœud émetteur d’une requête transmise (seuls les utilisateurs locaux sont alors résumés)
+     * @return flux NDJSON des résumés
+     */
+    @PostMapping("/getUsersSummary")
+    public ResponseEntity<StreamingResponseBody> postUsersSummary(@RequestBody List<String> userNames,
+            @RequestHeader(value = PartitionForwardingFilter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return streamUsersSummary(userNames, forwardedBy == null);
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamUsersSummary(List<String> userNames, boolean fanOut) {
+        ObjectWriter writer = objectMapper.writerFor(UserSummaryDto.class);
+        StreamingResponseBody body = out -> {
+            try {
+                tourGuideService.forEachUserSummary(userNames, summary -> {
+                    try {
+                        out.write(writer.writeValueAsBytes(summary));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (fanOut) {
+                partitionFanOut.streamSummaries(userNames, out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     /**
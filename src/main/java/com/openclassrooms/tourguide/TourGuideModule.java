@@ -1,10 +1,14 @@
 package com.openclassrooms.tourguide;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import gpsUtil.GpsUtil;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.cluster.NodePartition;
 import com.openclassrooms.tourguide.service.RewardsService;
 
 @Configuration
@@ -24,5 +28,36 @@ public class TourGuideModule {
 	public RewardCentral getRewardCentral() {
 		return new RewardCentral();
 	}
+
+	@Bean
+	public NodePartition getNodePartition(
+			@Value("${tourguide.cluster.node-id:}") String nodeId,
+			@Value("${tourguide.cluster.nodes:}") String nodes,
+			@Value("${tourguide.cluster.node-url:}") String nodeUrl,
+			@Value("${server.port:8080}") int port,
+			@Value("${tourguide.cluster.virtual-nodes:" + NodePartition.DEFAULT_VIRTUAL_NODES + "}") int virtualNodes) {
+		// Sans URL configurée, URL provisoire : corrigée au démarrage du serveur (voir getNodeUrlAdvertiser)
+		return NodePartition.configure(nodeId, nodes, nodeUrl.isBlank() ? "http://localhost:" + port : nodeUrl,
+				virtualNodes);
+	}
+
+	/**
+	 * Sans {@code tourguide.cluster.node-url}, publie l'URL de ce nœud avec le port effectif du serveur, connu
+	 * seulement au démarrage ({@code server.port=0} : port aléatoire).
+	 */
+	@Bean
+	public ApplicationListener<WebServerInitializedEvent> getNodeUrlAdvertiser(NodePartition partition,
+			@Value("${tourguide.cluster.node-url:}") String nodeUrl) {
+		// Classe anonyme plutôt que lambda : Spring en lit le type d'événement
+		return new ApplicationListener<WebServerInitializedEvent>() {
+			@Override
+			public void onApplicationEvent(WebServerInitializedEvent event) {
+				// Le serveur de gestion (actuator sur un port distinct) ne sert pas les requêtes transmises
+				if (nodeUrl.isBlank() && !"management".equals(event.getApplicationContext().getServerNamespace())) {
+					partition.advertise("http://localhost:" + event.getWebServer().getPort());
+				}
+			}
+		};
+	}
 	
 }
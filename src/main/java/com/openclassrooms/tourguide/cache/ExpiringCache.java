@@ -0,0 +1,259 @@
+package com.openclassrooms.tourguide.cache;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache borné en mémoire, avec durée de vie (TTL) et regroupement des chargements concurrents.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Chaque entrée expire {@code ttl} après son chargement ; elle est alors rechargée au prochain accès.</li>
+ *   <li>Au-delà de {@code maxSize} entrées, les plus anciennes sont évincées (ordre de chargement, qui est aussi
+ *       l'ordre d'expiration puisque le TTL est commun).</li>
+ *   <li>Les demandes concurrentes d'une même clé absente sont regroupées : un seul appel au chargeur,
+ *       les autres threads attendent son résultat (ou reçoivent le même futur avec {@link #getAsync}).
+ *       Un chargement en échec n'est pas mis en cache.</li>
+ *   <li>Option <i>stale-if-error</i> : une entrée expirée est conservée {@code staleIfError} de plus ; si son
+ *       rechargement échoue (service distant en panne, circuit ouvert), l'ancienne valeur est servie et la
+ *       demande suivante retente le chargement.</li>
+ *   <li>Compteurs de succès, d'échecs (chargements), de regroupements, d'évictions et de valeurs périmées servies
+ *       pour le suivi.</li>
+ * </ul>
+ *
+ * @param <K> type des clés (doit définir {@code equals}/{@code hashCode})
+ * @param <V> type des valeurs
+ */
+public class ExpiringCache<K, V> {
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final long staleNanos;
+	private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+	// Entrées dans l'ordre de chargement (peut contenir des entrées déjà remplacées, ignorées à l'éviction)
+	private final Queue<Entry<K, V>> loadOrder = new ConcurrentLinkedQueue<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder staleServed = new LongAdder();
+
+	/**
+	 * @param maxSize nombre maximal d'entrées (&gt;= 1)
+	 * @param ttl     durée de vie d'une entrée (&gt; 0)
+	 */
+	public ExpiringCache(int maxSize, Duration ttl) {
+		this(maxSize, ttl, Duration.ZERO);
+	}
+
+	/**
+	 * @param maxSize      nombre maximal d'entrées (&gt;= 1)
+	 * @param ttl          durée de vie d'une entrée (&gt; 0)
+	 * @param staleIfError durée supplémentaire pendant laquelle une valeur expirée remplace un rechargement en
+	 *                     échec (&gt;= 0)
+	 */
+	public ExpiringCache(int maxSize, Duration ttl, Duration staleIfError) {
+		if (maxSize < 1 || ttl.isNegative() || ttl.isZero() || staleIfError.isNegative()) {
+			throw new IllegalArgumentException("Paramètres de cache invalides : maxSize=" + maxSize + ", ttl=" + ttl
+					+ ", staleIfError=" + staleIfError);
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = ttl.toNanos();
+		this.staleNanos = staleIfError.toNanos();
+	}
+
+	/**
+	 * Renvoie la valeur en cache, ou la charge (une seule fois pour tous les appelants concurrents).
+	 *
+	 * @param key    clé
+	 * @param loader chargement de la valeur si absente ou expirée
+	 * @return valeur associée à la clé
+	 */
+	public V get(K key, Supplier<V> loader) {
+		return await(getAsync(key, () -> CompletableFuture.completedFuture(loader.get())));
+	}
+
+	/**
+	 * Version asynchrone de {@link #get(Object, Supplier)} : renvoie le futur de la valeur sans bloquer.
+	 * <p>Tant que le chargement est en cours, les demandes de la même clé reçoivent le même futur.</p>
+	 *
+	 * @param key    clé
+	 * @param loader lancement du chargement si la valeur est absente ou expirée
+	 * @return futur de la valeur associée à la clé
+	 */
+	public CompletableFuture<V> getAsync(K key, Supplier<CompletableFuture<V>> loader) {
+		while (true) {
+			long now = System.nanoTime();
+			Entry<K, V> entry = entries.get(key);
+			Entry<K, V> fallback = null;
+			if (entry != null) {
+				if (!entry.isExpired(now)) {
+					if (entry.value.isDone()) {
+						hits.increment();
+					} else {
+						coalesced.increment();
+					}
+					return entry.value;
+				}
+				if (!entry.isLoaded() || entry.isDiscardable(now, staleNanos)) {
+					if (entries.remove(key, entry)) {
+						evictions.increment();
+					}
+					continue;
+				}
+				// Expirée mais encore utilisable en secours : remplacée par le rechargement
+				fallback = entry;
+			}
+
+			Entry<K, V> created = new Entry<>(key, now + ttlNanos, fallback);
+			if ((fallback == null) ? entries.putIfAbsent(key, created) != null : !entries.replace(key, fallback, created)) {
+				continue;
+			}
+			misses.increment();
+			loadOrder.add(created);
+			evictOldest(now);
+			load(created, loader);
+			return created.value;
+		}
+	}
+
+	/** Vide le cache (les compteurs sont conservés). */
+	public void clear() {
+		entries.clear();
+		loadOrder.clear();
+	}
+
+	/** @return nombre d'entrées actuellement en cache (y compris en cours de chargement) */
+	public int size() {
+		return entries.size();
+	}
+
+	/** @return nombre d'accès servis par une valeur déjà chargée */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/** @return nombre de chargements (appels au chargeur) */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/** @return nombre d'accès ayant attendu un chargement déjà en cours pour la même clé */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/** @return nombre d'entrées évincées (taille maximale ou expiration) */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/** @return nombre de rechargements en échec remplacés par la valeur expirée */
+	public long getStaleCount() {
+		return staleServed.sum();
+	}
+
+	// Un chargement en échec est retiré du cache (la demande suivante relancera le chargeur) ; s'il remplaçait une
+	// valeur encore utilisable en secours, celle-ci est servie et remise en place
+	private void load(Entry<K, V> entry, Supplier<CompletableFuture<V>> loader) {
+		CompletableFuture<V> loading;
+		try {
+			loading = loader.get();
+		} catch (RuntimeException | Error e) {
+			if (!serveStale(entry)) {
+				entries.remove(entry.key, entry);
+				entry.value.completeExceptionally(e);
+				throw e;
+			}
+			return;
+		}
+		loading.whenComplete((value, failure) -> {
+			if (failure == null) {
+				entry.fallback = null;
+				entry.value.complete(value);
+			} else if (!serveStale(entry)) {
+				entries.remove(entry.key, entry);
+				entry.value.completeExceptionally(unwrap(failure));
+			}
+		});
+	}
+
+	private boolean serveStale(Entry<K, V> entry) {
+		Entry<K, V> fallback = entry.fallback;
+		if (fallback == null) {
+			return false;
+		}
+		entry.fallback = null;
+		if (entries.replace(entry.key, entry, fallback)) {
+			loadOrder.add(fallback);
+		}
+		staleServed.increment();
+		entry.value.complete(fallback.value.join());
+		return true;
+	}
+
+	private static Throwable unwrap(Throwable failure) {
+		return (failure instanceof CompletionException && failure.getCause() != null) ? failure.getCause() : failure;
+	}
+
+	private V await(CompletableFuture<V> value) {
+		try {
+			return value.join();
+		} catch (CompletionException e) {
+			// Relance l'erreur d'origine du chargement partagé
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	// Retire en tête de file les entrées remplacées ou expirées, puis les plus anciennes au-delà de maxSize
+	private void evictOldest(long now) {
+		Entry<K, V> oldest;
+		while ((oldest = loadOrder.peek()) != null) {
+			boolean stale = entries.get(oldest.key) != oldest;
+			if (!stale && !oldest.isDiscardable(now, staleNanos) && entries.size() <= maxSize) {
+				return;
+			}
+			if (loadOrder.remove(oldest) && !stale && entries.remove(oldest.key, oldest)) {
+				evictions.increment();
+			}
+		}
+	}
+
+	// Valeur (éventuellement en cours de chargement), son échéance et l'entrée expirée qu'elle remplace
+	private static final class Entry<K, V> {
+		final K key;
+		final CompletableFuture<V> value = new CompletableFuture<>();
+		final long expiresAtNanos;
+		volatile Entry<K, V> fallback;
+
+		Entry(K key, long expiresAtNanos, Entry<K, V> fallback) {
+			this.key = key;
+			this.expiresAtNanos = expiresAtNanos;
+			this.fallback = fallback;
+		}
+
+		boolean isExpired(long now) {
+			return now - expiresAtNanos >= 0;
+		}
+
+		boolean isLoaded() {
+			return value.isDone() && !value.isCompletedExceptionally();
+		}
+
+		// Expirée et au-delà de la durée de secours
+		boolean isDiscardable(long now, long staleNanos) {
+			return now - expiresAtNanos - staleNanos >= 0;
+		}
+	}
+}
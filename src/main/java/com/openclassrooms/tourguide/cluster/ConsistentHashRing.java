@@ -0,0 +1,112 @@
+package com.openclassrooms.tourguide.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Anneau de hachage cohérent répartissant les utilisateurs (par nom) entre les nœuds TourGuide.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Chaque nœud est placé en {@code virtualNodes} points de l'anneau (hachage 64 bits de
+ *       {@code nodeId#i}) ; une clé appartient au premier point rencontré à partir de son propre hachage.</li>
+ *   <li>Les points virtuels lissent la répartition (écart de quelques % avec 128 points par nœud) ; l'ajout ou le
+ *       retrait d'un nœud ne déplace que les clés de ce nœud, soit environ {@code 1/n} des utilisateurs.</li>
+ *   <li>Immuable : un changement de membres produit un nouvel anneau, publié d'un bloc
+ *       (voir {@link NodePartition}).</li>
+ * </ul>
+ */
+public final class ConsistentHashRing {
+
+	private final Map<String, String> baseUrls;
+	// Points de l'anneau triés, et nœud propriétaire de chaque point
+	private final long[] points;
+	private final String[] owners;
+
+	/**
+	 * @param baseUrls     URL de base (ex. {@code http://host:8080}) par identifiant de nœud (au moins un)
+	 * @param virtualNodes nombre de points par nœud (&gt;= 1)
+	 */
+	public ConsistentHashRing(Map<String, String> baseUrls, int virtualNodes) {
+		if (baseUrls.isEmpty() || virtualNodes < 1) {
+			throw new IllegalArgumentException("Anneau invalide : nodes=" + baseUrls.keySet()
+					+ ", virtualNodes=" + virtualNodes);
+		}
+		this.baseUrls = Collections.unmodifiableMap(new LinkedHashMap<>(baseUrls));
+		int size = baseUrls.size() * virtualNodes;
+		long[] hashes = new long[size];
+		String[] nodes = new String[size];
+		int i = 0;
+		for (String nodeId : baseUrls.keySet()) {
+			for (int v = 0; v < virtualNodes; v++) {
+				hashes[i] = hash(nodeId + '#' + v);
+				nodes[i] = nodeId;
+				i++;
+			}
+		}
+		// Tri des points par hachage, en conservant leur propriétaire
+		Integer[] order = new Integer[size];
+		for (int k = 0; k < size; k++) {
+			order[k] = k;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+		this.points = new long[size];
+		this.owners = new String[size];
+		for (int k = 0; k < size; k++) {
+			points[k] = hashes[order[k]];
+			owners[k] = nodes[order[k]];
+		}
+	}
+
+	/**
+	 * @param nodeId identifiant du nœud unique
+	 * @return anneau d'un seul nœud, propriétaire de tous les utilisateurs
+	 */
+	public static ConsistentHashRing single(String nodeId) {
+		return new ConsistentHashRing(Map.of(nodeId, ""), 1);
+	}
+
+	/**
+	 * @param key clé de répartition (nom d'utilisateur)
+	 * @return identifiant du nœud propriétaire
+	 */
+	public String ownerOf(String key) {
+		int index = Arrays.binarySearch(points, hash(key));
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return owners[(index == points.length) ? 0 : index];
+	}
+
+	/**
+	 * @param nodeId identifiant de nœud
+	 * @return URL de base du nœud, ou {@code null} s'il n'est pas dans l'anneau
+	 */
+	public String getBaseUrl(String nodeId) {
+		return baseUrls.get(nodeId);
+	}
+
+	/** @return identifiants des nœuds de l'anneau */
+	public Set<String> getNodeIds() {
+		return baseUrls.keySet();
+	}
+
+	// FNV-1a 64 bits sur l'UTF-8, suivi du brassage final de MurmurHash3 (répartition uniforme des bits)
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,87 @@
+package com.openclassrooms.tourguide.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Coordinateur de membres en mémoire, qui tient lieu de service de coordination (ZooKeeper, etcd, Consul…) pour
+ * des nœuds lancés dans la même JVM (plusieurs contextes Spring, tests).
+ *
+ * <p>Les nœuds s'inscrivent avec leur URL ; à chaque arrivée ou départ, un nouvel {@link ConsistentHashRing} est
+ * construit et publié à tous les abonnés, dans l'ordre des changements.</p>
+ */
+public class LocalCoordinator {
+
+	private static final LocalCoordinator SHARED = new LocalCoordinator(NodePartition.DEFAULT_VIRTUAL_NODES);
+
+	private final int virtualNodes;
+	private final Map<String, String> members = new LinkedHashMap<>();
+	private final List<Consumer<ConsistentHashRing>> listeners = new CopyOnWriteArrayList<>();
+	private ConsistentHashRing ring;
+
+	/**
+	 * @param virtualNodes nombre de points par nœud dans les anneaux publiés
+	 */
+	public LocalCoordinator(int virtualNodes) {
+		this.virtualNodes = virtualNodes;
+	}
+
+	/** @return coordinateur partagé par tous les nœuds de la JVM */
+	public static LocalCoordinator shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Inscrit (ou met à jour) un nœud et publie le nouvel anneau.
+	 * @param nodeId  identifiant du nœud
+	 * @param baseUrl URL de base du nœud
+	 */
+	public synchronized void join(String nodeId, String baseUrl) {
+		members.put(nodeId, baseUrl);
+		publish();
+	}
+
+	/**
+	 * Retire un nœud et publie le nouvel anneau (sans effet pour un nœud inconnu ou le dernier nœud).
+	 * @param nodeId identifiant du nœud
+	 */
+	public synchronized void leave(String nodeId) {
+		if (members.size() > 1 && members.remove(nodeId) != null) {
+			publish();
+		}
+	}
+
+	/** @return anneau courant, ou {@code null} si aucun nœud n'est inscrit */
+	public synchronized ConsistentHashRing getRing() {
+		return ring;
+	}
+
+	/**
+	 * Abonne un observateur aux changements d'anneau ; il reçoit immédiatement l'anneau courant s'il existe.
+	 * @param listener observateur
+	 */
+	public synchronized void subscribe(Consumer<ConsistentHashRing> listener) {
+		listeners.add(listener);
+		if (ring != null) {
+			listener.accept(ring);
+		}
+	}
+
+	/**
+	 * @param listener observateur à désabonner
+	 */
+	public void unsubscribe(Consumer<ConsistentHashRing> listener) {
+		listeners.remove(listener);
+	}
+
+	// Appelé sous le verrou : les anneaux sont publiés dans l'ordre des changements
+	private void publish() {
+		ring = new ConsistentHashRing(members, virtualNodes);
+		for (Consumer<ConsistentHashRing> listener : listeners) {
+			listener.accept(ring);
+		}
+	}
+}
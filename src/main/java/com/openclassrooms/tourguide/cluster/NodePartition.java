@@ -0,0 +1,183 @@
+package com.openclassrooms.tourguide.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Partition d'un nœud TourGuide : les utilisateurs (par nom) dont ce nœud est propriétaire dans l'anneau courant.
+ *
+ * <p><b>Rôles :</b>
+ * <ul>
+ *   <li>Le service n'initialise et le {@code Tracker} ne suit que les utilisateurs possédés : la capacité de suivi
+ *       croît avec le nombre de nœuds.</li>
+ *   <li>Les requêtes REST visant un utilisateur d'un autre nœud sont transmises à son propriétaire
+ *       ({@link PartitionForwardingFilter}).</li>
+ *   <li>L'anneau est statique ({@code tourguide.cluster.nodes}) ou suivi auprès d'un {@link LocalCoordinator} ;
+ *       il est remplacé d'un bloc à chaque changement de membres.</li>
+ * </ul>
+ *
+ * <p>Les données des utilisateurs ne migrent pas lors d'un changement de membres : un utilisateur passé à un autre
+ * nœud y est recréé par son client, et n'est plus suivi ici.</p>
+ */
+public class NodePartition implements AutoCloseable {
+
+	/** Nombre de points par nœud par défaut dans l'anneau. */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	private static final String STANDALONE_NODE_ID = "local";
+
+	private final String nodeId;
+	private final LocalCoordinator coordinator;
+	private final Consumer<ConsistentHashRing> ringListener = ring -> this.ring = ring;
+	private volatile ConsistentHashRing ring;
+
+	private NodePartition(String nodeId, ConsistentHashRing ring, LocalCoordinator coordinator) {
+		this.nodeId = nodeId;
+		this.ring = ring;
+		this.coordinator = coordinator;
+	}
+
+	/** @return partition d'un nœud seul, propriétaire de tous les utilisateurs */
+	public static NodePartition standalone() {
+		return new NodePartition(STANDALONE_NODE_ID, ConsistentHashRing.single(STANDALONE_NODE_ID), null);
+	}
+
+	/**
+	 * @param nodeId identifiant de ce nœud
+	 * @param ring   anneau statique, qui doit contenir ce nœud
+	 * @return partition de ce nœud dans l'anneau
+	 */
+	public static NodePartition fixed(String nodeId, ConsistentHashRing ring) {
+		if (ring.getBaseUrl(nodeId) == null) {
+			throw new IllegalArgumentException("Nœud " + nodeId + " absent de l'anneau " + ring.getNodeIds());
+		}
+		return new NodePartition(nodeId, ring, null);
+	}
+
+	/**
+	 * Inscrit ce nœud auprès du coordinateur et suit ensuite les anneaux qu'il publie.
+	 * @param nodeId      identifiant de ce nœud
+	 * @param baseUrl     URL de base de ce nœud (cible des requêtes transmises)
+	 * @param coordinator coordinateur des membres
+	 * @return partition de ce nœud, à fermer pour quitter l'anneau
+	 */
+	public static NodePartition joining(String nodeId, String baseUrl, LocalCoordinator coordinator) {
+		NodePartition partition = new NodePartition(nodeId, null, coordinator);
+		coordinator.join(nodeId, baseUrl);
+		coordinator.subscribe(partition.ringListener);
+		return partition;
+	}
+
+	/**
+	 * Construit la partition depuis la configuration (propriétés Spring {@code tourguide.cluster.*}) :
+	 * <ul>
+	 *   <li>sans identifiant de nœud : nœud seul ({@link #standalone()}) ;</li>
+	 *   <li>avec une liste de nœuds ({@code a=http://h1:8080,b=http://h2:8080}) : anneau statique ;</li>
+	 *   <li>sinon : inscription auprès du coordinateur partagé de la JVM ({@link LocalCoordinator#shared()}).</li>
+	 * </ul>
+	 * @param nodeId       identifiant de ce nœud, ou vide
+	 * @param nodes        liste statique des nœuds, ou vide
+	 * @param nodeUrl      URL de base de ce nœud (mode coordinateur)
+	 * @param virtualNodes nombre de points par nœud (anneau statique)
+	 * @return partition de ce nœud
+	 */
+	public static NodePartition configure(String nodeId, String nodes, String nodeUrl, int virtualNodes) {
+		if (nodeId == null || nodeId.isBlank()) {
+			return standalone();
+		}
+		if (nodes == null || nodes.isBlank()) {
+			return joining(nodeId, nodeUrl, LocalCoordinator.shared());
+		}
+		Map<String, String> baseUrls = new LinkedHashMap<>();
+		for (String node : nodes.split(",")) {
+			int separator = node.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Nœud mal formé (attendu id=url) : " + node);
+			}
+			baseUrls.put(node.substring(0, separator).trim(), node.substring(separator + 1).trim());
+		}
+		return fixed(nodeId, new ConsistentHashRing(baseUrls, virtualNodes));
+	}
+
+	/** @return identifiant de ce nœud */
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/** @return anneau courant */
+	public ConsistentHashRing getRing() {
+		return ring;
+	}
+
+	/**
+	 * @param userName nom d'utilisateur
+	 * @return {@code true} si ce nœud est propriétaire de l'utilisateur
+	 */
+	public boolean owns(String userName) {
+		return nodeId.equals(ring.ownerOf(userName));
+	}
+
+	/**
+	 * @param userName nom d'utilisateur
+	 * @return URL de base du nœud propriétaire, ou {@code null} si c'est ce nœud
+	 */
+	public String ownerBaseUrl(String userName) {
+		ConsistentHashRing current = ring;
+		String owner = current.ownerOf(userName);
+		return nodeId.equals(owner) ? null : current.getBaseUrl(owner);
+	}
+
+	/**
+	 * Regroupe les noms d'utilisateur possédés par d'autres nœuds, par URL de base de leur propriétaire.
+	 * @param userNames noms d'utilisateur
+	 * @return noms de chaque autre propriétaire (vide si ce nœud les possède tous)
+	 */
+	public Map<String, List<String>> remoteOwners(Collection<String> userNames) {
+		ConsistentHashRing current = ring;
+		Map<String, List<String>> owners = new LinkedHashMap<>();
+		for (String userName : userNames) {
+			String owner = current.ownerOf(userName);
+			if (!nodeId.equals(owner)) {
+				owners.computeIfAbsent(current.getBaseUrl(owner), url -> new ArrayList<>()).add(userName);
+			}
+		}
+		return owners;
+	}
+
+	/** @return URL de base des autres nœuds de l'anneau courant */
+	public List<String> otherBaseUrls() {
+		ConsistentHashRing current = ring;
+		List<String> baseUrls = new ArrayList<>();
+		for (String node : current.getNodeIds()) {
+			if (!nodeId.equals(node)) {
+				baseUrls.add(current.getBaseUrl(node));
+			}
+		}
+		return baseUrls;
+	}
+
+	/**
+	 * Publie l'URL de base de ce nœud auprès du coordinateur, une fois connue (port attribué au démarrage du
+	 * serveur). La répartition ne dépend que des identifiants : seule la cible des requêtes transmises change.
+	 * Sans effet pour une partition statique ou un nœud seul.
+	 * @param baseUrl URL de base de ce nœud
+	 */
+	public void advertise(String baseUrl) {
+		if (coordinator != null) {
+			coordinator.join(nodeId, baseUrl);
+		}
+	}
+
+	/** Quitte l'anneau du coordinateur (sans effet pour une partition statique). */
+	@Override
+	public void close() {
+		if (coordinator != null) {
+			coordinator.unsubscribe(ringListener);
+			coordinator.leave(nodeId);
+		}
+	}
+}
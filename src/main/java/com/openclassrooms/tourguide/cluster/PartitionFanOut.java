@@ -0,0 +1,103 @@
+package com.openclassrooms.tourguide.cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Complète une réponse {@code /getUsersSummary} auprès des autres nœuds : résumés des noms qu'ils possèdent, ou de
+ * tous leurs utilisateurs si aucun nom n'est donné.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Une requête par autre nœud concerné (POST des noms qu'il possède, GET sans nom), avec l'en-tête
+ *       {@link PartitionForwardingFilter#FORWARDED_HEADER} : le nœud interrogé ne résume que ses propres
+ *       utilisateurs, sans relayer à son tour.</li>
+ *   <li>Les lignes NDJSON reçues sont recopiées telles quelles, au fil de la lecture, dans la réponse en cours.</li>
+ *   <li>Nœud injoignable ou en erreur : la réponse, déjà commencée, est interrompue par une erreur (aucun nom n'est
+ *       ignoré en silence).</li>
+ * </ul>
+ */
+@Component
+public class PartitionFanOut {
+
+	private static final Logger logger = LoggerFactory.getLogger(PartitionFanOut.class);
+	private static final String SUMMARY_PATH = "/getUsersSummary";
+	private static final Duration FAN_OUT_TIMEOUT = Duration.ofSeconds(30);
+
+	private final NodePartition partition;
+	private final ObjectMapper objectMapper;
+	private final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(2))
+			.build();
+
+	/**
+	 * @param partition    partition de ce nœud
+	 * @param objectMapper sérialisation des listes de noms
+	 */
+	public PartitionFanOut(NodePartition partition, ObjectMapper objectMapper) {
+		this.partition = partition;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Recopie dans {@code out} les résumés servis par les autres nœuds (sans effet pour un nœud seul).
+	 *
+	 * @param userNames noms demandés (seuls ceux des autres nœuds sont demandés), ou {@code null} pour tous
+	 * @param out       réponse NDJSON en cours
+	 * @throws IOException si un nœud est injoignable ou répond en erreur
+	 */
+	public void streamSummaries(Collection<String> userNames, OutputStream out) throws IOException {
+		if (userNames == null) {
+			for (String baseUrl : partition.otherBaseUrls()) {
+				copy(HttpRequest.newBuilder(URI.create(baseUrl + SUMMARY_PATH)).GET(), out);
+			}
+			return;
+		}
+		for (Map.Entry<String, List<String>> owner : partition.remoteOwners(userNames).entrySet()) {
+			copy(HttpRequest.newBuilder(URI.create(owner.getKey() + SUMMARY_PATH))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(owner.getValue()))),
+					out);
+		}
+	}
+
+	private void copy(HttpRequest.Builder builder, OutputStream out) throws IOException {
+		HttpRequest request = builder
+				.timeout(FAN_OUT_TIMEOUT)
+				.header(PartitionForwardingFilter.FORWARDED_HEADER, partition.getNodeId())
+				.build();
+		HttpResponse<InputStream> reply;
+		try {
+			reply = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrompu pendant la requête vers " + request.uri());
+		} catch (IOException e) {
+			logger.warn("Summary request to {} failed: {}", request.uri(), e.toString());
+			throw new IOException("Nœud propriétaire injoignable : " + request.uri(), e);
+		}
+		try (InputStream body = reply.body()) {
+			if (reply.statusCode() != 200) {
+				logger.warn("Summary request to {} answered {}", request.uri(), reply.statusCode());
+				throw new IOException("Réponse " + reply.statusCode() + " du nœud propriétaire : " + request.uri());
+			}
+			body.transferTo(out);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.openclassrooms.tourguide.cluster;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Transmet au nœud propriétaire les requêtes GET portant sur un utilisateur ({@code ?userName=...}) d'une autre
+ * partition.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>La requête est relayée telle quelle (chemin et paramètres) vers l'URL de base du propriétaire, sans bloquer
+ *       le thread Tomcat (requête servlet asynchrone + {@link HttpClient#sendAsync}) ; statut, type et corps de la
+ *       réponse sont recopiés.</li>
+ *   <li>L'en-tête {@value #FORWARDED_HEADER} marque une requête déjà transmise : elle est toujours servie
+ *       localement, ce qui évite les boucles pendant un changement d'anneau.</li>
+ *   <li>Propriétaire injoignable : 502.</li>
+ * </ul>
+ */
+@Component
+public class PartitionForwardingFilter extends OncePerRequestFilter {
+
+	/** En-tête ajouté aux requêtes transmises (valeur : nœud émetteur). */
+	public static final String FORWARDED_HEADER = "X-TourGuide-Forwarded-By";
+
+	private static final Logger logger = LoggerFactory.getLogger(PartitionForwardingFilter.class);
+	private static final Duration FORWARD_TIMEOUT = Duration.ofSeconds(30);
+
+	private final NodePartition partition;
+	private final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(2))
+			.build();
+
+	/**
+	 * @param partition partition de ce nœud
+	 */
+	public PartitionForwardingFilter(NodePartition partition) {
+		this.partition = partition;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String userName = request.getParameter("userName");
+		String ownerUrl = (userName == null || !"GET".equals(request.getMethod())
+				|| request.getHeader(FORWARDED_HEADER) != null) ? null : partition.ownerBaseUrl(userName);
+		if (ownerUrl == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		String query = request.getQueryString();
+		URI target = URI.create(ownerUrl + request.getRequestURI() + ((query == null) ? "" : "?" + query));
+		HttpRequest forwarded = HttpRequest.newBuilder(target)
+				.timeout(FORWARD_TIMEOUT)
+				.header(FORWARDED_HEADER, partition.getNodeId())
+				.GET()
+				.build();
+
+		AsyncContext async = request.startAsync();
+		async.setTimeout(FORWARD_TIMEOUT.toMillis() + 1000);
+		client.sendAsync(forwarded, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((reply, failure) -> {
+			HttpServletResponse out = (HttpServletResponse) async.getResponse();
+			try {
+				if (failure != null) {
+					logger.warn("Forwarding to {} failed: {}", target, failure.toString());
+					out.sendError(HttpServletResponse.SC_BAD_GATEWAY, "Nœud propriétaire injoignable : " + ownerUrl);
+				} else {
+					out.setStatus(reply.statusCode());
+					reply.headers().firstValue("Content-Type").ifPresent(out::setContentType);
+					out.getOutputStream().write(reply.body());
+				}
+			} catch (IOException e) {
+				logger.debug("Client gone while forwarding {}: {}", target, e.toString());
+			} finally {
+				async.complete();
+			}
+		});
+	}
+}
@@ -0,0 +1,187 @@
+package com.openclassrooms.tourguide.execution;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limite de concurrence adaptative vers un service distant, ajustée d'après la latence observée
+ * (algorithme à gradient, dans l'esprit de TCP Vegas).
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Les mesures sont regroupées par fenêtre (au moins la moitié de la limite, et {@value #MIN_WINDOW_SAMPLES}
+ *       appels) : la latence moyenne de la fenêtre est comparée à une latence de référence, moyenne mobile lente
+ *       des fenêtres précédentes. Moyenner par fenêtre absorbe la dispersion naturelle des latences.</li>
+ *   <li>Gradient = référence × {@value #RTT_TOLERANCE} / latence de la fenêtre, borné à [0,5 ; 1]. À 1, le service
+ *       n'accumule pas de file : la limite double à chaque fenêtre (démarrage lent) jusqu'au premier signal de
+ *       congestion, puis augmente de √limite.</li>
+ *   <li>En dessous de 1, la limite tend vers {@code limite × gradient + √limite} (lissé : une fenêtre isolée, par
+ *       exemple biaisée vers les appels courts pendant une montée en charge, ne la réduit que de 10 % au plus) ; une
+ *       fenêtre contenant un échec la réduit de {@value #FAILURE_BACKOFF} (décroissance multiplicative).</li>
+ *   <li>Une fenêtre où moins de la moitié de la limite a été utilisée ne l'augmente pas : la charge, et non le
+ *       service, est alors le facteur limitant.</li>
+ *   <li>La référence suit lentement une dérive durable de la latence, et se rapproche vite d'une baisse. Pendant le
+ *       démarrage lent, elle retient la plus haute moyenne de fenêtre (les premiers appels terminés sont les plus
+ *       courts).</li>
+ *   <li>La limite reste dans {@code [minLimit, maxLimit]} ; {@code maxLimit} est la taille du pool (threads
+ *       système) ou la borne de sécurité (threads virtuels). Avec {@code minLimit == maxLimit}, elle est fixe.</li>
+ * </ul>
+ *
+ * <p>Les mesures sont sérialisées (section courte) ; la lecture de la limite est sans verrou.</p>
+ */
+public class AdaptiveLimit {
+
+	private static final double RTT_TOLERANCE = 1.5;
+	private static final double SMOOTHING = 0.2;
+	private static final double FAILURE_BACKOFF = 0.9;
+	private static final int MIN_WINDOW_SAMPLES = 10;
+	private static final int LONG_WINDOWS = 20;
+
+	private final int minLimit;
+	private final int maxLimit;
+
+	private double estimatedLimit;
+	private double longRttNanos;
+	private boolean slowStart = true;
+	private volatile int limit;
+
+	// Fenêtre de mesures en cours
+	private long windowRttNanos;
+	private int windowCalls;
+	private int windowSamples;
+	private int windowMaxInFlight;
+	private boolean windowFailed;
+
+	private final LongAdder rejections = new LongAdder();
+
+	/**
+	 * @param initialLimit limite de départ
+	 * @param minLimit     limite minimale (&gt;= 1)
+	 * @param maxLimit     limite maximale (&gt;= minLimit)
+	 */
+	public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("Bornes de concurrence invalides : min=" + minLimit + ", max=" + maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.limit = (int) estimatedLimit;
+	}
+
+	/**
+	 * @param maxConcurrency nombre d'appels simultanés
+	 * @return limite fixe
+	 */
+	public static AdaptiveLimit fixed(int maxConcurrency) {
+		return new AdaptiveLimit(maxConcurrency, maxConcurrency, maxConcurrency);
+	}
+
+	/**
+	 * Limite selon la configuration : adaptative entre {@code min(8, max)} et {@code maxConcurrency}, partant de
+	 * {@code min(32, max)}, sauf si {@code -DadaptiveConcurrency=false} (limite fixe à {@code maxConcurrency}).
+	 *
+	 * @param maxConcurrency borne supérieure (taille du pool)
+	 * @return limite configurée
+	 */
+	public static AdaptiveLimit configured(int maxConcurrency) {
+		String adaptive = System.getProperty("adaptiveConcurrency", "true");
+		if (!Boolean.parseBoolean(adaptive)) {
+			return fixed(maxConcurrency);
+		}
+		return new AdaptiveLimit(Math.min(32, maxConcurrency), Math.min(8, maxConcurrency), maxConcurrency);
+	}
+
+	/** @return limite courante d'appels simultanés */
+	public int getLimit() {
+		return limit;
+	}
+
+	/** @return limite maximale */
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/** @return {@code true} si la limite s'ajuste à la latence (bornes distinctes) */
+	public boolean isAdaptive() {
+		return minLimit != maxLimit;
+	}
+
+	/** Compte une admission refusée : l'appel a trouvé la limite atteinte et attend une place. */
+	public void rejected() {
+		rejections.increment();
+	}
+
+	/** @return nombre d'admissions refusées depuis la création */
+	public long getRejectedCount() {
+		return rejections.sum();
+	}
+
+	/**
+	 * Enregistre la mesure d'un appel terminé ; la limite est ajustée à la fin de chaque fenêtre.
+	 *
+	 * @param rttNanos durée de l'appel
+	 * @param inFlight appels en cours au moment de la mesure (y compris celui-ci)
+	 * @param failed   {@code true} si l'appel a échoué
+	 */
+	public void onSample(long rttNanos, int inFlight, boolean failed) {
+		if (!isAdaptive()) {
+			return;
+		}
+		synchronized (this) {
+			windowCalls++;
+			windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+			if (failed) {
+				windowFailed = true;
+			} else {
+				windowRttNanos += rttNanos;
+				windowSamples++;
+			}
+			if (windowCalls < Math.max(MIN_WINDOW_SAMPLES, limit / 2)) {
+				return;
+			}
+			endWindow();
+		}
+	}
+
+	// Appelé sous le verrou, une fois la fenêtre complète
+	private void endWindow() {
+		double shortRttNanos = (windowSamples == 0) ? 0 : (double) windowRttNanos / windowSamples;
+		boolean failed = windowFailed;
+		boolean saturated = windowMaxInFlight >= estimatedLimit / 2;
+		windowRttNanos = 0;
+		windowCalls = 0;
+		windowSamples = 0;
+		windowMaxInFlight = 0;
+		windowFailed = false;
+
+		if (failed) {
+			slowStart = false;
+			update(estimatedLimit * FAILURE_BACKOFF);
+			return;
+		}
+		if (longRttNanos == 0 || (slowStart && shortRttNanos > longRttNanos)) {
+			// Pendant la montée en charge, les premiers appels terminés sont les plus courts : la référence retient
+			// la plus haute moyenne observée, sans quoi elle serait sous-estimée
+			longRttNanos = shortRttNanos;
+		} else if (shortRttNanos < longRttNanos) {
+			longRttNanos += (shortRttNanos - longRttNanos) / 2;
+		} else {
+			longRttNanos += (shortRttNanos - longRttNanos) / LONG_WINDOWS;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRttNanos / shortRttNanos));
+		if (gradient < 1.0) {
+			slowStart = false;
+			update(estimatedLimit * (1 - SMOOTHING) + (estimatedLimit * gradient + Math.sqrt(estimatedLimit)) * SMOOTHING);
+		} else if (saturated) {
+			update(slowStart ? estimatedLimit * 2 : estimatedLimit + Math.sqrt(estimatedLimit));
+			// Plus rien à doubler : la référence cesse de suivre la plus haute moyenne
+			slowStart = slowStart && estimatedLimit < maxLimit;
+		}
+	}
+
+	private void update(double candidate) {
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, candidate));
+		limit = (int) estimatedLimit;
+	}
+}
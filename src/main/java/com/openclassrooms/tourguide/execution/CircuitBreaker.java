@@ -0,0 +1,376 @@
+package com.openclassrooms.tourguide.execution;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Délai maximal et disjoncteur (<i>circuit breaker</i>) des appels vers un service distant.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Chaque appel a un délai : au-delà, son futur échoue avec une {@link TimeoutException}. Un appel bloqué dans
+ *       le service retient son thread, mais plus l'appelant. Derrière une cloison ({@link ConcurrencyLimit},
+ *       {@link RequestBatcher}), le délai court à partir de l'obtention d'une place : une passe sur toute la
+ *       population met la plupart des appels en file sans que le service soit en cause.</li>
+ *   <li>L'attente d'une place (ou d'un worker du regroupement) n'est pas bornée tant que le service répond ; s'il
+ *       ne répond plus (aucun appel terminé pendant le délai, toutes les places retenues par des appels bloqués),
+ *       les appels en attente échouent à leur tour avec une {@link TimeoutException}, sans être tentés.</li>
+ *   <li>Fermé : les derniers résultats (fenêtre de {@code window} appels) sont comptés ; dès que la part d'échecs
+ *       (délais compris) atteint le seuil sur une fenêtre pleine, le circuit s'ouvre.</li>
+ *   <li>Ouvert : les appels échouent immédiatement ({@link CircuitOpenException}), sans occuper de thread, pendant
+ *       {@code openDuration}, de même que ceux encore en attente d'une place à l'ouverture. Les appelants se
+ *       replient sur leur valeur de secours.</li>
+ *   <li>Semi-ouvert : {@value #HALF_OPEN_PROBES} appels d'essai passent ; s'ils réussissent tous, le circuit se
+ *       referme, au premier échec il se rouvre.</li>
+ * </ul>
+ *
+ * <p>Les pools et limites propres à chaque service ({@link ConcurrencyLimit}, {@link RequestBatcher}) servent de
+ * cloisons : un service bloqué n'épuise que les siens.</p>
+ */
+public class CircuitBreaker {
+
+	/** États du disjoncteur (valeur publiée par les métriques : ordinal). */
+	public enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	private static final int HALF_OPEN_PROBES = 3;
+
+	private final String name;
+	private final long timeoutNanos;
+	private final double failureRateThreshold;
+	private final long openNanos;
+
+	// Fenêtre circulaire des derniers résultats (true = échec), sous le verrou de l'instance
+	private final boolean[] outcomes;
+	private int recorded;
+	private int next;
+	private int failures;
+
+	private volatile State state = State.CLOSED;
+	private long openedAtNanos;
+	private int probesStarted;
+	private int probesSucceeded;
+
+	private final LongAdder shortCircuited = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+
+	// Appels en attente d'une place (file de l'exécuteur, de la limite ou du regroupement) et dernière réponse du
+	// service
+	private final Set<CompletableFuture<?>> waiting = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean watching = new AtomicBoolean();
+	private volatile long lastResponseNanos = System.nanoTime();
+
+	/**
+	 * @param name                 nom du service protégé (messages d'erreur)
+	 * @param timeout              délai maximal d'un appel (&gt; 0)
+	 * @param window               nombre de résultats observés pour décider l'ouverture (&gt;= 1)
+	 * @param failureRateThreshold part d'échecs ouvrant le circuit (0 exclu, 1 inclus)
+	 * @param openDuration         durée d'ouverture avant les appels d'essai
+	 */
+	public CircuitBreaker(String name, Duration timeout, int window, double failureRateThreshold, Duration openDuration) {
+		if (timeout.isNegative() || timeout.isZero() || window < 1 || failureRateThreshold <= 0
+				|| failureRateThreshold > 1 || openDuration.isNegative()) {
+			throw new IllegalArgumentException("Paramètres de disjoncteur invalides pour " + name + " : timeout="
+					+ timeout + ", window=" + window + ", failureRateThreshold=" + failureRateThreshold
+					+ ", openDuration=" + openDuration);
+		}
+		this.name = name;
+		this.timeoutNanos = timeout.toNanos();
+		this.outcomes = new boolean[window];
+		this.failureRateThreshold = failureRateThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * Disjoncteur selon la configuration commune : fenêtre {@code -DcircuitBreakerWindow} (défaut 50), seuil
+	 * {@code -DcircuitBreakerFailurePercent} (défaut 50 %), ouverture {@code -DcircuitBreakerOpenMillis}
+	 * (défaut 5 000 ms).
+	 *
+	 * @param name    nom du service protégé
+	 * @param timeout délai maximal d'un appel, propre au service
+	 * @return disjoncteur configuré
+	 */
+	public static CircuitBreaker configured(String name, Duration timeout) {
+		return new CircuitBreaker(name, timeout,
+				Integer.getInteger("circuitBreakerWindow", 50),
+				Integer.getInteger("circuitBreakerFailurePercent", 50) / 100.0,
+				Duration.ofMillis(Long.getLong("circuitBreakerOpenMillis", 5000)));
+	}
+
+	/**
+	 * Lance un appel bloquant sur l'exécuteur, derrière une limite de concurrence, sous délai et disjoncteur.
+	 *
+	 * @param call     appel bloquant vers le service distant
+	 * @param limit    limite de concurrence du service ; le délai court une fois la place obtenue, l'attente est
+	 *                 abandonnée si le service ne répond plus ou si le circuit s'ouvre
+	 * @param executor exécuteur de l'appel (pool propre au service)
+	 * @param <T>      type du résultat
+	 * @return futur du résultat, en échec si le circuit est ouvert, si le délai expire ou si l'appel échoue
+	 */
+	public <T> CompletableFuture<T> call(Supplier<T> call, ConcurrencyLimit limit, Executor executor) {
+		return guard(() -> {
+			CompletableFuture<T> result = new CompletableFuture<>();
+			enqueue(result);
+			try {
+				executor.execute(() -> {
+					if (result.isDone()) {
+						// Abandonné en file : l'appel n'est pas tenté
+						return;
+					}
+					boolean[] started = new boolean[1];
+					try {
+						T value = limit.call(() -> {
+							try {
+								return call.get();
+							} finally {
+								lastResponseNanos = System.nanoTime();
+							}
+						}, () -> started[0] = start(result));
+						if (started[0]) {
+							result.complete(value);
+						}
+					} catch (RuntimeException | Error e) {
+						result.completeExceptionally(e);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				waiting.remove(result);
+				throw e;
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Dépose une demande dans un regroupement d'appels, sous délai et disjoncteur.
+	 *
+	 * @param batcher regroupement d'appels du service ; le délai court une fois le lot de la demande prélevé par un
+	 *                worker, l'attente est abandonnée si le service ne répond plus ou si le circuit s'ouvre
+	 * @param request demande à transmettre
+	 * @param <K>     type des demandes
+	 * @param <V>     type des réponses
+	 * @return futur de la réponse, en échec si le circuit est ouvert, si le délai expire ou si l'appel échoue
+	 */
+	public <K, V> CompletableFuture<V> submit(RequestBatcher<K, V> batcher, K request) {
+		return guard(() -> {
+			CompletableFuture<V> result = new CompletableFuture<>();
+			enqueue(result);
+			// Prélevée par un worker : plus en attente, sous les délais du lot ; abandonnée avant : pas d'appel
+			batcher.submit(request, getTimeout(), () -> waiting.remove(result)).whenComplete((value, failure) -> {
+				if (!(failure instanceof TimeoutException)) {
+					// Réponse (ou erreur) du service, et non échéance d'un délai
+					lastResponseNanos = System.nanoTime();
+				}
+				if (failure == null) {
+					result.complete(value);
+				} else {
+					result.completeExceptionally(failure);
+				}
+			});
+			return result;
+		});
+	}
+
+	/**
+	 * Lance un appel déjà asynchrone, sous délai et disjoncteur. Le délai court dès la demande : réservé aux appels
+	 * propres à une requête, dont l'attente fait partie du temps de réponse.
+	 *
+	 * @param call lancement de l'appel (par exemple sur un {@link HedgedCall}) ; le futur renvoyé doit être propre à
+	 *             cet appel, il est terminé en échec à l'échéance
+	 * @param <T>  type du résultat
+	 * @return futur du résultat, en échec si le circuit est ouvert, si le délai expire ou si l'appel échoue
+	 */
+	public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+		return guard(() -> call.get().orTimeout(timeoutNanos, TimeUnit.NANOSECONDS));
+	}
+
+	// Admission par le disjoncteur, puis comptage du résultat avant de terminer le futur de l'appelant
+	private <T> CompletableFuture<T> guard(Supplier<CompletableFuture<T>> call) {
+		if (!tryAcquire()) {
+			shortCircuited.increment();
+			return CompletableFuture.failedFuture(new CircuitOpenException(name));
+		}
+		CompletableFuture<T> started;
+		try {
+			started = call.get();
+		} catch (RejectedExecutionException e) {
+			if (onResult(false)) {
+				abandonWaiting(new CircuitOpenException(name));
+			}
+			return CompletableFuture.failedFuture(new IllegalStateException("Exécuteur de " + name + " arrêté", e));
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		started.whenComplete((value, failure) -> {
+			if (onResult(failure == null)) {
+				abandonWaiting(new CircuitOpenException(name));
+			}
+			Throwable cause = (failure instanceof CompletionException && failure.getCause() != null) ? failure.getCause()
+					: failure;
+			if (failure == null) {
+				result.complete(value);
+			} else if (cause instanceof TimeoutException) {
+				timeouts.increment();
+				result.completeExceptionally(new TimeoutException(
+						"Pas de réponse de " + name + " en " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"));
+			} else {
+				result.completeExceptionally(cause);
+			}
+		});
+		return result;
+	}
+
+	// Met un appel en attente d'une place, sous surveillance tant que des appels attendent
+	private void enqueue(CompletableFuture<?> result) {
+		waiting.add(result);
+		if (watching.compareAndSet(false, true)) {
+			// Attente ouverte sur un service jusqu'ici inactif : son silence se compte à partir de maintenant
+			lastResponseNanos = System.nanoTime();
+			scheduleWatch();
+		}
+	}
+
+	// Place obtenue : l'appel est lancé sous délai, sauf s'il a été abandonné pendant l'attente
+	private boolean start(CompletableFuture<?> result) {
+		if (!waiting.remove(result)) {
+			return false;
+		}
+		result.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS);
+		return true;
+	}
+
+	private void scheduleWatch() {
+		CompletableFuture.delayedExecutor(Math.max(1, timeoutNanos / 2), TimeUnit.NANOSECONDS).execute(this::watch);
+	}
+
+	// Service silencieux pendant tout le délai : les appels en attente échouent sans être tentés
+	private void watch() {
+		if (System.nanoTime() - lastResponseNanos >= timeoutNanos) {
+			abandonWaiting(new TimeoutException("Aucune réponse de " + name + " pendant l'attente d'une place"));
+		}
+		if (!waiting.isEmpty()) {
+			scheduleWatch();
+			return;
+		}
+		watching.set(false);
+		// Un appel a pu être mis en attente entre le dernier contrôle et la fin de la surveillance
+		if (!waiting.isEmpty() && watching.compareAndSet(false, true)) {
+			scheduleWatch();
+		}
+	}
+
+	private void abandonWaiting(Throwable failure) {
+		for (CompletableFuture<?> result : waiting) {
+			if (waiting.remove(result)) {
+				result.completeExceptionally(failure);
+			}
+		}
+	}
+
+	/** @return état courant (un circuit ouvert dont la durée est écoulée reste ouvert jusqu'au prochain appel) */
+	public State getState() {
+		return state;
+	}
+
+	/** @return nombre d'appels refusés par le circuit ouvert */
+	public long getShortCircuitedCount() {
+		return shortCircuited.sum();
+	}
+
+	/** @return nombre d'appels arrivés à échéance */
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+
+	/** @return délai maximal d'un appel */
+	public Duration getTimeout() {
+		return Duration.ofNanos(timeoutNanos);
+	}
+
+	// Admission d'un appel : toujours si fermé, appels d'essai une fois la durée d'ouverture écoulée
+	private synchronized boolean tryAcquire() {
+		switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (System.nanoTime() - openedAtNanos < openNanos) {
+					return false;
+				}
+				state = State.HALF_OPEN;
+				probesStarted = 0;
+				probesSucceeded = 0;
+				// puis comme semi-ouvert
+			default:
+				if (probesStarted >= HALF_OPEN_PROBES) {
+					return false;
+				}
+				probesStarted++;
+				return true;
+		}
+	}
+
+	// Compte un résultat ; renvoie true si le circuit vient de s'ouvrir
+	private synchronized boolean onResult(boolean success) {
+		switch (state) {
+			case HALF_OPEN:
+				if (!success) {
+					open();
+					return true;
+				}
+				if (++probesSucceeded >= HALF_OPEN_PROBES) {
+					close();
+				}
+				return false;
+			case OPEN:
+				// Résultat d'un appel lancé avant l'ouverture
+				return false;
+			default:
+				if (recorded == outcomes.length && outcomes[next]) {
+					failures--;
+				}
+				outcomes[next] = !success;
+				if (!success) {
+					failures++;
+				}
+				next = (next + 1) % outcomes.length;
+				recorded = Math.min(recorded + 1, outcomes.length);
+				if (recorded == outcomes.length && failures >= failureRateThreshold * outcomes.length) {
+					open();
+					return true;
+				}
+				return false;
+		}
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAtNanos = System.nanoTime();
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		recorded = 0;
+		next = 0;
+		failures = 0;
+	}
+
+	/** Appel refusé sans être tenté : le circuit vers le service est ouvert. */
+	public static class CircuitOpenException extends IllegalStateException {
+
+		private static final long serialVersionUID = 1L;
+
+		CircuitOpenException(String name) {
+			super("Circuit ouvert vers " + name);
+		}
+	}
+}
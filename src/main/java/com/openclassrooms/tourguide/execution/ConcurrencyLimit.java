@@ -0,0 +1,148 @@
+package com.openclassrooms.tourguide.execution;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Borne le nombre d'appels simultanés vers un service distant (file d'attente équitable).
+ *
+ * <p>Indispensable avec les threads virtuels : le nombre de tâches n'est plus limité par la taille d'un pool,
+ * c'est donc cette borne qui protège GpsUtil d'une rafale de 100 000 appels (RewardCentral passe par {@link RequestBatcher}).</p>
+ *
+ * <p>La borne est une {@link AdaptiveLimit} : chaque appel terminé lui fournit sa durée, et les appels en attente
+ * sont admis dès que la limite courante le permet (elle peut monter ou descendre pendant l'attente).</p>
+ */
+public class ConcurrencyLimit {
+
+	private final String name;
+	private final AdaptiveLimit limit;
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition available = lock.newCondition();
+	private int inFlight;
+	private int waiting;
+
+	/**
+	 * @param name           nom du service protégé (messages d'erreur)
+	 * @param maxConcurrency nombre maximal d'appels simultanés (&gt;= 1), fixe
+	 */
+	public ConcurrencyLimit(String name, int maxConcurrency) {
+		this(name, AdaptiveLimit.fixed(maxConcurrency));
+	}
+
+	/**
+	 * @param name  nom du service protégé (messages d'erreur)
+	 * @param limit limite d'appels simultanés (fixe ou adaptative)
+	 */
+	public ConcurrencyLimit(String name, AdaptiveLimit limit) {
+		this.name = name;
+		this.limit = limit;
+	}
+
+	/**
+	 * Exécute l'appel dès qu'une place est libre, puis transmet sa durée à la limite.
+	 *
+	 * @param call appel bloquant vers le service distant
+	 * @param <T>  type du résultat
+	 * @return résultat de l'appel
+	 * @throws IllegalStateException si le thread est interrompu pendant l'attente
+	 */
+	public <T> T call(Supplier<T> call) {
+		return call(call, () -> true);
+	}
+
+	/**
+	 * Exécute l'appel dès qu'une place est libre, s'il est encore attendu à ce moment-là.
+	 *
+	 * @param call  appel bloquant vers le service distant
+	 * @param start appelé une fois la place obtenue : {@code false} si l'appel a été abandonné pendant l'attente
+	 * @param <T>   type du résultat
+	 * @return résultat de l'appel, ou {@code null} s'il a été abandonné (place rendue, aucune durée transmise)
+	 * @throws IllegalStateException si le thread est interrompu pendant l'attente
+	 */
+	public <T> T call(Supplier<T> call, BooleanSupplier start) {
+		int concurrent = acquire();
+		if (!start.getAsBoolean()) {
+			release();
+			return null;
+		}
+		long started = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = call.get();
+			failed = false;
+			return result;
+		} finally {
+			limit.onSample(System.nanoTime() - started, concurrent, failed);
+			release();
+		}
+	}
+
+	/** @return limite courante d'appels simultanés */
+	public int getMaxConcurrency() {
+		return limit.getLimit();
+	}
+
+	/** @return limite (courante, bornes, admissions refusées) */
+	public AdaptiveLimit getLimit() {
+		return limit;
+	}
+
+	/** @return nombre d'appels en cours */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return nombre d'appels en attente d'une place */
+	public int getQueuedCount() {
+		lock.lock();
+		try {
+			return waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// Réserve une place ; renvoie le nombre d'appels en cours, celui-ci compris
+	private int acquire() {
+		lock.lock();
+		try {
+			if (inFlight >= limit.getLimit()) {
+				limit.rejected();
+				waiting++;
+				try {
+					while (inFlight >= limit.getLimit()) {
+						available.await();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrompu en attente d'un appel vers " + name, e);
+				} finally {
+					waiting--;
+				}
+			}
+			return ++inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			// La limite a pu augmenter : autant de réveils que de places libres
+			for (int wakeUps = Math.min(limit.getLimit() - inFlight, waiting); wakeUps > 0; wakeUps--) {
+				available.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+}
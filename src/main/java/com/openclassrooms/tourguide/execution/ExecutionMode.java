@@ -0,0 +1,73 @@
+package com.openclassrooms.tourguide.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mode d'exécution des appels bloquants (GpsUtil, RewardCentral) lancés en parallèle par {@code TourGuideService}.
+ *
+ * <p><b>Modes :</b>
+ * <ul>
+ *   <li>{@link #PLATFORM} : pool fixe de threads système, dimensionné à la main (comportement historique).</li>
+ *   <li>{@link #VIRTUAL} : un thread virtuel par tâche ; la concurrence vers chaque service distant est bornée
+ *       par un {@link ConcurrencyLimit} ou un {@link RequestBatcher} et non plus par la taille du pool.</li>
+ * </ul>
+ *
+ * <p>Les threads virtuels nécessitent Java 21. L'application reste compilée en Java 17 : la fabrique est
+ * résolue à l'exécution et, sur une JVM plus ancienne, {@link #VIRTUAL} se replie sur un pool de threads système.</p>
+ */
+public enum ExecutionMode {
+	PLATFORM,
+	VIRTUAL;
+
+	private static final Logger logger = LoggerFactory.getLogger(ExecutionMode.class);
+
+	/**
+	 * Crée l'exécuteur correspondant au mode.
+	 *
+	 * @param platformThreads taille du pool en mode {@link #PLATFORM} (et en repli)
+	 * @return exécuteur dédié
+	 */
+	public ExecutorService newExecutor(int platformThreads) {
+		if (this == VIRTUAL) {
+			ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+			if (virtual != null) {
+				return virtual;
+			}
+			logger.warn("Virtual threads require Java 21 (running {}): falling back to {} platform threads",
+					Runtime.version(), platformThreads);
+		}
+		return Executors.newFixedThreadPool(platformThreads);
+	}
+
+	/** @return {@code true} si la JVM courante fournit les threads virtuels */
+	public static boolean virtualThreadsAvailable() {
+		return virtualThreadFactoryMethod() != null;
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		Method factory = virtualThreadFactoryMethod();
+		if (factory == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			logger.warn("Unable to create a virtual thread executor: {}", e.toString());
+			return null;
+		}
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor() (Java 21+), ou null
+	private static Method virtualThreadFactoryMethod() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package com.openclassrooms.tourguide.execution;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Appels « couverts » (<i>hedged requests</i>) vers un service distant à latence variable.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>L'appel part sur l'exécuteur ; s'il n'a pas répondu au bout du quantile de latence observé (p95 par
+ *       défaut), un doublon est lancé. La première réponse réussie termine le futur, l'autre est ignorée.</li>
+ *   <li>Le quantile est calculé sur une fenêtre glissante des dernières latences (appels réussis), recalculé
+ *       toutes les {@value #RECOMPUTE_EVERY} mesures. Tant que la fenêtre compte moins de
+ *       {@value #MIN_SAMPLES} mesures, le délai initial fourni s'applique.</li>
+ *   <li>Un seul doublon par appel : au pire deux appels, et seulement pour ~5 % des demandes au p95.</li>
+ *   <li>Le futur n'échoue que si les deux tentatives échouent (ou la seule, si aucun doublon n'est parti).</li>
+ * </ul>
+ */
+public class HedgedCall {
+
+	private static final int MIN_SAMPLES = 20;
+	private static final int RECOMPUTE_EVERY = 16;
+
+	private final String name;
+	private final Executor executor;
+	private final double quantile;
+
+	// Fenêtre circulaire des dernières latences (ns), écrite sans verrou : le quantile est une estimation
+	private final long[] samples;
+	private final AtomicLong sampleCount = new AtomicLong();
+	private volatile long hedgeDelayNanos;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "hedge-timer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * @param name         nom du service appelé (messages d'erreur)
+	 * @param executor     exécuteur des appels (threads système ou virtuels)
+	 * @param quantile     quantile de latence déclenchant le doublon (ex. 0,95)
+	 * @param window       nombre de latences conservées pour le calcul du quantile
+	 * @param initialDelay délai avant doublon tant que la fenêtre est insuffisante
+	 */
+	public HedgedCall(String name, Executor executor, double quantile, int window, Duration initialDelay) {
+		if (quantile <= 0 || quantile >= 1 || window < MIN_SAMPLES || initialDelay.isNegative()) {
+			throw new IllegalArgumentException("Paramètres de doublement invalides pour " + name + " : quantile="
+					+ quantile + ", window=" + window + ", initialDelay=" + initialDelay);
+		}
+		this.name = name;
+		this.executor = executor;
+		this.quantile = quantile;
+		this.samples = new long[window];
+		this.hedgeDelayNanos = initialDelay.toNanos();
+	}
+
+	/**
+	 * Lance l'appel, doublé s'il dépasse le quantile de latence.
+	 *
+	 * @param call appel bloquant (doit pouvoir être exécuté deux fois)
+	 * @param <T>  type du résultat
+	 * @return futur de la première réponse réussie
+	 */
+	public <T> CompletableFuture<T> call(Supplier<T> call) {
+		calls.increment();
+		Call<T> pending = new Call<>(call);
+		pending.launch(false);
+		if (!pending.result.isDone()) {
+			try {
+				ScheduledFuture<?> hedge = timer.schedule(() -> pending.launch(true), hedgeDelayNanos,
+						TimeUnit.NANOSECONDS);
+				pending.result.whenComplete((value, failure) -> hedge.cancel(false));
+			} catch (RejectedExecutionException e) {
+				// Minuterie arrêtée : appel simple
+			}
+		}
+		return pending.result;
+	}
+
+	/** @return délai courant avant doublon */
+	public Duration getHedgeDelay() {
+		return Duration.ofNanos(hedgeDelayNanos);
+	}
+
+	/** @return nombre d'appels demandés */
+	public long getCallCount() {
+		return calls.sum();
+	}
+
+	/** @return nombre de doublons lancés */
+	public long getHedgeCount() {
+		return hedges.sum();
+	}
+
+	/** @return nombre d'appels terminés par le doublon plutôt que par l'appel initial */
+	public long getHedgeWinCount() {
+		return hedgeWins.sum();
+	}
+
+	/** Arrête la minuterie des doublons (les appels suivants ne sont plus doublés). */
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+
+	private void recordLatency(long nanos) {
+		long n = sampleCount.getAndIncrement();
+		samples[(int) (n % samples.length)] = nanos;
+		if (n + 1 >= MIN_SAMPLES && (n + 1) % RECOMPUTE_EVERY == 0) {
+			long[] copy = Arrays.copyOf(samples, (int) Math.min(n + 1, samples.length));
+			Arrays.sort(copy);
+			hedgeDelayNanos = copy[(int) Math.min(copy.length - 1, Math.ceil(quantile * copy.length) - 1)];
+		}
+	}
+
+	// Un appel et ses tentatives (initiale, doublon) : le résultat n'échoue que si toutes les tentatives lancées
+	// ont échoué (compteurs sous le verrou du résultat). Le premier résultat connu, succès ou échec final, est
+	// réservé par settled avant de terminer le futur : aucune tentative ne part ensuite
+	private final class Call<T> {
+		final Supplier<T> supplier;
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		private final AtomicBoolean settled = new AtomicBoolean();
+		private int launched;
+		private int failed;
+
+		Call(Supplier<T> supplier) {
+			this.supplier = supplier;
+		}
+
+		// Lance une tentative, sauf si le résultat est déjà connu
+		void launch(boolean isHedge) {
+			synchronized (result) {
+				if (settled.get()) {
+					return;
+				}
+				launched++;
+			}
+			if (isHedge) {
+				hedges.increment();
+			}
+			try {
+				executor.execute(() -> run(isHedge));
+			} catch (RejectedExecutionException e) {
+				fail(new IllegalStateException("Exécuteur de " + name + " arrêté", e));
+			}
+		}
+
+		private void run(boolean isHedge) {
+			if (settled.get()) {
+				return;
+			}
+			long started = System.nanoTime();
+			T value;
+			try {
+				value = supplier.get();
+			} catch (RuntimeException | Error e) {
+				fail(e);
+				return;
+			}
+			recordLatency(System.nanoTime() - started);
+			// Compté avant de terminer le résultat : les compteurs sont à jour pour l'appelant réveillé
+			if (settled.compareAndSet(false, true)) {
+				if (isHedge) {
+					hedgeWins.increment();
+				}
+				result.complete(value);
+			}
+		}
+
+		private void fail(Throwable failure) {
+			synchronized (result) {
+				// Réservé sous le verrou : un doublon lancé entre-temps verrait encore l'appel en cours
+				if (++failed < launched || !settled.compareAndSet(false, true)) {
+					return;
+				}
+			}
+			result.completeExceptionally(failure);
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package com.openclassrooms.tourguide.execution;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Regroupe les demandes adressées à un service distant bloquant et les exécute sur un nombre borné de
+ * <i>workers</i>.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>{@link #submit(Object)} dépose la demande dans une file et renvoie immédiatement un futur : l'appelant
+ *       ne bloque aucun thread en attendant la réponse.</li>
+ *   <li>Au plus autant de tâches que la limite courante sont lancées sur l'exécuteur ; chacune prélève un lot de demandes,
+ *       les traite, puis recommence tant que la file n'est pas vide. Un seul passage de main (et un seul
+ *       réveil de thread) par lot, au lieu d'une tâche par demande.</li>
+ *   <li>Les lots se forment d'eux-mêmes quand tous les workers sont occupés : tant qu'un worker est libre,
+ *       une demande part sans attendre. La taille d'un lot est la part équitable de la file
+ *       ({@code file / limite}, bornée par {@code maxBatchSize}) : en fin de passe, aucun worker ne garde
+ *       un long lot pendant que les autres sont inactifs.</li>
+ *   <li>Une erreur sur une demande n'échoue que son futur. Une demande peut avoir un délai, armé au prélèvement de
+ *       son lot (l'attente dans la file n'est pas comptée) et allongé d'un délai par demande qui la précède dans le
+ *       lot : à l'échéance, son futur échoue avec une {@link TimeoutException}, ainsi que ceux des demandes suivantes
+ *       du lot, que le worker, bloqué jusqu'à la réponse du service, ne pourra pas traiter à temps. Les demandes
+ *       déjà échues, ou abandonnées par l'appelant pendant l'attente (voir {@link CircuitBreaker}), sont sautées
+ *       sans appel.</li>
+ *   <li>Le nombre de workers suit une {@link AdaptiveLimit} : chaque appel lui transmet sa durée ; si la limite
+ *       baisse, les workers en trop s'arrêtent à la fin de leur lot.</li>
+ * </ul>
+ *
+ * <p>Le regroupement des demandes identiques en cours est assuré en amont (voir {@code ExpiringCache#getAsync}).</p>
+ *
+ * @param <K> type des demandes
+ * @param <V> type des réponses
+ */
+public class RequestBatcher<K, V> {
+
+	private final String name;
+	private final Function<K, V> loader;
+	private final Executor executor;
+	private final AdaptiveLimit limit;
+	private final int maxBatchSize;
+
+	private final Queue<Request<K, V>> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+
+	/**
+	 * @param name         nom du service appelé (messages d'erreur)
+	 * @param loader       appel bloquant pour une demande
+	 * @param executor     exécuteur des workers (threads système ou virtuels)
+	 * @param maxWorkers   nombre maximal d'appels simultanés (&gt;= 1), fixe
+	 * @param maxBatchSize nombre maximal de demandes prélevées d'un coup par un worker (&gt;= 1)
+	 */
+	public RequestBatcher(String name, Function<K, V> loader, Executor executor, int maxWorkers, int maxBatchSize) {
+		this(name, loader, executor, AdaptiveLimit.fixed(maxWorkers), maxBatchSize);
+	}
+
+	/**
+	 * @param name         nom du service appelé (messages d'erreur)
+	 * @param loader       appel bloquant pour une demande
+	 * @param executor     exécuteur des workers (threads système ou virtuels)
+	 * @param limit        limite d'appels simultanés (fixe ou adaptative)
+	 * @param maxBatchSize nombre maximal de demandes prélevées d'un coup par un worker (&gt;= 1)
+	 */
+	public RequestBatcher(String name, Function<K, V> loader, Executor executor, AdaptiveLimit limit, int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Paramètres de regroupement invalides pour " + name
+					+ " : maxBatchSize=" + maxBatchSize);
+		}
+		this.name = name;
+		this.loader = loader;
+		this.executor = executor;
+		this.limit = limit;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Dépose une demande.
+	 *
+	 * @param request demande à transmettre au service
+	 * @return futur de la réponse (en échec si l'appel échoue ou si l'exécuteur refuse la tâche)
+	 */
+	public CompletableFuture<V> submit(K request) {
+		return submit(request, Duration.ZERO);
+	}
+
+	/**
+	 * Dépose une demande avec délai.
+	 *
+	 * @param request demande à transmettre au service
+	 * @param timeout délai maximal de l'appel, à partir du prélèvement de son lot par un worker (un délai de plus par
+	 *                demande qui la précède dans le lot ; {@code 0} : aucun)
+	 * @return futur de la réponse (en échec si l'appel échoue ou dépasse le délai, ou si l'exécuteur refuse la tâche)
+	 */
+	public CompletableFuture<V> submit(K request, Duration timeout) {
+		return submit(request, timeout, () -> true);
+	}
+
+	/**
+	 * Dépose une demande avec délai, que l'appelant peut abandonner tant qu'elle attend dans la file.
+	 *
+	 * @param request demande à transmettre au service
+	 * @param timeout délai maximal de l'appel, comme pour {@link #submit(Object, Duration)}
+	 * @param start   appelé au prélèvement du lot, avant tout appel : {@code false} si l'appelant a abandonné la
+	 *                demande entre-temps (elle est alors sautée sans appel et son futur n'est jamais terminé)
+	 * @return futur de la réponse (en échec si l'appel échoue ou dépasse le délai, ou si l'exécuteur refuse la tâche)
+	 */
+	public CompletableFuture<V> submit(K request, Duration timeout, BooleanSupplier start) {
+		Request<K, V> pending = new Request<>(request, timeout.toNanos(), start);
+		queue.add(pending);
+		queued.incrementAndGet();
+		submitted.increment();
+		if (!startWorkerIfNeeded()) {
+			limit.rejected();
+		}
+		return pending.result;
+	}
+
+	/** @return limite courante d'appels simultanés */
+	public int getMaxWorkers() {
+		return limit.getLimit();
+	}
+
+	/** @return limite (courante, bornes, admissions refusées) */
+	public AdaptiveLimit getLimit() {
+		return limit;
+	}
+
+	/** @return nombre maximal de demandes par lot */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/** @return nombre de workers en cours */
+	public int getActiveWorkers() {
+		return activeWorkers.get();
+	}
+
+	/** @return nombre de demandes en attente d'un worker */
+	public int getQueuedCount() {
+		return queued.get();
+	}
+
+	/** @return nombre total de demandes déposées */
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	/** @return nombre de lots prélevés par les workers */
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	// Lance un worker si des demandes attendent et qu'une place est libre ; renvoie false si la limite est atteinte
+	private boolean startWorkerIfNeeded() {
+		int active;
+		while (queued.get() > 0) {
+			active = activeWorkers.get();
+			if (active >= limit.getLimit()) {
+				return false;
+			}
+			if (activeWorkers.compareAndSet(active, active + 1)) {
+				try {
+					executor.execute(this::work);
+				} catch (RejectedExecutionException e) {
+					activeWorkers.decrementAndGet();
+					failQueued(new IllegalStateException("Exécuteur de " + name + " arrêté", e));
+				}
+				return true;
+			}
+		}
+		return true;
+	}
+
+	// Boucle d'un worker : prélève et traite des lots jusqu'à ce que la file soit vide, ou que la limite baisse
+	private void work() {
+		try {
+			while (true) {
+				int workers = limit.getLimit();
+				// Worker en trop après une baisse de la limite (si trop s'arrêtent, le finally en relance un)
+				if (activeWorkers.get() > workers) {
+					return;
+				}
+				int share = Math.max(1, (queued.get() + workers - 1) / workers);
+				int size = Math.min(maxBatchSize, share);
+				List<Request<K, V>> batch = new ArrayList<>(size);
+				Request<K, V> next;
+				while (batch.size() < size && (next = queue.poll()) != null) {
+					queued.decrementAndGet();
+					batch.add(next);
+				}
+				if (batch.isEmpty()) {
+					return;
+				}
+				// Demandes abandonnées par l'appelant pendant l'attente : ni appel, ni place dans le lot
+				batch.removeIf(request -> !request.start.getAsBoolean());
+				if (batch.isEmpty()) {
+					continue;
+				}
+				batches.increment();
+				arm(batch);
+				for (Request<K, V> request : batch) {
+					if (request.result.isDone()) {
+						// Échue avant son tour : pas d'appel
+						continue;
+					}
+					long started = System.nanoTime();
+					boolean failed = !request.complete(loader);
+					limit.onSample(System.nanoTime() - started, activeWorkers.get(), failed);
+				}
+				// La limite a pu augmenter pendant le lot : renfort si des demandes attendent
+				startWorkerIfNeeded();
+			}
+		} finally {
+			activeWorkers.decrementAndGet();
+			// Une demande a pu arriver entre le dernier prélèvement et la libération de la place
+			startWorkerIfNeeded();
+		}
+	}
+
+	// Arme les délais du lot dès son prélèvement ; l'échéance d'une demande fait échouer les suivantes
+	private void arm(List<Request<K, V>> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			Request<K, V> request = batch.get(i);
+			if (request.timeoutNanos <= 0) {
+				continue;
+			}
+			List<Request<K, V>> rest = batch.subList(i + 1, batch.size());
+			request.result.orTimeout(request.timeoutNanos * (i + 1), TimeUnit.NANOSECONDS)
+					.whenComplete((ignored, failure) -> {
+						if (failure instanceof TimeoutException) {
+							for (Request<K, V> later : rest) {
+								later.result.completeExceptionally(new TimeoutException(
+										"Lot de " + name + " bloqué par une demande sans réponse"));
+							}
+						}
+					});
+		}
+	}
+
+	private void failQueued(RuntimeException failure) {
+		Request<K, V> request;
+		while ((request = queue.poll()) != null) {
+			queued.decrementAndGet();
+			request.result.completeExceptionally(failure);
+		}
+	}
+
+	// Demande en attente et futur de sa réponse
+	private static final class Request<K, V> {
+		final K key;
+		final long timeoutNanos;
+		final BooleanSupplier start;
+		final CompletableFuture<V> result = new CompletableFuture<>();
+
+		Request(K key, long timeoutNanos, BooleanSupplier start) {
+			this.key = key;
+			this.timeoutNanos = timeoutNanos;
+			this.start = start;
+		}
+
+		// Renvoie false si l'appel a échoué
+		boolean complete(Function<K, V> loader) {
+			try {
+				result.complete(loader.apply(key));
+				return true;
+			} catch (RuntimeException | Error e) {
+				result.completeExceptionally(e);
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.openclassrooms.tourguide.geo;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * Résultat d'une recherche de plus proches voisins : une attraction et sa distance
+ * (en miles) au point de référence, calculée une seule fois.
+ */
+public class AttractionDistance {
+	public final Attraction attraction;
+	public final double distance;
+
+	/**
+	 * @param attraction attraction trouvée
+	 * @param distance   distance au point de référence (miles)
+	 */
+	public AttractionDistance(Attraction attraction, double distance) {
+		this.attraction = attraction;
+		this.distance = distance;
+	}
+}
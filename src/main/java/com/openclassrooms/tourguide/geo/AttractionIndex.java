@@ -0,0 +1,387 @@
+package com.openclassrooms.tourguide.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToDoubleBiFunction;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+/**
+ * Index spatial (grille lat/long à cellules fixes) sur le catalogue d'attractions.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Chaque attraction est rangée dans la cellule (d'environ {@code cellSizeDegrees} degrés) qui la contient.</li>
+ *   <li>Une requête de rayon donné calcule la « bounding box » sphérique du cercle de recherche et ne renvoie
+ *       que les attractions des cellules qui la recoupent (gestion de l'antiméridien et des pôles).</li>
+ *   <li>Le résultat est un <b>sur-ensemble</b> des attractions réellement dans le rayon : l'appelant applique
+ *       ensuite le test de distance exact, ce qui garantit le même résultat que le parcours exhaustif.</li>
+ * </ul>
+ *
+ * <p>Les coordonnées de chaque attraction sont aussi préparées pour {@link GeoDistance} (radians, cosinus de la
+ * latitude) : {@link #within(Location, double, DistanceMode)} et {@link #nearest(Location, int)} évaluent les
+ * distances sans objet intermédiaire par attraction ni trigonométrie redondante.</p>
+ *
+ * <p>Les candidats sont renvoyés dans l'ordre du catalogue d'origine. L'index est immuable : quand le
+ * catalogue change, on en construit un nouveau (voir {@link #sameCatalog(List)}).</p>
+ */
+public final class AttractionIndex {
+
+	// Taille de cellule par défaut (en degrés) : ~69 miles en latitude, adapté au proximityBuffer de 10 miles.
+	public static final double DEFAULT_CELL_SIZE_DEGREES = 1.0;
+
+	// Miles statutaires par degré d'arc (même conversion que RewardsService#getDistance : 60 NM × 1.15077945).
+	private static final double MILES_PER_DEGREE = GeoDistance.MILES_PER_DEGREE;
+
+	// Marge (en degrés) ajoutée au rayon pour absorber les erreurs d'arrondi aux bords.
+	private static final double EPSILON_DEGREES = 1e-9;
+
+	// Domaine du pré-filtre équirectangulaire (voir DistanceMode) : rayon <= 200 miles, |latitude| <= 85°,
+	// avec une marge de 2 % au-dessus de l'erreur maximale mesurée (1,3 %)
+	private static final double PRECHECK_MAX_RADIUS_MILES = 200;
+	private static final double PRECHECK_MAX_LATITUDE_RADIANS = Math.toRadians(85);
+	private static final double PRECHECK_MARGIN = 1.02;
+
+	private final List<Attraction> attractions;
+	private final double latCellSize;
+	private final double lonCellSize;
+	private final int latCells;
+	private final int lonCells;
+	// Clé = latIndex * lonCells + lonIndex ; valeur = positions (croissantes) dans le catalogue
+	private final Map<Integer, int[]> cells;
+	// Coordonnées préparées par position dans le catalogue : latitude et longitude en radians, cosinus de la latitude
+	private final double[] latRadians;
+	private final double[] lonRadians;
+	private final double[] cosLat;
+
+	/**
+	 * Construit l'index avec la taille de cellule par défaut.
+	 * @param attractions catalogue d'attractions (copié)
+	 */
+	public AttractionIndex(List<Attraction> attractions) {
+		this(attractions, DEFAULT_CELL_SIZE_DEGREES);
+	}
+
+	/**
+	 * @param attractions     catalogue d'attractions (copié)
+	 * @param cellSizeDegrees taille d'une cellule de la grille, en degrés (&gt; 0)
+	 */
+	public AttractionIndex(List<Attraction> attractions, double cellSizeDegrees) {
+		if (cellSizeDegrees <= 0) {
+			throw new IllegalArgumentException("cellSizeDegrees doit être > 0 : " + cellSizeDegrees);
+		}
+		this.attractions = List.copyOf(attractions);
+		// Taille effective ajustée pour que la grille pave exactement le globe (bouclage en longitude)
+		this.latCells = (int) Math.ceil(180 / cellSizeDegrees);
+		this.lonCells = (int) Math.ceil(360 / cellSizeDegrees);
+		this.latCellSize = 180.0 / latCells;
+		this.lonCellSize = 360.0 / lonCells;
+
+		Map<Integer, List<Integer>> buckets = new HashMap<>();
+		for (int i = 0; i < this.attractions.size(); i++) {
+			Attraction a = this.attractions.get(i);
+			buckets.computeIfAbsent(cellKey(latIndex(a.latitude), lonIndex(a.longitude)), k -> new ArrayList<>()).add(i);
+		}
+		this.cells = new HashMap<>(buckets.size() * 2);
+		buckets.forEach((key, positions) ->
+				cells.put(key, positions.stream().mapToInt(Integer::intValue).toArray()));
+
+		int size = this.attractions.size();
+		this.latRadians = new double[size];
+		this.lonRadians = new double[size];
+		this.cosLat = new double[size];
+		for (int i = 0; i < size; i++) {
+			Attraction a = this.attractions.get(i);
+			latRadians[i] = Math.toRadians(a.latitude);
+			lonRadians[i] = Math.toRadians(a.longitude);
+			cosLat[i] = Math.cos(latRadians[i]);
+		}
+	}
+
+	/** @return le catalogue indexé (liste immuable, ordre d'origine) */
+	public List<Attraction> getAttractions() {
+		return attractions;
+	}
+
+	/**
+	 * Indique si le catalogue fourni est identique à celui indexé (même ordre, mêmes noms et coordonnées).
+	 * <p>Les {@code attractionId} ne sont pas comparés : {@code GpsUtil} en régénère à chaque appel.</p>
+	 *
+	 * @param other catalogue à comparer
+	 * @return {@code true} si l'index peut être réutilisé tel quel
+	 */
+	public boolean sameCatalog(List<Attraction> other) {
+		if (other.size() != attractions.size()) {
+			return false;
+		}
+		for (int i = 0; i < other.size(); i++) {
+			Attraction a = attractions.get(i);
+			Attraction b = other.get(i);
+			if (a.latitude != b.latitude || a.longitude != b.longitude
+					|| !a.attractionName.equals(b.attractionName)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Renvoie les attractions susceptibles d'être à moins de {@code radiusMiles} du point donné.
+	 *
+	 * @param location    point de référence
+	 * @param radiusMiles rayon de recherche (miles)
+	 * @return sur-ensemble des attractions dans le rayon, dans l'ordre du catalogue
+	 */
+	public List<Attraction> candidates(Location location, double radiusMiles) {
+		int[] hits = new int[attractions.size()];
+		int count = scanCells(location, radiusMiles, hits);
+		if (count < 0) {
+			return attractions;
+		}
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		Arrays.sort(hits, 0, count);
+		List<Attraction> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(attractions.get(hits[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Renvoie les attractions situées à au plus {@code radiusMiles} du point donné, selon le mode de distance.
+	 *
+	 * <p>Seules les cellules de la grille qui recoupent le cercle sont parcourues. En mode
+	 * {@link DistanceMode#HAVERSINE}, chaque candidat passe d'abord le pré-filtre équirectangulaire (sans
+	 * trigonométrie, appliqué uniquement dans son domaine de précision), puis le test exact sur la clé de
+	 * haversine (sans {@code asin} ni {@code sqrt}). Les autres modes comparent directement la distance en miles.</p>
+	 *
+	 * @param location    point de référence
+	 * @param radiusMiles rayon (miles)
+	 * @param mode        calcul de distance à appliquer
+	 * @return attractions dans le rayon, dans l'ordre du catalogue
+	 */
+	public List<Attraction> within(Location location, double radiusMiles, DistanceMode mode) {
+		int[] hits = new int[attractions.size()];
+		int count = scanCells(location, radiusMiles, hits);
+		int scanned = (count < 0) ? attractions.size() : count;
+		if (scanned == 0) {
+			return Collections.emptyList();
+		}
+
+		double phi = Math.toRadians(location.latitude);
+		double cosPhi = Math.cos(phi);
+		double lambda = Math.toRadians(location.longitude);
+		double radiusKey = GeoDistance.milesToKey(radiusMiles);
+		boolean precheck = mode == DistanceMode.HAVERSINE && radiusMiles <= PRECHECK_MAX_RADIUS_MILES
+				&& Math.abs(phi) <= PRECHECK_MAX_LATITUDE_RADIANS;
+		double precheckRadius = radiusMiles / GeoDistance.EARTH_RADIUS_MILES * PRECHECK_MARGIN;
+		double precheckSquared = precheckRadius * precheckRadius;
+
+		// Les positions retenues sont compactées en tête de « hits » (relu dans le même ordre)
+		int matches = 0;
+		for (int j = 0; j < scanned; j++) {
+			int i = (count < 0) ? j : hits[j];
+			boolean inside;
+			if (mode == DistanceMode.HAVERSINE) {
+				if (precheck && Math.abs(latRadians[i]) <= PRECHECK_MAX_LATITUDE_RADIANS
+						&& GeoDistance.equirectangularSquared(phi, cosPhi, lambda,
+								latRadians[i], cosLat[i], lonRadians[i]) > precheckSquared) {
+					continue;
+				}
+				inside = GeoDistance.haversineKey(latRadians[i], cosLat[i], lonRadians[i], phi, cosPhi, lambda) <= radiusKey;
+			} else {
+				Attraction a = attractions.get(i);
+				inside = mode.miles(a.latitude, a.longitude, location.latitude, location.longitude) <= radiusMiles;
+			}
+			if (inside) {
+				hits[matches++] = i;
+			}
+		}
+		if (matches == 0) {
+			return Collections.emptyList();
+		}
+		Arrays.sort(hits, 0, matches);
+		List<Attraction> result = new ArrayList<>(matches);
+		for (int j = 0; j < matches; j++) {
+			result.add(attractions.get(hits[j]));
+		}
+		return result;
+	}
+
+	/**
+	 * Renvoie les {@code k} attractions les plus proches du point donné selon la distance de haversine, triées par
+	 * distance croissante (à distance égale, l'ordre du catalogue est conservé).
+	 *
+	 * <p>Le classement se fait sur la clé de haversine, calculée à partir des coordonnées préparées : seules les
+	 * {@code k} attractions retenues sont converties en miles. Les distances renvoyées sont identiques à celles de
+	 * {@link GeoDistance#haversineMiles(double, double, double, double)}.</p>
+	 *
+	 * @param location point de référence
+	 * @param k        nombre de voisins souhaités (&gt;= 0)
+	 * @return au plus {@code k} attractions accompagnées de leur distance (miles)
+	 */
+	public List<AttractionDistance> nearest(Location location, int k) {
+		double phi = Math.toRadians(location.latitude);
+		double cosPhi = Math.cos(phi);
+		double lambda = Math.toRadians(location.longitude);
+		return select(k,
+				i -> GeoDistance.haversineKey(latRadians[i], cosLat[i], lonRadians[i], phi, cosPhi, lambda),
+				GeoDistance::keyToMiles);
+	}
+
+	/**
+	 * Renvoie les {@code k} attractions les plus proches du point donné, triées par distance croissante
+	 * (à distance égale, l'ordre du catalogue est conservé).
+	 *
+	 * <p>Parcours unique du catalogue avec un tas borné à {@code k} éléments : O(N log k) au lieu d'un tri
+	 * complet O(N log N), et une seule évaluation de la distance par attraction.</p>
+	 *
+	 * @param location point de référence
+	 * @param k        nombre de voisins souhaités (&gt;= 0)
+	 * @param distance fonction de distance (miles) entre deux points
+	 * @return au plus {@code k} attractions accompagnées de leur distance
+	 */
+	public List<AttractionDistance> nearest(Location location, int k,
+			ToDoubleBiFunction<Location, Location> distance) {
+		return select(k, i -> distance.applyAsDouble(attractions.get(i), location), DoubleUnaryOperator.identity());
+	}
+
+	// Sélection des k plus petites valeurs de « score » : tas « max » sur tableaux primitifs (la racine est le
+	// plus mauvais des k candidats retenus), puis extraction dans l'ordre croissant
+	private List<AttractionDistance> select(int k, IntToDoubleFunction score, DoubleUnaryOperator toMiles) {
+		int capacity = Math.min(k, attractions.size());
+		if (capacity <= 0) {
+			return Collections.emptyList();
+		}
+		int[] positions = new int[capacity];
+		double[] scores = new double[capacity];
+		int size = 0;
+		for (int i = 0; i < attractions.size(); i++) {
+			double value = score.applyAsDouble(i);
+			if (size < capacity) {
+				siftUp(positions, scores, size++, i, value);
+			} else if (compare(value, i, scores[0], positions[0]) < 0) {
+				siftDown(positions, scores, size, i, value);
+			}
+		}
+		AttractionDistance[] sorted = new AttractionDistance[size];
+		while (size > 0) {
+			int position = positions[0];
+			double value = scores[0];
+			size--;
+			if (size > 0) {
+				siftDown(positions, scores, size, positions[size], scores[size]);
+			}
+			sorted[size] = new AttractionDistance(attractions.get(position), toMiles.applyAsDouble(value));
+		}
+		return Arrays.asList(sorted);
+	}
+
+	// Insère (position, value) à l'indice « hole » puis le remonte tant qu'il est plus mauvais que son parent
+	private static void siftUp(int[] positions, double[] scores, int hole, int position, double value) {
+		while (hole > 0) {
+			int parent = (hole - 1) >>> 1;
+			if (compare(value, position, scores[parent], positions[parent]) <= 0) {
+				break;
+			}
+			positions[hole] = positions[parent];
+			scores[hole] = scores[parent];
+			hole = parent;
+		}
+		positions[hole] = position;
+		scores[hole] = value;
+	}
+
+	// Remplace la racine par (position, value) puis le descend tant qu'un enfant est plus mauvais
+	private static void siftDown(int[] positions, double[] scores, int size, int position, double value) {
+		int hole = 0;
+		int child;
+		while ((child = 2 * hole + 1) < size) {
+			if (child + 1 < size && compare(scores[child + 1], positions[child + 1], scores[child], positions[child]) > 0) {
+				child++;
+			}
+			if (compare(value, position, scores[child], positions[child]) >= 0) {
+				break;
+			}
+			positions[hole] = positions[child];
+			scores[hole] = scores[child];
+			hole = child;
+		}
+		positions[hole] = position;
+		scores[hole] = value;
+	}
+
+	private static int compare(double valueA, int positionA, double valueB, int positionB) {
+		int byValue = Double.compare(valueA, valueB);
+		return (byValue != 0) ? byValue : Integer.compare(positionA, positionB);
+	}
+
+	// Copie dans « hits » les positions des cellules qui recoupent le cercle de recherche et renvoie leur nombre
+	// (non triées), ou -1 si le parcours complet du catalogue est moins coûteux
+	private int scanCells(Location location, double radiusMiles, int[] hits) {
+		double radiusDegrees = radiusMiles / MILES_PER_DEGREE + EPSILON_DEGREES;
+		if (radiusDegrees >= 180) {
+			return -1;
+		}
+
+		double minLat = location.latitude - radiusDegrees;
+		double maxLat = location.latitude + radiusDegrees;
+		int minLonIdx;
+		int lonSpan;
+		if (minLat <= -90 || maxLat >= 90) {
+			// Le cercle contient un pôle : toutes les longitudes sont concernées
+			minLat = Math.max(minLat, -90);
+			maxLat = Math.min(maxLat, 90);
+			minLonIdx = 0;
+			lonSpan = lonCells;
+		} else {
+			double r = Math.toRadians(radiusDegrees);
+			double deltaLon = Math.toDegrees(Math.asin(Math.sin(r) / Math.cos(Math.toRadians(location.latitude))));
+			minLonIdx = (int) Math.floor((location.longitude - deltaLon + 180) / lonCellSize);
+			int maxLonIdx = (int) Math.floor((location.longitude + deltaLon + 180) / lonCellSize);
+			lonSpan = Math.min(maxLonIdx - minLonIdx + 1, lonCells);
+		}
+		int minLatIdx = latIndex(minLat);
+		int maxLatIdx = latIndex(maxLat);
+
+		// Si la zone couvre plus de cellules qu'il n'y a d'attractions, le parcours complet est moins cher
+		long cellsToScan = (long) (maxLatIdx - minLatIdx + 1) * lonSpan;
+		if (cellsToScan >= attractions.size()) {
+			return -1;
+		}
+
+		int count = 0;
+		for (int y = minLatIdx; y <= maxLatIdx; y++) {
+			for (int dx = 0; dx < lonSpan; dx++) {
+				int[] cell = cells.get(cellKey(y, Math.floorMod(minLonIdx + dx, lonCells)));
+				if (cell != null) {
+					System.arraycopy(cell, 0, hits, count, cell.length);
+					count += cell.length;
+				}
+			}
+		}
+		return count;
+	}
+
+	private int latIndex(double latitude) {
+		int idx = (int) Math.floor((latitude + 90) / latCellSize);
+		return Math.min(Math.max(idx, 0), latCells - 1);
+	}
+
+	private int lonIndex(double longitude) {
+		return Math.floorMod((int) Math.floor((longitude + 180) / lonCellSize), lonCells);
+	}
+
+	private int cellKey(int latIdx, int lonIdx) {
+		return latIdx * lonCells + lonIdx;
+	}
+}
@@ -0,0 +1,52 @@
+package com.openclassrooms.tourguide.geo;
+
+/**
+ * Méthode de calcul des distances utilisée par {@code RewardsService}.
+ *
+ * <p>Précision mesurée par rapport à la distance de haversine (sphère de rayon
+ * {@link GeoDistance#EARTH_RADIUS_MILES}), sur des paires de points tirées au hasard :</p>
+ * <table>
+ *   <caption>Enveloppe de précision</caption>
+ *   <tr><th>Mode</th><th>Domaine</th><th>Erreur maximale</th></tr>
+ *   <tr><td>{@link #HAVERSINE}</td><td>toutes distances</td><td>référence (stable aussi à très courte distance)</td></tr>
+ *   <tr><td>{@link #EQUIRECTANGULAR}</td><td>&lt;= 10 miles, |latitude| &lt;= 80°</td><td>0,001 % relatif</td></tr>
+ *   <tr><td></td><td>&lt;= 50 miles, |latitude| &lt;= 80°</td><td>0,03 % relatif</td></tr>
+ *   <tr><td></td><td>&lt;= 200 miles, |latitude| &lt;= 85°</td><td>1,3 % relatif</td></tr>
+ *   <tr><td></td><td>au-delà (grandes distances, pôles)</td><td>non garantie</td></tr>
+ *   <tr><td>{@link #LAW_OF_COSINES}</td><td>&gt;= 1 mile</td><td>~1e-6 mile</td></tr>
+ *   <tr><td></td><td>quelques mètres</td><td>jusqu'à 0,05 % relatif ; {@code NaN} possible pour deux points confondus</td></tr>
+ * </table>
+ */
+public enum DistanceMode {
+
+	/** Haversine : exacte sur la sphère, numériquement stable ; mode par défaut. */
+	HAVERSINE {
+		@Override
+		public double miles(double lat1, double lon1, double lat2, double lon2) {
+			return GeoDistance.haversineMiles(lat1, lon1, lat2, lon2);
+		}
+	},
+
+	/** Approximation équirectangulaire : la plus rapide, réservée aux courtes distances hors zones polaires. */
+	EQUIRECTANGULAR {
+		@Override
+		public double miles(double lat1, double lon1, double lat2, double lon2) {
+			return GeoDistance.equirectangularMiles(lat1, lon1, lat2, lon2);
+		}
+	},
+
+	/** Loi sphérique des cosinus : formule historique, conservée pour comparaison. */
+	LAW_OF_COSINES {
+		@Override
+		public double miles(double lat1, double lon1, double lat2, double lon2) {
+			return GeoDistance.lawOfCosinesMiles(lat1, lon1, lat2, lon2);
+		}
+	};
+
+	/**
+	 * Distance entre deux points donnés en degrés.
+	 *
+	 * @return distance en miles statutaires
+	 */
+	public abstract double miles(double lat1, double lon1, double lat2, double lon2);
+}
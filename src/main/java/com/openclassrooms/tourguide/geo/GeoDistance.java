@@ -0,0 +1,142 @@
+package com.openclassrooms.tourguide.geo;
+
+/**
+ * Noyau de calcul des distances sur la sphère terrestre, sur des {@code double} uniquement (aucune allocation).
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Les points peuvent être « préparés » une fois pour toutes (latitude et longitude en radians, cosinus de la
+ *       latitude) : c'est ce que fait {@link AttractionIndex} pour chaque attraction du catalogue.</li>
+ *   <li>La formule de haversine est d'abord réduite à sa <b>clé</b> {@code sin²(θ/2)} (θ = angle au centre).
+ *       La clé croît avec la distance : comparer ou trier des clés donne le même résultat que comparer des
+ *       distances, sans {@code asin} ni {@code sqrt}. La conversion en miles n'est faite que pour les résultats
+ *       retenus ({@link #keyToMiles(double)}), et un rayon se convertit une seule fois en clé ({@link #milesToKey(double)}).</li>
+ *   <li>L'approximation équirectangulaire ne demande aucune fonction trigonométrique sur des points préparés :
+ *       elle sert de pré-filtre aux tests de proximité à courte distance.</li>
+ * </ul>
+ *
+ * <p>Le rayon terrestre retenu ({@link #EARTH_RADIUS_MILES}) correspond à la conversion historique de
+ * {@code RewardsService} : 1 degré d'arc = 60 milles nautiques × 1.15077945.</p>
+ *
+ * @see DistanceMode
+ */
+public final class GeoDistance {
+
+	// Facteur de conversion des milles nautiques vers les miles statutaires.
+	private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+
+	/** Miles statutaires par degré d'arc (60 milles nautiques). */
+	public static final double MILES_PER_DEGREE = 60 * STATUTE_MILES_PER_NAUTICAL_MILE;
+
+	/** Rayon terrestre (miles statutaires) cohérent avec {@link #MILES_PER_DEGREE}. */
+	public static final double EARTH_RADIUS_MILES = MILES_PER_DEGREE * 180 / Math.PI;
+
+	private GeoDistance() {
+	}
+
+	/**
+	 * Distance de haversine entre deux points (degrés).
+	 *
+	 * @return distance en miles
+	 */
+	public static double haversineMiles(double lat1, double lon1, double lat2, double lon2) {
+		double phi1 = Math.toRadians(lat1);
+		double phi2 = Math.toRadians(lat2);
+		return keyToMiles(haversineKey(phi1, Math.cos(phi1), Math.toRadians(lon1),
+				phi2, Math.cos(phi2), Math.toRadians(lon2)));
+	}
+
+	/**
+	 * Clé de haversine {@code sin²(Δφ/2) + cos φ1 · cos φ2 · sin²(Δλ/2)} entre deux points préparés.
+	 * <p>Valeur dans [0, 1], croissante avec la distance ; symétrique en ses deux points.</p>
+	 *
+	 * @param phi1    latitude du premier point (radians)
+	 * @param cosPhi1 cosinus de {@code phi1}
+	 * @param lambda1 longitude du premier point (radians)
+	 * @param phi2    latitude du second point (radians)
+	 * @param cosPhi2 cosinus de {@code phi2}
+	 * @param lambda2 longitude du second point (radians)
+	 * @return clé de haversine
+	 */
+	public static double haversineKey(double phi1, double cosPhi1, double lambda1,
+			double phi2, double cosPhi2, double lambda2) {
+		double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2);
+		double sinHalfDeltaLambda = Math.sin((lambda2 - lambda1) / 2);
+		double key = sinHalfDeltaPhi * sinHalfDeltaPhi + cosPhi1 * cosPhi2 * sinHalfDeltaLambda * sinHalfDeltaLambda;
+		// Les arrondis peuvent dépasser 1 de quelques ulp pour deux points antipodaux
+		return Math.min(key, 1.0);
+	}
+
+	/**
+	 * @param key clé de haversine (voir {@link #haversineKey})
+	 * @return distance correspondante en miles
+	 */
+	public static double keyToMiles(double key) {
+		return 2 * EARTH_RADIUS_MILES * Math.asin(Math.sqrt(key));
+	}
+
+	/**
+	 * Convertit un rayon en clé de haversine : {@code haversineKey(...) <= milesToKey(r)} équivaut à
+	 * « distance &lt;= r ».
+	 *
+	 * @param miles rayon (miles, &gt;= 0)
+	 * @return clé seuil ; {@link Double#POSITIVE_INFINITY} si le rayon dépasse la demi-circonférence
+	 */
+	public static double milesToKey(double miles) {
+		double halfAngle = miles / EARTH_RADIUS_MILES / 2;
+		if (halfAngle >= Math.PI / 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double sinHalfAngle = Math.sin(halfAngle);
+		return sinHalfAngle * sinHalfAngle;
+	}
+
+	/**
+	 * Approximation équirectangulaire entre deux points (degrés).
+	 *
+	 * @return distance approchée en miles (voir {@link DistanceMode#EQUIRECTANGULAR} pour la précision)
+	 */
+	public static double equirectangularMiles(double lat1, double lon1, double lat2, double lon2) {
+		double phi1 = Math.toRadians(lat1);
+		double phi2 = Math.toRadians(lat2);
+		return EARTH_RADIUS_MILES * Math.sqrt(equirectangularSquared(phi1, Math.cos(phi1), Math.toRadians(lon1),
+				phi2, Math.cos(phi2), Math.toRadians(lon2)));
+	}
+
+	/**
+	 * Carré de l'angle équirectangulaire (radians²) entre deux points préparés, sans fonction trigonométrique :
+	 * la longitude est pondérée par la moyenne des cosinus des deux latitudes.
+	 * <p>À comparer au carré d'un rayon angulaire ; l'écart en longitude est ramené dans [-π, π]
+	 * (passage de l'antiméridien).</p>
+	 *
+	 * @return carré de l'angle approché entre les deux points
+	 */
+	public static double equirectangularSquared(double phi1, double cosPhi1, double lambda1,
+			double phi2, double cosPhi2, double lambda2) {
+		double deltaLambda = lambda2 - lambda1;
+		if (deltaLambda > Math.PI) {
+			deltaLambda -= 2 * Math.PI;
+		} else if (deltaLambda < -Math.PI) {
+			deltaLambda += 2 * Math.PI;
+		}
+		double x = deltaLambda * (cosPhi1 + cosPhi2) / 2;
+		double y = phi2 - phi1;
+		return x * x + y * y;
+	}
+
+	/**
+	 * Distance par la loi sphérique des cosinus (formule historique de {@code RewardsService#getDistance}).
+	 *
+	 * @return distance en miles ({@code NaN} possible pour deux points confondus, par arrondi)
+	 */
+	public static double lawOfCosinesMiles(double lat1, double lon1, double lat2, double lon2) {
+		double phi1 = Math.toRadians(lat1);
+		double lambda1 = Math.toRadians(lon1);
+		double phi2 = Math.toRadians(lat2);
+		double lambda2 = Math.toRadians(lon2);
+
+		double angle = Math.acos(Math.sin(phi1) * Math.sin(phi2)
+				+ Math.cos(phi1) * Math.cos(phi2) * Math.cos(lambda1 - lambda2));
+		return MILES_PER_DEGREE * Math.toDegrees(angle);
+	}
+}
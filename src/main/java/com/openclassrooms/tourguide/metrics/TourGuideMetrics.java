@@ -0,0 +1,279 @@
+package com.openclassrooms.tourguide.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import com.openclassrooms.tourguide.execution.CircuitBreaker;
+
+/**
+ * Métriques Micrometer de TourGuide : latence des services distants, occupation des pools, suivi et récompenses.
+ *
+ * <p><b>Métriques publiées</b> (préfixe {@code tourguide}, exposées par {@code /actuator/prometheus}) :
+ * <ul>
+ *   <li>{@code tourguide.client.calls} (timer avec histogramme, tags {@code client}, {@code operation}) :
+ *       {@code GpsUtil.getUserLocation}, {@code RewardCentral.getAttractionRewardPoints},
+ *       {@code TripPricer.getPrice}.</li>
+ *   <li>{@code tourguide.executor.queued} / {@code tourguide.executor.active} (jauges, tag {@code executor}) :
+ *       tâches en attente et threads actifs des pools {@code gps}, {@code rewards}, {@code rewardCentral} et
+ *       {@code tripPricer}
+ *       ({@code NaN} en mode virtuel, sans pool).</li>
+ *   <li>{@code tourguide.client.in.flight} / {@code tourguide.client.queued} (jauges, tag {@code client}) :
+ *       appels en cours et en attente vers chaque service distant, quel que soit le mode d'exécution.</li>
+ *   <li>{@code tourguide.client.limit} (jauge, tag {@code client}) : limite de concurrence courante (adaptative) ;
+ *       {@code tourguide.client.limit.rejections} (compteur, tag {@code client}) : admissions refusées par la
+ *       limite (appels mis en attente).</li>
+ *   <li>{@code tourguide.client.circuit.state} (jauge, tag {@code client}) : état du disjoncteur (0 fermé,
+ *       1 semi-ouvert, 2 ouvert) ; {@code tourguide.client.circuit.rejections} et {@code tourguide.client.timeouts}
+ *       (compteurs, tag {@code client}) : appels refusés circuit ouvert, appels arrivés à échéance ;
+ *       {@code tourguide.client.fallbacks} (compteur, tag {@code client}) : réponses de secours servies.</li>
+ *   <li>{@code tourguide.tracker.track} (timer) : suivi d'un utilisateur (position GPS, les récompenses sont
+ *       évaluées ensuite par la file des récompenses) ;
+ *       {@code tourguide.tracker.lag} (timer) : retard de distribution par rapport à l'échéance.</li>
+ *   <li>{@code tourguide.pass} (timer, tag {@code operation}) : durée des passes sur tous les utilisateurs.</li>
+ *   <li>{@code tourguide.rewards.granted} (compteur) : récompenses attribuées.</li>
+ *   <li>{@code tourguide.rewards.queue} (jauge, tag {@code state}) : utilisateurs en attente d'évaluation des
+ *       récompenses ({@code pending}) et évaluations en cours ({@code evaluating}) ;
+ *       {@code tourguide.rewards.events} (compteur, tag {@code outcome}) : événements « nouvelle position »
+ *       fusionnés avec une attente ({@code coalesced}) ou abandonnés, file pleine ({@code dropped}).</li>
+ * </ul>
+ *
+ * <p>L'instance {@link #global()} publie dans {@link Metrics#globalRegistry}, auquel Spring Boot rattache le
+ * registre Prometheus ; les services l'utilisent par défaut. Les jauges lisent l'objet surveillé courant :
+ * un service reconstruit (tests) remplace le précédent sans dupliquer les séries.</p>
+ */
+public final class TourGuideMetrics {
+
+	private static final TourGuideMetrics GLOBAL = new TourGuideMetrics(Metrics.globalRegistry);
+
+	private final MeterRegistry registry;
+	private final Timer gpsUserLocation;
+	private final Timer rewardPoints;
+	private final Timer tripPrice;
+	private final Timer trackerTrack;
+	private final Timer trackerLag;
+	private final Counter rewardsGranted;
+
+	// Objets surveillés par les jauges, par nom de jauge + tag
+	private final Map<String, AtomicReference<Object>> gaugeTargets = new ConcurrentHashMap<>();
+	private final Map<String, Timer> passes = new ConcurrentHashMap<>();
+	private final Map<String, Counter> fallbacks = new ConcurrentHashMap<>();
+
+	/**
+	 * @param registry registre dans lequel publier
+	 */
+	public TourGuideMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		this.gpsUserLocation = clientTimer("GpsUtil", "getUserLocation");
+		this.rewardPoints = clientTimer("RewardCentral", "getAttractionRewardPoints");
+		this.tripPrice = clientTimer("TripPricer", "getPrice");
+		this.trackerTrack = Timer.builder("tourguide.tracker.track")
+				.description("Suivi d'un utilisateur : position GPS")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.trackerLag = Timer.builder("tourguide.tracker.lag")
+				.description("Retard de distribution d'un utilisateur par rapport à son échéance")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.rewardsGranted = Counter.builder("tourguide.rewards.granted")
+				.description("Récompenses attribuées")
+				.register(registry);
+	}
+
+	/** @return instance publiant dans le registre global (rattaché à Prometheus par Spring Boot) */
+	public static TourGuideMetrics global() {
+		return GLOBAL;
+	}
+
+	/** @return registre de publication */
+	public MeterRegistry getRegistry() {
+		return registry;
+	}
+
+	/** Mesure un appel {@code GpsUtil.getUserLocation}. */
+	public <T> T timeGpsUserLocation(Supplier<T> call) {
+		return gpsUserLocation.record(call);
+	}
+
+	/** Mesure un appel {@code RewardCentral.getAttractionRewardPoints}. */
+	public <T> T timeRewardPoints(Supplier<T> call) {
+		return rewardPoints.record(call);
+	}
+
+	/** Mesure un appel {@code TripPricer.getPrice}. */
+	public <T> T timeTripPrice(Supplier<T> call) {
+		return tripPrice.record(call);
+	}
+
+	/** Enregistre la durée du suivi complet d'un utilisateur. */
+	public void recordTracking(long nanos) {
+		trackerTrack.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/** Enregistre le retard de distribution d'un utilisateur par le Tracker. */
+	public void recordTrackerLag(long nanos) {
+		trackerLag.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/** Compte une récompense attribuée. */
+	public void rewardGranted() {
+		rewardsGranted.increment();
+	}
+
+	/**
+	 * Mesure une passe sur tous les utilisateurs.
+	 *
+	 * @param operation nom de la passe (tag {@code operation})
+	 * @param pass      traitement de la passe
+	 */
+	public void timePass(String operation, Runnable pass) {
+		passes.computeIfAbsent(operation, name -> Timer.builder("tourguide.pass")
+				.description("Durée d'une passe sur tous les utilisateurs")
+				.tag("operation", name)
+				.register(registry))
+				.record(pass);
+	}
+
+	/**
+	 * Surveille la file et les threads actifs d'un pool ({@code NaN} s'il ne s'agit pas d'un
+	 * {@link ThreadPoolExecutor}, par exemple un exécuteur de threads virtuels).
+	 *
+	 * @param name     nom du pool (tag {@code executor})
+	 * @param executor pool surveillé (remplace le précédent de même nom)
+	 */
+	public void monitorExecutor(String name, ExecutorService executor) {
+		gauge("tourguide.executor.queued", "executor", name, executor,
+				e -> (e instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) e).getQueue().size() : Double.NaN);
+		gauge("tourguide.executor.active", "executor", name, executor,
+				e -> (e instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) e).getActiveCount() : Double.NaN);
+	}
+
+	/**
+	 * Surveille les appels vers un service distant.
+	 *
+	 * @param client   nom du service (tag {@code client})
+	 * @param inFlight appels en cours
+	 * @param queued   appels en attente d'une place
+	 */
+	public void monitorClient(String client, IntSupplier inFlight, IntSupplier queued) {
+		gauge("tourguide.client.in.flight", "client", client, inFlight, s -> ((IntSupplier) s).getAsInt());
+		gauge("tourguide.client.queued", "client", client, queued, s -> ((IntSupplier) s).getAsInt());
+	}
+
+	/**
+	 * Surveille la limite de concurrence vers un service distant.
+	 *
+	 * @param client     nom du service (tag {@code client})
+	 * @param limit      limite courante
+	 * @param rejections admissions refusées depuis la création de la limite
+	 */
+	public void monitorLimit(String client, IntSupplier limit, LongSupplier rejections) {
+		gauge("tourguide.client.limit", "client", client, limit, s -> ((IntSupplier) s).getAsInt());
+		functionCounter("tourguide.client.limit.rejections", "Admissions refusées par la limite de concurrence",
+				client, rejections);
+	}
+
+	/**
+	 * Surveille le disjoncteur d'un service distant.
+	 *
+	 * @param client  nom du service (tag {@code client})
+	 * @param breaker disjoncteur courant
+	 */
+	public void monitorCircuitBreaker(String client, CircuitBreaker breaker) {
+		gauge("tourguide.client.circuit.state", "client", client, breaker,
+				b -> ((CircuitBreaker) b).getState().ordinal());
+		functionCounter("tourguide.client.circuit.rejections", "Appels refusés par le disjoncteur ouvert",
+				client, breaker::getShortCircuitedCount);
+		functionCounter("tourguide.client.timeouts", "Appels arrivés à échéance", client, breaker::getTimeoutCount);
+	}
+
+	/**
+	 * Surveille la file des évaluations de récompenses.
+	 *
+	 * @param pending    utilisateurs en attente d'évaluation
+	 * @param evaluating évaluations en cours
+	 * @param coalesced  événements fusionnés depuis la création de la file
+	 * @param dropped    événements abandonnés (file pleine) depuis la création de la file
+	 */
+	public void monitorRewardQueue(IntSupplier pending, IntSupplier evaluating, LongSupplier coalesced,
+			LongSupplier dropped) {
+		gauge("tourguide.rewards.queue", "state", "pending", pending, s -> ((IntSupplier) s).getAsInt());
+		gauge("tourguide.rewards.queue", "state", "evaluating", evaluating, s -> ((IntSupplier) s).getAsInt());
+		functionCounter("tourguide.rewards.events", "Événements de nouvelle position fusionnés ou abandonnés",
+				"outcome", "coalesced", coalesced);
+		functionCounter("tourguide.rewards.events", "Événements de nouvelle position fusionnés ou abandonnés",
+				"outcome", "dropped", dropped);
+	}
+
+	/**
+	 * Compte une réponse de secours (dernière valeur connue, valeur en cache) servie à la place d'un appel en échec.
+	 *
+	 * @param client nom du service (tag {@code client})
+	 */
+	public void fallbackUsed(String client) {
+		fallbacks.computeIfAbsent(client, name -> Counter.builder("tourguide.client.fallbacks")
+				.description("Réponses de secours servies à la place d'un appel en échec")
+				.tag("client", name)
+				.register(registry))
+				.increment();
+	}
+
+	private Timer clientTimer(String client, String operation) {
+		return Timer.builder("tourguide.client.calls")
+				.description("Latence des appels aux services distants")
+				.tag("client", client)
+				.tag("operation", operation)
+				.publishPercentileHistogram()
+				.register(registry);
+	}
+
+	// Compteur enregistré une fois par (nom, client), lisant la source courante
+	private void functionCounter(String name, String description, String client, LongSupplier count) {
+		functionCounter(name, description, "client", client, count);
+	}
+
+	// Compteur enregistré une fois par (nom, tag), lisant la source courante
+	private void functionCounter(String name, String description, String tag, String value, LongSupplier count) {
+		gaugeTargets.computeIfAbsent(name + '|' + value, key -> {
+			AtomicReference<Object> current = new AtomicReference<>();
+			FunctionCounter.builder(name, current, ref -> {
+				Object monitored = ref.get();
+				return (monitored == null) ? 0 : ((LongSupplier) monitored).getAsLong();
+			})
+					.description(description)
+					.tag(tag, value)
+					.register(registry);
+			return current;
+		}).set(count);
+	}
+
+	// Jauge enregistrée une fois par (nom, tag), lisant la cible courante
+	private void gauge(String name, String tag, String value, Object target,
+			ToDoubleFunction<Object> reading) {
+		gaugeTargets.computeIfAbsent(name + '|' + value, key -> {
+			AtomicReference<Object> current = new AtomicReference<>();
+			Gauge.builder(name, current, ref -> {
+				Object monitored = ref.get();
+				return (monitored == null) ? Double.NaN : reading.applyAsDouble(monitored);
+			})
+					.tag(tag, value)
+					.strongReference(true)
+					.register(registry);
+			return current;
+		}).set(target);
+	}
+}
@@ -0,0 +1,631 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Journal sur disque, en ajout seul, de toutes les positions suivies, projeté en mémoire.
+ *
+ * <p><b>Format :</b>
+ * <ul>
+ *   <li>{@code users.idx} : identifiants des utilisateurs (16 octets chacun) ; la position d'un identifiant dans
+ *       ce fichier est l'index de l'utilisateur dans les enregistrements.</li>
+ *   <li>{@code locations-<n>.seg} : segments de {@code segmentRecords} enregistrements de {@value #RECORD_BYTES}
+ *       octets, de taille fixe : index utilisateur + 1 ({@code 0} = emplacement libre), emplacement de la position
+ *       précédente du même utilisateur dans le segment ({@code -1} = aucune), latitude, longitude, date (ms).</li>
+ * </ul>
+ *
+ * <p><b>Lecture par utilisateur :</b> chaque segment garde en mémoire un petit index (dernier emplacement de chaque
+ * utilisateur, 4 octets par utilisateur) ; l'historique se lit en remontant le chaînage des enregistrements, du
+ * segment le plus récent au plus ancien. La dernière position est lue directement dans la projection
+ * ({@link #latest(UUID)}), sans désérialisation : l'historique peut dépasser largement la taille du tas.</p>
+ *
+ * <p><b>Rotation et compactage :</b> un segment plein est scellé et un nouveau est créé. Le compactage
+ * ({@link #compact()}, lancé en tâche de fond après chaque rotation) ne garde que les {@code maxRecordsPerUser}
+ * positions les plus récentes de chaque utilisateur : seuls les segments scellés contenant des positions au-delà de
+ * la rétention sont réécrits, hors verrou (un segment scellé ne change plus), puis remplacent l'original par un
+ * renommage atomique sous verrou d'écriture ; un segment vidé est supprimé. Les écritures ne sont donc bloquées que
+ * le temps des renommages.</p>
+ *
+ * <p>Les écritures sont sérialisées (quelques centaines de nanosecondes chacune, hors défauts de page) ; les
+ * lectures sont concurrentes entre elles. Les index sont reconstruits à l'ouverture par un parcours des segments
+ * projetés ; un enregistrement dont l'utilisateur manque dans {@code users.idx} (arrêt brutal avant l'écriture de
+ * l'index) marque la fin de son segment.</p>
+ */
+public class LocationJournal implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(LocationJournal.class);
+
+	/** Taille d'un enregistrement (octets). */
+	public static final int RECORD_BYTES = 32;
+
+	private static final int USER_OFFSET = 0;
+	private static final int PREVIOUS_OFFSET = 4;
+	private static final int LATITUDE_OFFSET = 8;
+	private static final int LONGITUDE_OFFSET = 16;
+	private static final int TIME_OFFSET = 24;
+
+	private static final int UUID_BYTES = 16;
+	private static final String USERS_FILE = "users.idx";
+	private static final Pattern SEGMENT_FILE = Pattern.compile("locations-(\\d+)\\.seg");
+	private static final String COMPACTING_SUFFIX = ".compact";
+
+	private final Path directory;
+	private final int segmentRecords;
+	private final int maxRecordsPerUser;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Index des utilisateurs (sous verrou d'écriture pour l'ajout)
+	private final Map<UUID, Integer> userIndexes = new HashMap<>();
+	private final FileChannel usersChannel;
+
+	// Segments du plus ancien au plus récent ; le dernier reçoit les écritures
+	private final List<Segment> segments = new ArrayList<>();
+	private long nextSegmentId;
+
+	// Nombre de positions journalisées par utilisateur (après compactage)
+	private int[] recordCounts = new int[0];
+
+	// Sérialise les compactages (tâche de fond et appels directs)
+	private final Object compaction = new Object();
+
+	// Compactage en tâche de fond après chaque rotation
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "location-journal-compactor");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private boolean closed;
+
+	/**
+	 * Ouvre (ou crée) le journal du répertoire donné.
+	 *
+	 * @param directory         répertoire des fichiers (créé si besoin)
+	 * @param segmentRecords    nombre d'enregistrements par segment
+	 * @param maxRecordsPerUser positions conservées par utilisateur au compactage (0 = toutes)
+	 * @throws UncheckedIOException si les fichiers ne peuvent être ouverts
+	 */
+	public LocationJournal(Path directory, int segmentRecords, int maxRecordsPerUser) {
+		if (segmentRecords < 1 || segmentRecords > Integer.MAX_VALUE / RECORD_BYTES || maxRecordsPerUser < 0) {
+			throw new IllegalArgumentException("Paramètres du journal invalides : segmentRecords=" + segmentRecords
+					+ ", maxRecordsPerUser=" + maxRecordsPerUser);
+		}
+		this.directory = directory;
+		this.segmentRecords = segmentRecords;
+		this.maxRecordsPerUser = maxRecordsPerUser;
+		long started = System.nanoTime();
+		try {
+			Files.createDirectories(directory);
+			usersChannel = FileChannel.open(directory.resolve(USERS_FILE), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			loadUsers();
+			for (long id : segmentIds()) {
+				segments.add(Segment.open(segmentFile(id), id, userIndexes.size()));
+				nextSegmentId = id + 1;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Ouverture du journal impossible : " + directory, e);
+		}
+		recordCounts = new int[userIndexes.size()];
+		for (Segment segment : segments) {
+			segment.countRecords(recordCounts);
+		}
+		logger.debug("Location journal {} opened: {} users, {} segments in {} ms", directory, userIndexes.size(),
+				segments.size(), (System.nanoTime() - started) / 1_000_000);
+	}
+
+	/**
+	 * Journalise une position.
+	 *
+	 * @param userId utilisateur (indexé à sa première position)
+	 * @param visit  position à ajouter
+	 */
+	public void append(UUID userId, VisitedLocation visit) {
+		append(userId, visit.location.latitude, visit.location.longitude, visit.timeVisited.getTime());
+	}
+
+	/**
+	 * Journalise une position donnée par ses composantes.
+	 *
+	 * @throws IllegalStateException si le journal est fermé
+	 * @throws UncheckedIOException  si un nouveau segment ne peut être créé
+	 */
+	public void append(UUID userId, double latitude, double longitude, long epochMillis) {
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("Journal fermé : " + directory);
+			}
+			int user = userIndex(userId);
+			Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if (active == null || active.count == active.capacity) {
+				active = roll(active);
+			}
+			active.append(user, latitude, longitude, epochMillis);
+			recordCounts[user]++;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Écriture du journal impossible : " + directory, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Dernière position journalisée d'un utilisateur, lue directement dans la projection.
+	 *
+	 * @return position, ou {@code null} si aucune n'est journalisée
+	 */
+	public VisitedLocation latest(UUID userId) {
+		List<VisitedLocation> latest = history(userId, 1);
+		return latest.isEmpty() ? null : latest.get(0);
+	}
+
+	/**
+	 * Positions journalisées d'un utilisateur, de la plus récente à la plus ancienne.
+	 *
+	 * @param userId utilisateur
+	 * @param limit  nombre maximal de positions
+	 * @return positions (liste vide si aucune)
+	 */
+	public List<VisitedLocation> history(UUID userId, int limit) {
+		lock.readLock().lock();
+		try {
+			Integer user = userIndexes.get(userId);
+			if (user == null || limit <= 0) {
+				return Collections.emptyList();
+			}
+			List<VisitedLocation> result = new ArrayList<>(Math.min(limit, 64));
+			for (int s = segments.size() - 1; s >= 0 && result.size() < limit; s--) {
+				Segment segment = segments.get(s);
+				for (int slot = segment.lastSlot(user); slot >= 0 && result.size() < limit;
+						slot = segment.previous(slot)) {
+					result.add(segment.read(userId, slot));
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return nombre de positions journalisées pour l'utilisateur */
+	public int count(UUID userId) {
+		lock.readLock().lock();
+		try {
+			Integer user = userIndexes.get(userId);
+			return (user == null) ? 0 : recordCounts[user];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return nombre de segments sur disque */
+	public int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Compacte les segments scellés : seules les {@code maxRecordsPerUser} positions les plus récentes de chaque
+	 * utilisateur sont conservées. Sans effet si toutes les positions sont conservées ({@code 0}).
+	 *
+	 * <p>Les segments à réécrire (ceux qui contiennent les plus anciennes positions d'un utilisateur au-delà de la
+	 * rétention) sont construits sans verrou ; le verrou d'écriture n'est pris que pour les substituer. Les autres
+	 * segments, notamment ceux déjà compactés sans nouvelle position à supprimer, ne sont ni relus ni réécrits.</p>
+	 *
+	 * @return nombre d'enregistrements supprimés
+	 * @throws UncheckedIOException si un segment ne peut être réécrit
+	 */
+	public long compact() {
+		if (maxRecordsPerUser == 0) {
+			return 0;
+		}
+		synchronized (compaction) {
+			List<Segment> sealed;
+			int[] excess;
+			lock.readLock().lock();
+			try {
+				if (closed) {
+					return 0;
+				}
+				// Le segment actif n'est jamais réécrit ; les segments scellés ne changent plus hors compactage
+				sealed = new ArrayList<>(segments.subList(0, Math.max(0, segments.size() - 1)));
+				excess = new int[userIndexes.size()];
+				for (int user = 0; user < excess.length; user++) {
+					excess[user] = recordCounts[user] - maxRecordsPerUser;
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			List<Map<Integer, Integer>> plans = plan(sealed, excess);
+			List<Segment> rewritten = new ArrayList<>(Collections.nCopies(sealed.size(), null));
+			try {
+				for (int s = 0; s < sealed.size(); s++) {
+					if (plans.get(s) != null) {
+						Segment segment = sealed.get(s);
+						Path temporary = segment.file.resolveSibling(segment.file.getFileName() + COMPACTING_SUFFIX);
+						rewritten.set(s, segment.without(temporary, plans.get(s)));
+					}
+				}
+				return swap(sealed, plans, rewritten);
+			} catch (IOException e) {
+				discard(rewritten);
+				throw new UncheckedIOException("Compactage du journal impossible : " + directory, e);
+			}
+		}
+	}
+
+	// Positions à supprimer par segment scellé (null = segment inchangé) : les plus anciennes de chaque utilisateur
+	private static List<Map<Integer, Integer>> plan(List<Segment> sealed, int[] excess) {
+		List<Map<Integer, Integer>> plans = new ArrayList<>(Collections.nCopies(sealed.size(), null));
+		for (int user = 0; user < excess.length; user++) {
+			int remaining = excess[user];
+			for (int s = 0; s < sealed.size() && remaining > 0; s++) {
+				int drop = Math.min(sealed.get(s).countOf(user), remaining);
+				if (drop > 0) {
+					if (plans.get(s) == null) {
+						plans.set(s, new HashMap<>());
+					}
+					plans.get(s).put(user, drop);
+					remaining -= drop;
+				}
+			}
+		}
+		return plans;
+	}
+
+	// Substitue les segments réécrits (sous verrou d'écriture : seuls des renommages et suppressions)
+	private long swap(List<Segment> sealed, List<Map<Integer, Integer>> plans, List<Segment> rewritten)
+			throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				discard(rewritten);
+				return 0;
+			}
+			long dropped = 0;
+			for (int s = 0; s < sealed.size(); s++) {
+				Segment compacted = rewritten.get(s);
+				if (compacted == null) {
+					continue;
+				}
+				Segment segment = sealed.get(s);
+				int index = segments.indexOf(segment);
+				dropped += segment.count - compacted.count;
+				plans.get(s).forEach((user, drop) -> recordCounts[user] -= drop);
+				segment.close();
+				if (compacted.count == 0) {
+					compacted.close();
+					Files.delete(compacted.file);
+					Files.delete(segment.file);
+					segments.remove(index);
+				} else {
+					// Remplace le segment d'origine d'un seul renommage (ordre chronologique conservé)
+					Files.move(compacted.file, segment.file, StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+					segments.set(index, compacted.renamed(segment.file));
+				}
+				rewritten.set(s, null);
+			}
+			logger.debug("Location journal compacted: {} records dropped", dropped);
+			return dropped;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Supprime les réécritures non substituées
+	private void discard(List<Segment> rewritten) {
+		for (Segment compacted : rewritten) {
+			if (compacted == null) {
+				continue;
+			}
+			try {
+				compacted.close();
+				Files.deleteIfExists(compacted.file);
+			} catch (IOException e) {
+				logger.warn("Location journal temporary segment not deleted ({}): {}", compacted.file, e.toString());
+			}
+		}
+	}
+
+	/** Force l'écriture des segments et de l'index des utilisateurs sur disque. */
+	public void force() {
+		lock.readLock().lock();
+		try {
+			for (Segment segment : segments) {
+				segment.buffer.force();
+			}
+			usersChannel.force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Synchronisation du journal impossible : " + directory, e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			compactor.shutdownNow();
+			for (Segment segment : segments) {
+				segment.buffer.force();
+				segment.close();
+			}
+			usersChannel.close();
+		} catch (IOException e) {
+			logger.warn("Location journal close failed ({}): {}", directory, e.toString());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Index d'un utilisateur, attribué et ajouté à users.idx à sa première position (sous verrou d'écriture)
+	private int userIndex(UUID userId) throws IOException {
+		Integer existing = userIndexes.get(userId);
+		if (existing != null) {
+			return existing;
+		}
+		int index = userIndexes.size();
+		ByteBuffer bytes = ByteBuffer.allocate(UUID_BYTES);
+		bytes.putLong(userId.getMostSignificantBits()).putLong(userId.getLeastSignificantBits()).flip();
+		usersChannel.write(bytes, (long) index * UUID_BYTES);
+		userIndexes.put(userId, index);
+		if (index >= recordCounts.length) {
+			recordCounts = Arrays.copyOf(recordCounts, Math.max(16, recordCounts.length * 2));
+		}
+		return index;
+	}
+
+	private void loadUsers() throws IOException {
+		long users = usersChannel.size() / UUID_BYTES;
+		if (users == 0) {
+			return;
+		}
+		ByteBuffer bytes = usersChannel.map(FileChannel.MapMode.READ_ONLY, 0, users * UUID_BYTES);
+		for (int i = 0; i < users; i++) {
+			userIndexes.put(new UUID(bytes.getLong(), bytes.getLong()), i);
+		}
+	}
+
+	// Scelle le segment actif et en crée un nouveau
+	private Segment roll(Segment sealed) throws IOException {
+		if (sealed != null) {
+			sealed.buffer.force();
+			if (maxRecordsPerUser > 0) {
+				try {
+					compactor.execute(this::compactQuietly);
+				} catch (RejectedExecutionException e) {
+					// Journal en cours de fermeture
+				}
+			}
+		}
+		Segment created = Segment.create(segmentFile(nextSegmentId), nextSegmentId, segmentRecords);
+		nextSegmentId++;
+		segments.add(created);
+		return created;
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (RuntimeException e) {
+			logger.warn("Location journal compaction failed ({}): {}", directory, e.toString());
+		}
+	}
+
+	private Path segmentFile(long id) {
+		return directory.resolve("locations-" + id + ".seg");
+	}
+
+	// Identifiants des segments présents, triés ; supprime les réécritures interrompues (arrêt pendant un compactage)
+	private List<Long> segmentIds() throws IOException {
+		List<Path> files;
+		try (Stream<Path> listing = Files.list(directory)) {
+			files = listing.toList();
+		}
+		List<Long> ids = new ArrayList<>();
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			Matcher matcher = SEGMENT_FILE.matcher(name);
+			if (matcher.matches()) {
+				ids.add(Long.parseLong(matcher.group(1)));
+			} else if (name.endsWith(COMPACTING_SUFFIX)) {
+				Files.delete(file);
+			}
+		}
+		ids.sort(null);
+		return ids;
+	}
+
+	/**
+	 * Segment projeté : enregistrements de taille fixe et index du dernier emplacement de chaque utilisateur.
+	 */
+	private static final class Segment {
+		final Path file;
+		final long id;
+		final int capacity;
+		final MappedByteBuffer buffer;
+		private final FileChannel channel;
+		int count;
+		// Dernier emplacement de chaque utilisateur dans ce segment (-1 = aucun)
+		private int[] lastSlots;
+
+		private Segment(Path file, long id, FileChannel channel, MappedByteBuffer buffer, int capacity, int users) {
+			this.file = file;
+			this.id = id;
+			this.channel = channel;
+			this.buffer = buffer;
+			this.capacity = capacity;
+			this.lastSlots = new int[Math.max(16, users)];
+			Arrays.fill(lastSlots, -1);
+		}
+
+		static Segment create(Path file, long id, int capacity) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_BYTES);
+			return new Segment(file, id, channel, buffer, capacity, 0);
+		}
+
+		// Ouvre un segment existant et reconstruit son index (les emplacements libres sont à zéro ; seuls les
+		// enregistrements d'utilisateurs connus sont retenus)
+		static Segment open(Path file, long id, int users) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			int capacity = (int) (channel.size() / RECORD_BYTES);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_BYTES);
+			Segment segment = new Segment(file, id, channel, buffer, capacity, users);
+			while (segment.count < capacity) {
+				int user = buffer.getInt(segment.count * RECORD_BYTES + USER_OFFSET) - 1;
+				if (user < 0) {
+					break;
+				}
+				if (user >= users) {
+					// Utilisateur absent de users.idx (arrêt avant son écriture) : fin du segment, la suite est effacée
+					for (int slot = segment.count; slot < capacity; slot++) {
+						buffer.putInt(slot * RECORD_BYTES + USER_OFFSET, 0);
+					}
+					break;
+				}
+				segment.index(user, segment.count++);
+			}
+			return segment;
+		}
+
+		void append(int user, double latitude, double longitude, long epochMillis) {
+			int slot = count;
+			write(slot, user, latitude, longitude, epochMillis);
+			index(user, slot);
+			count++;
+		}
+
+		int lastSlot(int user) {
+			return (user < lastSlots.length) ? lastSlots[user] : -1;
+		}
+
+		int previous(int slot) {
+			return buffer.getInt(slot * RECORD_BYTES + PREVIOUS_OFFSET);
+		}
+
+		VisitedLocation read(UUID userId, int slot) {
+			int base = slot * RECORD_BYTES;
+			return new VisitedLocation(userId,
+					new Location(buffer.getDouble(base + LATITUDE_OFFSET), buffer.getDouble(base + LONGITUDE_OFFSET)),
+					new Date(buffer.getLong(base + TIME_OFFSET)));
+		}
+
+		void countRecords(int[] counts) {
+			for (int slot = 0; slot < count; slot++) {
+				counts[buffer.getInt(slot * RECORD_BYTES + USER_OFFSET) - 1]++;
+			}
+		}
+
+		// Nombre de positions de l'utilisateur dans ce segment (chaînage depuis sa dernière position)
+		int countOf(int user) {
+			int positions = 0;
+			for (int slot = lastSlot(user); slot >= 0; slot = previous(slot)) {
+				positions++;
+			}
+			return positions;
+		}
+
+		/**
+		 * Réécrit le segment sans les plus anciennes positions des utilisateurs donnés.
+		 *
+		 * @param drops nombre de positions à supprimer par utilisateur (au plus ses positions dans ce segment)
+		 * @return le segment compacté (fichier temporaire {@code target})
+		 */
+		Segment without(Path target, Map<Integer, Integer> drops) throws IOException {
+			Map<Integer, Integer> remaining = new HashMap<>(drops);
+			int kept = count;
+			for (int drop : drops.values()) {
+				kept -= drop;
+			}
+			Segment compacted = create(target, id, kept);
+			for (int slot = 0; slot < count; slot++) {
+				int base = slot * RECORD_BYTES;
+				int user = buffer.getInt(base + USER_OFFSET) - 1;
+				Integer drop = remaining.get(user);
+				if (drop != null && drop > 0) {
+					remaining.put(user, drop - 1);
+					continue;
+				}
+				compacted.append(user, buffer.getDouble(base + LATITUDE_OFFSET),
+						buffer.getDouble(base + LONGITUDE_OFFSET), buffer.getLong(base + TIME_OFFSET));
+			}
+			compacted.buffer.force();
+			return compacted;
+		}
+
+		// Même segment sous son nom définitif (la projection reste valide après renommage)
+		Segment renamed(Path target) {
+			Segment segment = new Segment(target, id, channel, buffer, capacity, 0);
+			segment.lastSlots = lastSlots;
+			segment.count = count;
+			return segment;
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+
+		private void write(int slot, int user, double latitude, double longitude, long epochMillis) {
+			int base = slot * RECORD_BYTES;
+			buffer.putInt(base + PREVIOUS_OFFSET, lastSlot(user));
+			buffer.putDouble(base + LATITUDE_OFFSET, latitude);
+			buffer.putDouble(base + LONGITUDE_OFFSET, longitude);
+			buffer.putLong(base + TIME_OFFSET, epochMillis);
+			// Écrit en dernier : marque l'emplacement comme occupé
+			buffer.putInt(base + USER_OFFSET, user + 1);
+		}
+
+		private void index(int user, int slot) {
+			if (user >= lastSlots.length) {
+				int previousLength = lastSlots.length;
+				lastSlots = Arrays.copyOf(lastSlots, Math.max(user + 1, previousLength * 2));
+				Arrays.fill(lastSlots, previousLength, lastSlots.length, -1);
+			}
+			lastSlots[user] = slot;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Lecture séquentielle d'un fichier d'enregistrements {@code [longueur int][octets]} projeté en mémoire.
+ *
+ * <p>Le fichier est projeté par fenêtres (une projection est limitée à 2 Go) ; chaque enregistrement est remis
+ * au consommateur sous forme de {@link ByteBuffer} sur la projection, sans copie. Un enregistrement incomplet en
+ * fin de fichier (arrêt pendant une écriture) marque la fin de la lecture.</p>
+ */
+final class MappedRecordReader {
+
+	// Taille d'une fenêtre de projection (agrandie si un enregistrement est plus long)
+	private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+
+	private MappedRecordReader() {
+	}
+
+	/**
+	 * Parcourt les enregistrements à partir de la position donnée.
+	 *
+	 * @param file   fichier à lire
+	 * @param offset position du premier enregistrement (après l'en-tête éventuel)
+	 * @param record traitement d'un enregistrement (tampon positionné sur ses octets)
+	 * @return position de fin du dernier enregistrement complet
+	 * @throws IOException si le fichier ne peut être lu
+	 */
+	static long forEach(Path file, long offset, Consumer<ByteBuffer> record) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = offset;
+			MappedByteBuffer window = null;
+			long windowStart = 0;
+			while (position + Integer.BYTES <= size) {
+				if (window == null || position + Integer.BYTES > windowStart + window.limit()) {
+					windowStart = position;
+					window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+				}
+				int length = window.getInt((int) (position - windowStart));
+				long end = position + Integer.BYTES + length;
+				if (length < 0 || end > size) {
+					break;
+				}
+				if (end > windowStart + window.limit()) {
+					windowStart = position;
+					window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+							Math.min(Math.max(WINDOW_BYTES, end - position), size - position));
+				}
+				record.accept(window.slice((int) (position - windowStart) + Integer.BYTES, length));
+				position = end;
+			}
+			return position;
+		}
+	}
+
+	/**
+	 * Lit l'en-tête d'un fichier (les {@code bytes} premiers octets).
+	 *
+	 * @return tampon de l'en-tête, ou {@code null} si le fichier est plus court
+	 */
+	static ByteBuffer header(Path file, int bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < bytes) {
+				return null;
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPreferences;
+import com.openclassrooms.tourguide.user.UserReward;
+
+/**
+ * Encodage binaire (big-endian) des utilisateurs, visites et récompenses, commun à l'instantané et au journal.
+ *
+ * <p>Chaînes : longueur ({@code int}) puis octets UTF-8. Écriture via {@link DataOutput}, lecture directe dans un
+ * {@link ByteBuffer} (fichier projeté en mémoire), sans flux intermédiaire.</p>
+ */
+final class UserRecordCodec {
+
+	private UserRecordCodec() {
+	}
+
+	/**
+	 * Écrit un utilisateur complet : identité, préférences, historique conservé (avec sa séquence de départ)
+	 * et récompenses.
+	 */
+	static void writeUser(DataOutput out, User user) throws IOException {
+		writeIdentity(out, user);
+		Date latest = user.getLatestLocationTimestamp();
+		out.writeLong((latest == null) ? Long.MIN_VALUE : latest.getTime());
+
+		UserPreferences preferences = user.getUserPreferences();
+		out.writeInt(preferences.getAttractionProximity());
+		out.writeInt(preferences.getTripDuration());
+		out.writeInt(preferences.getTicketQuantity());
+		out.writeInt(preferences.getNumberOfAdults());
+		out.writeInt(preferences.getNumberOfChildren());
+
+		// Vue figée cohérente : la séquence de départ se déduit de la fin et du nombre de visites conservées
+		long end = user.getVisitedLocationSequence();
+		List<VisitedLocation> visits = user.getVisitedLocationsFrom(0, end);
+		out.writeLong(end - visits.size());
+		out.writeInt(visits.size());
+		for (VisitedLocation visit : visits) {
+			out.writeDouble(visit.location.latitude);
+			out.writeDouble(visit.location.longitude);
+			out.writeLong(visit.timeVisited.getTime());
+		}
+
+		List<UserReward> rewards = user.getUserRewards();
+		out.writeInt(rewards.size());
+		for (UserReward reward : rewards) {
+			writeReward(out, reward);
+		}
+	}
+
+	/** Relit un utilisateur écrit par {@link #writeUser(DataOutput, User)}. */
+	static User readUser(ByteBuffer in) {
+		User user = readIdentity(in);
+		long latest = in.getLong();
+		if (latest != Long.MIN_VALUE) {
+			user.setLatestLocationTimestamp(new Date(latest));
+		}
+
+		UserPreferences preferences = new UserPreferences();
+		preferences.setAttractionProximity(in.getInt());
+		preferences.setTripDuration(in.getInt());
+		preferences.setTicketQuantity(in.getInt());
+		preferences.setNumberOfAdults(in.getInt());
+		preferences.setNumberOfChildren(in.getInt());
+		user.setUserPreferences(preferences);
+
+		long firstSequence = in.getLong();
+		if (firstSequence > 0) {
+			user.restoreVisitedLocationSequence(firstSequence);
+		}
+		int visits = in.getInt();
+		for (int i = 0; i < visits; i++) {
+			user.addToVisitedLocations(in.getDouble(), in.getDouble(), in.getLong());
+		}
+
+		int rewards = in.getInt();
+		for (int i = 0; i < rewards; i++) {
+			user.addUserReward(readReward(in, user.getUserId()));
+		}
+		return user;
+	}
+
+	/** Écrit l'identité d'un utilisateur (identifiant, nom, téléphone, e-mail). */
+	static void writeIdentity(DataOutput out, User user) throws IOException {
+		writeUuid(out, user.getUserId());
+		writeString(out, user.getUserName());
+		writeString(out, user.getPhoneNumber());
+		writeString(out, user.getEmailAddress());
+	}
+
+	/** @return nouvel utilisateur, sans historique ni récompense */
+	static User readIdentity(ByteBuffer in) {
+		UUID userId = readUuid(in);
+		return new User(userId, readString(in), readString(in), readString(in));
+	}
+
+	/** Écrit une récompense : visite, attraction (sans son identifiant, régénéré par GpsUtil) et points. */
+	static void writeReward(DataOutput out, UserReward reward) throws IOException {
+		VisitedLocation visit = reward.visitedLocation;
+		out.writeDouble(visit.location.latitude);
+		out.writeDouble(visit.location.longitude);
+		out.writeLong(visit.timeVisited.getTime());
+		Attraction attraction = reward.attraction;
+		writeString(out, attraction.attractionName);
+		writeString(out, attraction.city);
+		writeString(out, attraction.state);
+		out.writeDouble(attraction.latitude);
+		out.writeDouble(attraction.longitude);
+		out.writeInt(reward.getRewardPoints());
+	}
+
+	static UserReward readReward(ByteBuffer in, UUID userId) {
+		VisitedLocation visit = new VisitedLocation(userId, new Location(in.getDouble(), in.getDouble()),
+				new Date(in.getLong()));
+		Attraction attraction = new Attraction(readString(in), readString(in), readString(in),
+				in.getDouble(), in.getDouble());
+		return new UserReward(visit, attraction, in.getInt());
+	}
+
+	static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	static UUID readUuid(ByteBuffer in) {
+		return new UUID(in.getLong(), in.getLong());
+	}
+
+	static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,421 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserChangeListener;
+import com.openclassrooms.tourguide.user.UserReward;
+
+/**
+ * Persistance sur disque local des utilisateurs en mémoire : instantané binaire périodique + journal des
+ * modifications entre deux instantanés.
+ *
+ * <p><b>Fichiers</b> (dans le répertoire configuré) :
+ * <ul>
+ *   <li>{@code users.snapshot} : en-tête (marqueur, génération du premier journal non inclus) puis un
+ *       enregistrement {@code [longueur][octets]} par utilisateur (identité, préférences, historique conservé,
+ *       récompenses). Écrit dans un fichier temporaire puis renommé atomiquement.</li>
+ *   <li>{@code changes-<génération>.log} : journal en ajout seul des utilisateurs, visites et récompenses
+ *       ajoutés, alimenté par {@link UserChangeListener}. Vidé sur disque toutes les secondes (par défaut).</li>
+ * </ul>
+ *
+ * <p><b>Instantané :</b> le journal courant est clos et un nouveau est ouvert, puis tous les utilisateurs sont
+ * écrits ; les journaux couverts par l'instantané sont ensuite supprimés. Les modifications concurrentes
+ * vont dans le nouveau journal ; certaines figurent aussi dans l'instantané, d'où un rejeu idempotent
+ * (séquence des visites, unicité des récompenses par attraction, utilisateurs par identifiant).</p>
+ *
+ * <p><b>Démarrage à chaud :</b> {@link #restore(Consumer)} relit l'instantané et les journaux en les projetant en
+ * mémoire ({@link MappedRecordReader}), sans flux ni copie intermédiaire : 100 000 utilisateurs avec leur
+ * historique sont rechargés en quelques secondes au lieu d'être régénérés.</p>
+ *
+ * <p>Non persisté : offres de voyage (recalculées à la demande) et marques d'évaluation des récompenses (le
+ * premier calcul après redémarrage réévalue l'historique conservé, sans nouvel appel pour les attractions
+ * déjà récompensées). Les changements de préférences ne sont enregistrés qu'au prochain instantané.</p>
+ */
+public class UserStorePersistence implements UserChangeListener, AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(UserStorePersistence.class);
+
+	static final String SNAPSHOT_FILE = "users.snapshot";
+	private static final Pattern CHANGE_LOG_FILE = Pattern.compile("changes-(\\d+)\\.log");
+
+	// En-tête de l'instantané : marqueur "TGS1" + génération du premier journal à rejouer
+	private static final int SNAPSHOT_MAGIC = 0x54475331;
+	private static final int SNAPSHOT_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+	// Types d'enregistrements du journal
+	private static final byte USER_ADDED = 1;
+	private static final byte LOCATION_ADDED = 2;
+	private static final byte REWARD_ADDED = 3;
+
+	private final Path directory;
+	private final Duration snapshotInterval;
+	private final Duration flushInterval;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "user-store-persistence");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Journal courant ; remplacé à chaque instantané (accès sous verrou du journal)
+	private final Object logLock = new Object();
+	private ChangeLog changeLog;
+	private long nextGeneration;
+
+	// Un seul instantané à la fois
+	private final Object snapshotLock = new Object();
+	private volatile Supplier<? extends Collection<User>> users;
+	private volatile long lastSnapshotMillis = -1;
+	private volatile boolean closed;
+
+	/**
+	 * @param directory        répertoire des fichiers (créé si besoin)
+	 * @param snapshotInterval intervalle entre deux instantanés
+	 * @param flushInterval    intervalle de vidage du journal sur disque (perte maximale en cas d'arrêt brutal)
+	 */
+	public UserStorePersistence(Path directory, Duration snapshotInterval, Duration flushInterval) {
+		if (snapshotInterval.isNegative() || snapshotInterval.isZero() || flushInterval.isNegative()
+				|| flushInterval.isZero()) {
+			throw new IllegalArgumentException("Intervalles de persistance invalides : snapshot=" + snapshotInterval
+					+ ", flush=" + flushInterval);
+		}
+		this.directory = directory;
+		this.snapshotInterval = snapshotInterval;
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Recharge les utilisateurs persistés : instantané puis journaux postérieurs.
+	 *
+	 * @param register enregistrement d'un utilisateur restauré (appelé une fois par utilisateur, avant rejeu
+	 *                 de ses modifications journalisées)
+	 * @return nombre d'utilisateurs restaurés ({@code 0} si rien n'était persisté)
+	 * @throws UncheckedIOException si les fichiers ne peuvent être lus
+	 */
+	public int restore(Consumer<User> register) {
+		long started = System.nanoTime();
+		Map<UUID, User> restored = new HashMap<>();
+		try {
+			Files.createDirectories(directory);
+			long firstGeneration = 0;
+			Path snapshot = directory.resolve(SNAPSHOT_FILE);
+			if (Files.exists(snapshot)) {
+				ByteBuffer header = MappedRecordReader.header(snapshot, SNAPSHOT_HEADER_BYTES);
+				if (header == null || header.getInt() != SNAPSHOT_MAGIC) {
+					throw new IOException("Instantané invalide : " + snapshot);
+				}
+				firstGeneration = header.getLong();
+				MappedRecordReader.forEach(snapshot, SNAPSHOT_HEADER_BYTES, record -> {
+					User user = UserRecordCodec.readUser(record);
+					restored.put(user.getUserId(), user);
+					register.accept(user);
+				});
+			}
+
+			long replayed = 0;
+			long lastGeneration = firstGeneration - 1;
+			for (long generation : changeLogGenerations()) {
+				lastGeneration = Math.max(lastGeneration, generation);
+				if (generation >= firstGeneration) {
+					replayed += replay(changeLogFile(generation), restored, register);
+				}
+			}
+			nextGeneration = lastGeneration + 1;
+			logger.info("Restored {} users from {} ({} journal records) in {} ms", restored.size(), directory,
+					replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Restauration impossible depuis " + directory, e);
+		}
+		restored.values().forEach(user -> user.setChangeListener(this));
+		return restored.size();
+	}
+
+	/**
+	 * Démarre la journalisation et les instantanés périodiques.
+	 * <p>Les utilisateurs fournis sont suivis (écouteur) ; si aucun instantané n'existe encore, un premier est
+	 * écrit immédiatement.</p>
+	 *
+	 * @param users utilisateurs à persister (relus à chaque instantané)
+	 */
+	public void start(Supplier<? extends Collection<User>> users) {
+		this.users = users;
+		synchronized (logLock) {
+			changeLog = openChangeLog(nextGeneration++);
+		}
+		users.get().forEach(user -> user.setChangeListener(this));
+		if (!Files.exists(directory.resolve(SNAPSHOT_FILE))) {
+			snapshot();
+		}
+		long snapshotMillis = snapshotInterval.toMillis();
+		scheduler.scheduleAtFixedRate(this::snapshotQuietly, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+		long flushMillis = flushInterval.toMillis();
+		scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Suit un nouvel utilisateur : il est journalisé puis chacune de ses modifications.
+	 *
+	 * @param user utilisateur ajouté au magasin
+	 */
+	public void track(User user) {
+		user.setChangeListener(this);
+		append(USER_ADDED, out -> UserRecordCodec.writeIdentity(out, user));
+	}
+
+	@Override
+	public void visitedLocationAdded(User user, long sequence, double latitude, double longitude, long epochMillis) {
+		append(LOCATION_ADDED, out -> {
+			UserRecordCodec.writeUuid(out, user.getUserId());
+			out.writeLong(sequence);
+			out.writeDouble(latitude);
+			out.writeDouble(longitude);
+			out.writeLong(epochMillis);
+		});
+	}
+
+	@Override
+	public void userRewardAdded(User user, UserReward userReward) {
+		append(REWARD_ADDED, out -> {
+			UserRecordCodec.writeUuid(out, user.getUserId());
+			UserRecordCodec.writeReward(out, userReward);
+		});
+	}
+
+	/**
+	 * Écrit un instantané de tous les utilisateurs et supprime les journaux qu'il couvre.
+	 *
+	 * @throws UncheckedIOException si l'écriture échoue (l'instantané précédent reste en place)
+	 */
+	public void snapshot() {
+		synchronized (snapshotLock) {
+			long started = System.nanoTime();
+			long coveredGeneration;
+			long firstUncovered;
+			synchronized (logLock) {
+				coveredGeneration = changeLog.generation;
+				changeLog.close();
+				changeLog = openChangeLog(nextGeneration++);
+				firstUncovered = changeLog.generation;
+			}
+
+			Path target = directory.resolve(SNAPSHOT_FILE);
+			Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+			int count = 0;
+			try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 20))) {
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeLong(firstUncovered);
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+				DataOutputStream record = new DataOutputStream(buffer);
+				for (User user : users.get()) {
+					buffer.reset();
+					UserRecordCodec.writeUser(record, user);
+					out.writeInt(buffer.size());
+					buffer.writeTo(out);
+					count++;
+				}
+				out.flush();
+				file.getChannel().force(true);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Écriture de l'instantané impossible : " + temporary, e);
+			}
+			try {
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				for (long generation : changeLogGenerations()) {
+					if (generation <= coveredGeneration) {
+						Files.deleteIfExists(changeLogFile(generation));
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Publication de l'instantané impossible : " + target, e);
+			}
+			lastSnapshotMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			logger.debug("Snapshot of {} users written in {} ms", count, lastSnapshotMillis);
+		}
+	}
+
+	/** @return durée (ms) du dernier instantané, ou -1 si aucun n'a encore été écrit */
+	public long getLastSnapshotMillis() {
+		return lastSnapshotMillis;
+	}
+
+	/** @return répertoire des fichiers de persistance */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/** Arrête les tâches périodiques, écrit un dernier instantané et ferme le journal. */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		scheduler.shutdownNow();
+		if (users != null) {
+			snapshotQuietly();
+			synchronized (logLock) {
+				changeLog.close();
+			}
+		}
+	}
+
+	// Rejoue un journal ; renvoie le nombre d'enregistrements lus
+	private long replay(Path file, Map<UUID, User> restored, Consumer<User> register) throws IOException {
+		long[] count = new long[1];
+		MappedRecordReader.forEach(file, 0, record -> {
+			count[0]++;
+			byte type = record.get();
+			if (type == USER_ADDED) {
+				User user = UserRecordCodec.readIdentity(record);
+				if (restored.putIfAbsent(user.getUserId(), user) == null) {
+					register.accept(user);
+				}
+				return;
+			}
+			User user = restored.get(UserRecordCodec.readUuid(record));
+			if (user == null) {
+				return;
+			}
+			if (type == LOCATION_ADDED) {
+				long sequence = record.getLong();
+				long current = user.getVisitedLocationSequence();
+				if (sequence < current) {
+					return;
+				}
+				if (current == 0 && sequence > 0) {
+					user.restoreVisitedLocationSequence(sequence);
+				}
+				user.addToVisitedLocations(record.getDouble(), record.getDouble(), record.getLong());
+			} else if (type == REWARD_ADDED) {
+				user.addUserReward(UserRecordCodec.readReward(record, user.getUserId()));
+			}
+		});
+		return count[0];
+	}
+
+	private void append(byte type, RecordWriter payload) {
+		synchronized (logLock) {
+			if (changeLog == null || closed) {
+				return;
+			}
+			try {
+				changeLog.append(type, payload);
+			} catch (IOException e) {
+				logger.warn("Change log write failed ({}): {}", changeLog.file, e.toString());
+			}
+		}
+	}
+
+	private ChangeLog openChangeLog(long generation) {
+		try {
+			return new ChangeLog(changeLogFile(generation), generation);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Ouverture du journal impossible dans " + directory, e);
+		}
+	}
+
+	private Path changeLogFile(long generation) {
+		return directory.resolve("changes-" + generation + ".log");
+	}
+
+	// Générations des journaux présents, triées
+	private List<Long> changeLogGenerations() throws IOException {
+		List<Long> generations = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> {
+				Matcher matcher = CHANGE_LOG_FILE.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					generations.add(Long.parseLong(matcher.group(1)));
+				}
+			});
+		}
+		generations.sort(null);
+		return generations;
+	}
+
+	private void snapshotQuietly() {
+		try {
+			snapshot();
+		} catch (RuntimeException e) {
+			logger.warn("Snapshot failed: {}", e.toString());
+		}
+	}
+
+	private void flushQuietly() {
+		synchronized (logLock) {
+			try {
+				changeLog.flush();
+			} catch (IOException e) {
+				logger.warn("Change log flush failed ({}): {}", changeLog.file, e.toString());
+			}
+		}
+	}
+
+	// Écriture du contenu d'un enregistrement du journal
+	@FunctionalInterface
+	private interface RecordWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	// Journal d'une génération : enregistrements [longueur][type][contenu], accès sous logLock
+	private static final class ChangeLog {
+		final Path file;
+		final long generation;
+		private final DataOutputStream out;
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+		private final DataOutputStream record = new DataOutputStream(buffer);
+
+		ChangeLog(Path file, long generation) throws IOException {
+			this.file = file;
+			this.generation = generation;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true), 1 << 16));
+		}
+
+		void append(byte type, RecordWriter payload) throws IOException {
+			buffer.reset();
+			record.writeByte(type);
+			payload.write(record);
+			out.writeInt(buffer.size());
+			buffer.writeTo(out);
+		}
+
+		void flush() throws IOException {
+			out.flush();
+		}
+
+		void close() {
+			try {
+				out.close();
+			} catch (IOException e) {
+				logger.warn("Change log close failed ({}): {}", file, e.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package com.openclassrooms.tourguide.service;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.user.User;
+
+/**
+ * File des évaluations de récompenses, découplée du suivi des positions.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Le suivi publie un événement « nouvelle position » ({@link #publish(User)}) et n'attend pas RewardCentral :
+ *       une position est renvoyée dès que GpsUtil a répondu.</li>
+ *   <li>Les événements d'un même utilisateur encore en file sont fusionnés en une seule évaluation : celle-ci
+ *       reprend toutes les positions postérieures à la marque de l'utilisateur
+ *       (voir {@link RewardsService#calculateRewardsAsync(User)}).</li>
+ *   <li>Une seule évaluation à la fois par utilisateur : l'attente d'un utilisateur déjà en cours d'évaluation est
+ *       retenue (les événements suivants continuent de s'y fusionner) et remise en file à la fin de l'évaluation en
+ *       cours.</li>
+ *   <li>La file est bornée en nombre d'utilisateurs ({@code capacity}) : file pleine, l'événement est abandonné et
+ *       compté. Rien n'est perdu, la marque n'ayant pas avancé : l'événement suivant de l'utilisateur (au plus tard
+ *       au prochain passage du {@code Tracker}) reprend ses positions.</li>
+ *   <li>Au plus {@code maxEvaluations} évaluations sont en cours, sur l'exécuteur fourni ; une évaluation qui
+ *       attend RewardCentral ne retient aucun thread, sa place est reprise à la fin.</li>
+ *   <li>Le retard des récompenses est observable : utilisateurs en attente ({@link #getBacklog()}), évaluations
+ *       en cours, événements fusionnés ou abandonnés.</li>
+ * </ul>
+ */
+public class RewardQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(RewardQueue.class);
+
+	private final RewardsService rewardsService;
+	private final Executor executor;
+	private final int capacity;
+	private final int maxEvaluations;
+
+	// Utilisateurs en attente, dans l'ordre des événements, et entrée en attente de chacun (retenue comprise)
+	private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+	private final ConcurrentHashMap<UUID, Pending> queued = new ConcurrentHashMap<>();
+	// Évaluation en cours de chaque utilisateur
+	private final ConcurrentHashMap<UUID, Evaluation> evaluating = new ConcurrentHashMap<>();
+	private final AtomicInteger backlog = new AtomicInteger();
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+	private final AtomicInteger inProgress = new AtomicInteger();
+
+	private final LongAdder published = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * @param rewardsService calcul des récompenses
+	 * @param executor       exécuteur des évaluations
+	 * @param capacity       nombre maximal d'utilisateurs en attente (&gt;= 1)
+	 * @param maxEvaluations nombre maximal d'évaluations simultanées (&gt;= 1)
+	 */
+	public RewardQueue(RewardsService rewardsService, Executor executor, int capacity, int maxEvaluations) {
+		if (capacity < 1 || maxEvaluations < 1) {
+			throw new IllegalArgumentException("Paramètres de file des récompenses invalides : capacity=" + capacity
+					+ ", maxEvaluations=" + maxEvaluations);
+		}
+		this.rewardsService = rewardsService;
+		this.executor = executor;
+		this.capacity = capacity;
+		this.maxEvaluations = maxEvaluations;
+	}
+
+	/**
+	 * Publie un événement « nouvelle position » : les récompenses de l'utilisateur seront évaluées.
+	 *
+	 * @param user utilisateur dont l'historique a changé
+	 * @return futur terminé une fois l'évaluation faite (commun aux événements fusionnés), en échec si la file est
+	 *         pleine ou si l'évaluation échoue
+	 */
+	public CompletableFuture<Void> publish(User user) {
+		published.increment();
+		Pending[] created = new Pending[1];
+		Pending pending = queued.computeIfAbsent(user.getUserId(), id -> {
+			if (backlog.get() >= capacity) {
+				return null;
+			}
+			backlog.incrementAndGet();
+			return created[0] = new Pending(user);
+		});
+		if (pending == null) {
+			dropped.increment();
+			return CompletableFuture.failedFuture(new IllegalStateException("File des récompenses pleine ("
+					+ capacity + " utilisateurs) : évaluation de " + user.getUserName() + " reportée"));
+		}
+		if (created[0] == null) {
+			coalesced.increment();
+			return pending.done;
+		}
+		queue.add(pending);
+		startWorkerIfNeeded();
+		return pending.done;
+	}
+
+	/**
+	 * @param user utilisateur
+	 * @return futur terminé une fois faites les évaluations en attente ou en cours de l'utilisateur (déjà terminé
+	 *         s'il n'y en a pas)
+	 */
+	public CompletableFuture<Void> settled(User user) {
+		Pending waiting = queued.get(user.getUserId());
+		Evaluation evaluation = evaluating.get(user.getUserId());
+		Pending running = (evaluation == null) ? null : evaluation.running;
+		if (waiting == null && running == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		if (waiting == null || running == null) {
+			return ((waiting != null) ? waiting : running).done.exceptionally(failure -> null);
+		}
+		return CompletableFuture.allOf(waiting.done, running.done).exceptionally(failure -> null);
+	}
+
+	/** @return nombre d'utilisateurs en attente d'évaluation */
+	public int getBacklog() {
+		return backlog.get();
+	}
+
+	/** @return nombre d'évaluations en cours */
+	public int getEvaluatingCount() {
+		return inProgress.get();
+	}
+
+	/** @return nombre d'événements publiés */
+	public long getPublishedCount() {
+		return published.sum();
+	}
+
+	/** @return nombre d'événements fusionnés avec l'attente d'un même utilisateur */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/** @return nombre d'événements abandonnés, file pleine */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	// Lance un worker si des utilisateurs attendent et qu'une place est libre
+	private void startWorkerIfNeeded() {
+		int active;
+		while (!queue.isEmpty()) {
+			active = activeWorkers.get();
+			if (active >= maxEvaluations) {
+				return;
+			}
+			if (activeWorkers.compareAndSet(active, active + 1)) {
+				resume();
+				return;
+			}
+		}
+	}
+
+	// Relance un worker sur l'exécuteur (exécuteur arrêté : les évaluations en attente échouent)
+	private void resume() {
+		try {
+			executor.execute(this::work);
+		} catch (RejectedExecutionException e) {
+			activeWorkers.decrementAndGet();
+			failQueued(new IllegalStateException("Exécuteur des récompenses arrêté", e));
+		}
+	}
+
+	// Boucle d'un worker : évalue les utilisateurs en attente ; rend la main pendant l'attente de RewardCentral
+	private void work() {
+		Pending pending;
+		while ((pending = queue.poll()) != null) {
+			if (!begin(pending)) {
+				// Évaluation en cours pour cet utilisateur : l'attente repart à sa fin
+				continue;
+			}
+			CompletableFuture<Void> evaluation = evaluate(pending);
+			if (!evaluation.isDone()) {
+				// La place reste prise : un worker repart à la fin de l'évaluation
+				evaluation.whenComplete((ignored, failure) -> resume());
+				return;
+			}
+		}
+		activeWorkers.decrementAndGet();
+		// Un utilisateur a pu arriver entre le dernier prélèvement et la libération de la place
+		startWorkerIfNeeded();
+	}
+
+	// Démarre l'évaluation de l'attente, ou la retient derrière celle en cours du même utilisateur
+	private boolean begin(Pending pending) {
+		UUID userId = pending.user.getUserId();
+		boolean[] started = new boolean[1];
+		evaluating.compute(userId, (id, running) -> {
+			if (running != null) {
+				running.held = pending;
+				return running;
+			}
+			started[0] = true;
+			return new Evaluation(pending);
+		});
+		if (started[0]) {
+			// Les événements publiés à partir d'ici ouvrent une nouvelle attente
+			queued.remove(userId, pending);
+			backlog.decrementAndGet();
+		}
+		return started[0];
+	}
+
+	// Fin de l'évaluation en cours : l'attente retenue derrière elle est remise en file
+	private void finish(UUID userId) {
+		Pending[] held = new Pending[1];
+		evaluating.computeIfPresent(userId, (id, running) -> {
+			held[0] = running.held;
+			return null;
+		});
+		if (held[0] != null) {
+			queue.add(held[0]);
+			startWorkerIfNeeded();
+		}
+	}
+
+	private CompletableFuture<Void> evaluate(Pending pending) {
+		UUID userId = pending.user.getUserId();
+		inProgress.incrementAndGet();
+		CompletableFuture<Void> evaluation;
+		try {
+			evaluation = rewardsService.calculateRewardsAsync(pending.user);
+		} catch (RuntimeException e) {
+			evaluation = CompletableFuture.failedFuture(e);
+		}
+		return evaluation.whenComplete((ignored, failure) -> {
+			inProgress.decrementAndGet();
+			if (failure == null) {
+				pending.done.complete(null);
+			} else {
+				logger.warn("Reward evaluation failed for user {}: {}", pending.user.getUserName(), failure.toString());
+				pending.done.completeExceptionally(failure);
+			}
+			finish(userId);
+		});
+	}
+
+	private void failQueued(RuntimeException failure) {
+		Pending pending;
+		while ((pending = queue.poll()) != null) {
+			queued.remove(pending.user.getUserId(), pending);
+			backlog.decrementAndGet();
+			pending.done.completeExceptionally(failure);
+		}
+	}
+
+	// Utilisateur en attente et futur de son évaluation
+	private static final class Pending {
+		final User user;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Pending(User user) {
+			this.user = user;
+		}
+	}
+
+	// Évaluation en cours et attente retenue derrière elle (modifiée sous compute de la table)
+	private static final class Evaluation {
+		final Pending running;
+		Pending held;
+
+		Evaluation(Pending running) {
+			this.running = running;
+		}
+	}
+}
@@ -1,8 +1,21 @@
 package com.openclassrooms.tourguide.service;
 
-import java.util.List;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.stereotype.Service;
 
@@ -11,6 +24,14 @@ import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.cache.ExpiringCache;
+import com.openclassrooms.tourguide.execution.AdaptiveLimit;
+import com.openclassrooms.tourguide.execution.CircuitBreaker;
+import com.openclassrooms.tourguide.execution.RequestBatcher;
+import com.openclassrooms.tourguide.geo.AttractionDistance;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.DistanceMode;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
 import com.openclassrooms.tourguide.user.User;
 import com.openclassrooms.tourguide.user.UserReward;
 
@@ -24,12 +45,13 @@ import com.openclassrooms.tourguide.user.UserReward;
  *   <li>Éviter les doublons de récompenses pour une même attraction.</li>
  *   <li>Calculer les distances (en miles) entre deux coordonnées géographiques.</li>
  * </ul>
+ *
+ * <p><b>Pannes de RewardCentral :</b> les appels ont un délai et un disjoncteur ({@link CircuitBreaker}). Des
+ * points expirés du cache sont servis si leur rechargement échoue ; sinon la récompense est reportée à la prochaine
+ * évaluation de l'utilisateur, sans faire échouer le suivi.</p>
  */
 @Service
 public class RewardsService {
-	// Facteur de conversion des milles nautiques vers les miles statutaires.
-	private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
-
 	// Rayon de proximité par défaut (en miles) pour l'attribution d'une récompense.
 	private int defaultProximityBuffer = 10;
 
@@ -38,6 +60,54 @@ public class RewardsService {
 	private final GpsUtil gpsUtil;
 	private final RewardCentral rewardsCentral;
 
+	// Nombre maximal de demandes de points prélevées d'un coup par un worker (-DrewardPointsBatchSize, défaut 50)
+	private static final int REWARD_POINTS_BATCH_SIZE = Integer.getInteger("rewardPointsBatchSize", 50);
+
+	// Exécuteur par défaut des appels RewardCentral (threads daemon créés à la demande), tant que
+	// TourGuideService n'a pas fourni le sien (voir setRewardCentralExecutor)
+	private final ExecutorService defaultRewardCentralExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "reward-central");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private volatile Executor rewardCentralExecutor = defaultRewardCentralExecutor;
+
+	// Appels RewardCentral regroupés par lots, au plus -DrewardsThreads (défaut 512) simultanés
+	private volatile RequestBatcher<RewardPointsKey, Integer> rewardPointsBatcher =
+			newRewardPointsBatcher(Integer.getInteger("rewardsThreads", 512));
+
+	// Points déjà obtenus de RewardCentral par (attraction, utilisateur), paramétrable via
+	// -DrewardPointsCacheSize (défaut 200 000) et -DrewardPointsCacheTtlSeconds (défaut 1 800) ; des points expirés
+	// restent servis si RewardCentral ne répond pas, jusqu'à -DrewardPointsStaleSeconds (défaut 86 400) de plus
+	private final ExpiringCache<RewardPointsKey, Integer> rewardPointsCache = new ExpiringCache<>(
+			Integer.getInteger("rewardPointsCacheSize", 200_000),
+			Duration.ofSeconds(Long.getLong("rewardPointsCacheTtlSeconds", 1800)),
+			Duration.ofSeconds(Long.getLong("rewardPointsStaleSeconds", 86_400)));
+
+	// Délai (-DrewardCentralTimeoutMillis, défaut 5 000 ms, à partir de la prise en charge par un worker) et
+	// disjoncteur des appels RewardCentral
+	private final CircuitBreaker rewardCentralBreaker = CircuitBreaker.configured("RewardCentral",
+			Duration.ofMillis(Long.getLong("rewardCentralTimeoutMillis", 5000)));
+
+	// Calcul des distances, paramétrable via -DdistanceMode (défaut HAVERSINE, voir DistanceMode pour la précision)
+	private volatile DistanceMode distanceMode = DistanceMode.valueOf(System.getProperty("distanceMode", "HAVERSINE"));
+
+	// Index spatial du catalogue d'attractions, reconstruit uniquement quand le catalogue change. Le catalogue est
+	// relu auprès de GpsUtil au plus toutes les -DattractionCatalogRefreshSeconds (défaut 300), en arrière-plan :
+	// le chemin chaud ne lit que l'index en cache (pas d'attente de GpsUtil ni de son limiteur de débit)
+	private volatile AttractionIndex attractionIndex;
+	private volatile long catalogLoadedAtNanos;
+	private final long catalogRefreshNanos =
+			TimeUnit.SECONDS.toNanos(Long.getLong("attractionCatalogRefreshSeconds", 300));
+	private final AtomicBoolean catalogRefreshing = new AtomicBoolean();
+
+	// Métriques (latence RewardCentral, récompenses attribuées), registre global par défaut
+	private volatile TourGuideMetrics metrics = TourGuideMetrics.global();
+
+	// Version des règles de récompense (rayon, catalogue) : tout changement invalide les évaluations incrémentales
+	private final AtomicLong rulesVersion = new AtomicLong();
+
 	/**
 	 * @param gpsUtil        fournisseur des attractions et localisations
 	 * @param rewardCentral  fournisseur des points de récompense
@@ -45,6 +115,7 @@ public class RewardsService {
 	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral) {
 		this.gpsUtil = gpsUtil;
 		this.rewardsCentral = rewardCentral;
+		monitorRewardCentral();
 	}
 	/**
 	 * Définit le rayon de proximité (en miles) utilisé pour déterminer si une visite
@@ -54,68 +125,335 @@ public class RewardsService {
 	 */
 	public void setProximityBuffer(int proximityBuffer) {
 		this.proximityBuffer = proximityBuffer;
+		rulesVersion.incrementAndGet();
+	}
+
+	/**
+	 * Définit le nombre maximal d'appels simultanés vers {@link RewardCentral} (exécuteur courant conservé).
+	 * <p>Limite adaptative jusqu'à cette borne, sauf avec {@code -DadaptiveConcurrency=false}
+	 * (voir {@link AdaptiveLimit#configured(int)}).</p>
+	 *
+	 * @param maxConcurrency nombre maximal d'appels en cours (&gt;= 1)
+	 */
+	public void setRewardCentralConcurrency(int maxConcurrency) {
+		this.rewardPointsBatcher = newRewardPointsBatcher(maxConcurrency);
+	}
+
+	/**
+	 * Définit l'exécuteur des appels vers {@link RewardCentral} et leur nombre maximal simultané.
+	 * <p>Les demandes déjà déposées terminent sur l'ancien exécuteur.</p>
+	 *
+	 * @param executor       exécuteur des appels (threads système ou virtuels)
+	 * @param maxConcurrency nombre maximal d'appels en cours (&gt;= 1)
+	 */
+	public void setRewardCentralExecutor(Executor executor, int maxConcurrency) {
+		this.rewardCentralExecutor = executor;
+		this.rewardPointsBatcher = newRewardPointsBatcher(maxConcurrency);
+	}
+
+	/**
+	 * Définit les métriques de publication (latence RewardCentral, appels en cours, récompenses attribuées).
+	 *
+	 * @param metrics métriques à alimenter
+	 */
+	public void setMetrics(TourGuideMetrics metrics) {
+		this.metrics = metrics;
+		monitorRewardCentral();
+	}
+
+	/** @return métriques alimentées par ce service */
+	public TourGuideMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** @return limite courante d'appels simultanés vers {@link RewardCentral} (adaptative) */
+	public int getRewardCentralConcurrency() {
+		return rewardPointsBatcher.getMaxWorkers();
+	}
+
+	/** @return disjoncteur des appels vers {@link RewardCentral} (état, refus, échéances) */
+	public CircuitBreaker getRewardCentralBreaker() {
+		return rewardCentralBreaker;
+	}
+
+	/** @return regroupement des appels vers {@link RewardCentral} (lots, demandes en attente, workers actifs) */
+	public RequestBatcher<?, Integer> getRewardPointsBatcher() {
+		return rewardPointsBatcher;
+	}
+
+	/**
+	 * Définit la méthode de calcul des distances (proximité des récompenses, attractions les plus proches).
+	 *
+	 * @param distanceMode méthode de calcul, voir {@link DistanceMode} pour l'enveloppe de précision
+	 */
+	public void setDistanceMode(DistanceMode distanceMode) {
+		this.distanceMode = Objects.requireNonNull(distanceMode);
+		rulesVersion.incrementAndGet();
+	}
+
+	/** @return méthode de calcul des distances */
+	public DistanceMode getDistanceMode() {
+		return distanceMode;
 	}
 
 	//Réinitialise le rayon de proximité au paramètre par défaut.
 	public void setDefaultProximityBuffer() {
-		proximityBuffer = defaultProximityBuffer;
+		setProximityBuffer(defaultProximityBuffer);
 	}
 
 	/**
-	 * Calcule et enregistre les récompenses manquantes pour un utilisateur.
+	 * Calcule et enregistre les récompenses manquantes pour un utilisateur, en attendant les points
+	 * (voir {@link #calculateRewardsAsync(User)}).
 	 *
-	 * <p><b>Stratégie :</b> pour chaque localisation visitée par l'utilisateur, on itère sur
-	 * toutes les attractions. Si l'utilisateur n'a pas encore de récompense pour cette attraction
-	 * et que la distance est inférieure ou égale au {@code proximityBuffer}, on ajoute une
-	 * {@link UserReward} avec les points retournés par {@link RewardCentral}.
+	 * @param user utilisateur ciblé
+	 */
+	public void calculateRewards(User user){
+		join(calculateRewardsAsync(user));
+	}
+
+	/**
+	 * Calcule les récompenses manquantes pour un utilisateur ; elles sont enregistrées à mesure que
+	 * {@link RewardCentral} répond.
+	 *
+	 * <p><b>Stratégie :</b> seules les visites ajoutées depuis la dernière évaluation sont traitées
+	 * (marque {@link User#getRewardWatermark(long)}), ce qui garde un coût constant par passe quelle
+	 * que soit la longueur de l'historique. Pour chaque nouvelle visite, l'{@link AttractionIndex} renvoie
+	 * les attractions situées à au plus {@code proximityBuffer} miles (selon le {@link DistanceMode} courant).
+	 * Si l'utilisateur n'a pas encore de récompense pour l'une d'elles (test O(1)), les points sont demandés
+	 * (une seule fois par attraction, pour la première visite éligible) et une {@link UserReward} est ajoutée
+	 * à réception.
+	 *
+	 * <p>Un changement de rayon ou de catalogue incrémente la version des règles : l'historique complet
+	 * est alors réévalué, le résultat reste donc identique au parcours exhaustif.
 	 *
-	 * <p><b>Robustesse :</b> utilisation de copies défensives des listes pour éviter les
-	 * {@code ConcurrentModificationException}.
+	 * <p><b>Pannes :</b> si les points d'une attraction ne peuvent être obtenus (RewardCentral en échec, délai
+	 * dépassé, circuit ouvert, sans valeur en cache), la récompense est reportée : la marque n'avance pas, la
+	 * prochaine évaluation de l'utilisateur (passe suivante du {@code Tracker}) la redemande. Le futur se termine
+	 * normalement, les autres récompenses sont enregistrées.
+	 *
+	 * <p><b>Concurrence :</b> aucun thread n'est bloqué pendant l'attente des points : les demandes d'un
+	 * utilisateur partent ensemble vers le regroupement d'appels ({@link RequestBatcher}). {@link User} est
+	 * thread-safe sans verrou (vues figées, put-if-absent), aucune copie défensive n'est donc nécessaire.
 	 *
 	 * @param user utilisateur ciblé
+	 * @return futur terminé une fois toutes les récompenses enregistrées
 	 */
-	// éviter doublons de récompenses
-	public void calculateRewards(User user){
-		// Copie défensive pour éviter ConcurrentModification si une autre thread ajoute une visite
-		List<VisitedLocation> userLocations = new ArrayList<>(user.getVisitedLocations());
-		List<Attraction> attractions = new ArrayList<>(gpsUtil.getAttractions());
-
-		for (VisitedLocation visitedLocation : userLocations) {
-			for (Attraction attraction : attractions) {
-				boolean notAlreadyRewarded = user.getUserRewards().stream()
-						.noneMatch(r -> r.attraction.attractionId.equals(attraction.attractionId));
-				if (notAlreadyRewarded && nearAttraction(visitedLocation, attraction)) {
-					user.addUserReward(new UserReward(
-							visitedLocation, attraction, getRewardPoints(attraction, user)
-					));
+	public CompletableFuture<Void> calculateRewardsAsync(User user) {
+		AttractionIndex index = getAttractionIndex();
+		long version = rulesVersion.get();
+		DistanceMode mode = distanceMode;
+		long from = user.getRewardWatermark(version);
+		long to = user.getVisitedLocationSequence();
+		List<VisitedLocation> newLocations = user.getVisitedLocationsFrom(from, to);
+
+		List<CompletableFuture<Void>> pending = null;
+		Set<String> requested = null;
+		AtomicBoolean deferred = new AtomicBoolean();
+		for (VisitedLocation visitedLocation : newLocations) {
+			for (Attraction attraction : index.within(visitedLocation.location, proximityBuffer, mode)) {
+				if (user.hasRewardFor(attraction.attractionName)) {
+					continue;
 				}
+				if (pending == null) {
+					pending = new ArrayList<>();
+					requested = new HashSet<>();
+				}
+				if (requested.add(attraction.attractionName)) {
+					pending.add(getRewardPointsAsync(attraction, user).handle((points, failure) -> {
+						if (failure != null) {
+							deferred.set(true);
+						} else if (user.addUserReward(new UserReward(visitedLocation, attraction, points))) {
+							metrics.rewardGranted();
+						}
+						return null;
+					}));
+				}
+			}
+		}
+		if (pending == null) {
+			user.setRewardWatermark(to, version);
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+				.thenRun(() -> {
+					if (!deferred.get()) {
+						user.setRewardWatermark(to, version);
+					}
+				});
+	}
+
+	/**
+	 * Renvoie l'index spatial du catalogue en cache. Seul le premier appel lit le catalogue auprès de
+	 * {@link GpsUtil} ; passé le délai de rafraîchissement, une relecture est lancée en arrière-plan et l'index
+	 * courant reste servi en attendant.
+	 *
+	 * @return index du catalogue
+	 */
+	AttractionIndex getAttractionIndex() {
+		AttractionIndex index = attractionIndex;
+		if (index == null) {
+			return refreshAttractionCatalog();
+		}
+		if (System.nanoTime() - catalogLoadedAtNanos >= catalogRefreshNanos
+				&& catalogRefreshing.compareAndSet(false, true)) {
+			try {
+				rewardCentralExecutor.execute(() -> {
+					try {
+						refreshAttractionCatalog();
+					} finally {
+						catalogRefreshing.set(false);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				catalogRefreshing.set(false);
 			}
 		}
+		return index;
+	}
+
+	/**
+	 * Relit le catalogue auprès de {@link GpsUtil} et reconstruit l'index s'il a changé (les évaluations
+	 * incrémentales sont alors invalidées). Appelé périodiquement, ou explicitement après un changement de catalogue.
+	 *
+	 * @return index à jour
+	 */
+	public synchronized AttractionIndex refreshAttractionCatalog() {
+		List<Attraction> catalog = gpsUtil.getAttractions();
+		AttractionIndex index = attractionIndex;
+		if (index == null || !index.sameCatalog(catalog)) {
+			index = new AttractionIndex(catalog);
+			attractionIndex = index;
+			rulesVersion.incrementAndGet();
+		}
+		catalogLoadedAtNanos = System.nanoTime();
+		return index;
+	}
+
+	/** @return catalogue d'attractions en cache (voir {@link #refreshAttractionCatalog()}) */
+	public List<Attraction> getAttractions() {
+		return getAttractionIndex().getAttractions();
+	}
+
+	/**
+	 * Renvoie les {@code k} attractions les plus proches d'un point, peu importe la distance,
+	 * avec leur distance (miles) déjà calculée.
+	 * <p>En mode {@link DistanceMode#HAVERSINE}, le classement utilise les coordonnées préparées de l'index.</p>
+	 *
+	 * @param location point de référence
+	 * @param k        nombre d'attractions souhaitées
+	 * @return attractions triées par distance croissante
+	 */
+	public List<AttractionDistance> getNearestAttractions(Location location, int k) {
+		AttractionIndex index = getAttractionIndex();
+		if (distanceMode == DistanceMode.HAVERSINE) {
+			return index.nearest(location, k);
+		}
+		return index.nearest(location, k, this::getDistance);
 	}
 
 public boolean isWithinAttractionProximity(Attraction attraction, Location location){
 	return getDistance(attraction, location) <= attractionProximityRange;
 }
-	private boolean nearAttraction(VisitedLocation visitedLocation, Attraction attraction) {
-		return getDistance(attraction, visitedLocation.location) <=proximityBuffer;
-	}
 
+	/**
+	 * Renvoie les points de récompense d'une attraction pour un utilisateur (attente de
+	 * {@link #getRewardPointsAsync(Attraction, User)}).
+	 *
+	 * @param attraction attraction concernée
+	 * @param user       utilisateur concerné
+	 * @return points de récompense
+	 */
 	public int getRewardPoints(Attraction attraction, User user) {
-		return rewardsCentral.getAttractionRewardPoints(attraction.attractionId, user.getUserId());
+		return join(getRewardPointsAsync(attraction, user));
+	}
+
+	/**
+	 * Demande les points de récompense d'une attraction pour un utilisateur, sans bloquer.
+	 *
+	 * <p>Les points sont mis en cache par (attractionId, userId) : les recalculs de récompenses et les appels répétés
+	 * à {@code /getNearbyAttractions} ne repaient pas la latence de {@link RewardCentral}, et les demandes
+	 * simultanées d'une même paire ne donnent lieu qu'à un seul appel. Les autres demandes sont transmises par lots
+	 * à un nombre borné de workers ({@link RequestBatcher}), sous délai et disjoncteur ; en cas d'échec, des points
+	 * expirés du cache sont servis s'il y en a.</p>
+	 *
+	 * @param attraction attraction concernée
+	 * @param user       utilisateur concerné
+	 * @return futur des points de récompense
+	 */
+	public CompletableFuture<Integer> getRewardPointsAsync(Attraction attraction, User user) {
+		RewardPointsKey key = new RewardPointsKey(attraction.attractionId, user.getUserId());
+		return rewardPointsCache.getAsync(key,
+				() -> rewardCentralBreaker.submit(rewardPointsBatcher, key));
 	}
 
+	/** @return cache des points de récompense (taille et compteurs succès/échecs/évictions) */
+	public ExpiringCache<?, Integer> getRewardPointsCache() {
+		return rewardPointsCache;
+	}
+
+	/**
+	 * Distance entre deux points selon le {@link DistanceMode} courant.
+	 *
+	 * @param loc1 premier point
+	 * @param loc2 second point
+	 * @return distance en miles statutaires
+	 */
 	public double getDistance(Location loc1, Location loc2) {
-		double lat1 = Math.toRadians(loc1.latitude);
-		double lon1 = Math.toRadians(loc1.longitude);
-		double lat2 = Math.toRadians(loc2.latitude);
-		double lon2 = Math.toRadians(loc2.longitude);
+		return distanceMode.miles(loc1.latitude, loc1.longitude, loc2.latitude, loc2.longitude);
+	}
 
-		double angle = Math.acos(Math.sin(lat1) * Math.sin(lat2)
-				+ Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2));
+	private RequestBatcher<RewardPointsKey, Integer> newRewardPointsBatcher(int maxConcurrency) {
+		return new RequestBatcher<>("RewardCentral",
+				key -> metrics.timeRewardPoints(() -> rewardsCentral.getAttractionRewardPoints(key.attractionId, key.userId)),
+				rewardCentralExecutor, AdaptiveLimit.configured(maxConcurrency), REWARD_POINTS_BATCH_SIZE);
+	}
 
-		double nauticalMiles = 60 * Math.toDegrees(angle);
-		double statuteMiles = STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
-		return statuteMiles;
+	// Jauges des appels RewardCentral : lisent le regroupement courant (remplacé par les setters de concurrence)
+	private void monitorRewardCentral() {
+		metrics.monitorClient("RewardCentral", () -> rewardPointsBatcher.getActiveWorkers(),
+				() -> rewardPointsBatcher.getQueuedCount());
+		metrics.monitorLimit("RewardCentral", () -> rewardPointsBatcher.getMaxWorkers(),
+				() -> rewardPointsBatcher.getLimit().getRejectedCount());
+		metrics.monitorCircuitBreaker("RewardCentral", rewardCentralBreaker);
 	}
 
+	// Attend un résultat en relançant l'erreur d'origine (comme un appel direct)
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	// Clé du cache des points : une attraction pour un utilisateur
+	private static final class RewardPointsKey {
+		private final UUID attractionId;
+		private final UUID userId;
+
+		RewardPointsKey(UUID attractionId, UUID userId) {
+			this.attractionId = attractionId;
+			this.userId = userId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof RewardPointsKey)) {
+				return false;
+			}
+			RewardPointsKey other = (RewardPointsKey) o;
+			return attractionId.equals(other.attractionId) && userId.equals(other.userId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(attractionId, userId);
+		}
+	}
 }
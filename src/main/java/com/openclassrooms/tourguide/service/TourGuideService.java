@@ -1,8 +1,23 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.DTO.NearbyAttractionDto;
+import com.openclassrooms.tourguide.DTO.UserSummaryDto;
+import com.openclassrooms.tourguide.cache.ExpiringCache;
+import com.openclassrooms.tourguide.cluster.NodePartition;
+import com.openclassrooms.tourguide.execution.AdaptiveLimit;
+import com.openclassrooms.tourguide.execution.CircuitBreaker;
+import com.openclassrooms.tourguide.execution.ConcurrencyLimit;
+import com.openclassrooms.tourguide.execution.ExecutionMode;
+import com.openclassrooms.tourguide.execution.HedgedCall;
+import com.openclassrooms.tourguide.geo.AttractionDistance;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.persistence.LocationJournal;
+import com.openclassrooms.tourguide.persistence.UserStorePersistence;
 import com.openclassrooms.tourguide.tracker.Tracker;
 import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPreferences;
+import com.openclassrooms.tourguide.user.UserRegistry;
 import com.openclassrooms.tourguide.user.UserReward;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
@@ -10,16 +25,25 @@ import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import tripPricer.Provider;
 import tripPricer.TripPricer;
 
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -35,12 +59,20 @@ import java.util.stream.IntStream;
  * <h2>Points clés</h2>
  * <ol>
  *   <li><b>Séparation des responsabilités :</b> GPS, Rewards et TripPricer sont clairement séparés.</li>
- *   <li><b>Concurrence & performance :</b> deux {@link ExecutorService} paramétrables pour paralléliser
- *       les appels  (GPS et Rewards) + batching pour limiter la pression mémoire.</li>
+ *   <li><b>Concurrence & performance :</b> des {@link ExecutorService} paramétrables pour paralléliser
+ *       les appels  (GPS et Rewards) en flux continu borné (contre-pression) pour limiter la pression mémoire. Selon le
+ *       {@link ExecutionMode}, ce sont des pools de threads système ou des threads virtuels ; dans les deux cas
+ *       les appels simultanés sont bornés : {@link ConcurrencyLimit} vers GpsUtil, regroupement par lots
+ *       ({@link RewardsService#getRewardPointsAsync}) vers RewardCentral. Le suivi n'attend pas RewardCentral :
+ *       chaque nouvelle position est publiée dans une file bornée ({@link RewardQueue}), dont les workers évaluent
+ *       les récompenses en fusionnant les événements d'un même utilisateur.</li>
  *   <li><b>Testabilité :</b> les API unitaires restent simples (track 1 user, get rewards, etc.),
  *       et des méthodes “bulk” asynchrones existent pour les tests de performance.</li>
- *   <li><b>Stabilité :</b> structure thread-safe pour les utilisateurs internes (ConcurrentHashMap) et
+ *   <li><b>Stabilité :</b> registre thread-safe des utilisateurs internes ({@link UserRegistry}, shards sans verrou) et
  *       arrêt propre des services via un shutdown hook.</li>
+ *   <li><b>Résilience :</b> chaque service distant a son délai et son disjoncteur ({@link CircuitBreaker}), en plus
+ *       de ses pools et limites propres (cloisons). En cas d'échec : dernière position connue pour GpsUtil, points
+ *       en cache ou récompense reportée pour RewardCentral, offres précédentes de l'utilisateur pour TripPricer.</li>
  * </ol>
  */
 @Service
@@ -49,6 +81,33 @@ public class TourGuideService {
 	// Clé API de test pour TripPricer
 	private static final String tripPricerApiKey = "test-server-api-key";
 
+	// Nombre d'attractions renvoyées par la recherche des plus proches
+	public static final int NEARBY_ATTRACTIONS_COUNT = 5;
+
+	// Nombre d'offres renvoyées par getTripDeals (la liste de TripPricer est répétée jusqu'à ce nombre)
+	public static final int TRIP_DEALS_COUNT = 10;
+
+	// Demandes de tarif parallèles par recherche d'offres (-DtripQuoteFanOut) : chacune renvoie une sélection
+	// aléatoire de fournisseurs, leur fusion en couvre davantage
+	private static final int TRIP_QUOTE_FAN_OUT = Integer.getInteger("tripQuoteFanOut", 3);
+
+	// Délai de réponse de la recherche d'offres (-DtripDealsDeadlineMillis) : au-delà, seuls les tarifs déjà reçus
+	// sont retenus
+	private static final long TRIP_DEALS_DEADLINE_MILLIS = Long.getLong("tripDealsDeadlineMillis", 150);
+
+	// Nombre de visites conservées par défaut pour chaque utilisateur (~3,5 jours à raison d'un point / 5 min)
+	public static final int DEFAULT_LOCATION_HISTORY_SIZE = 1000;
+
+	// Positions conservées par utilisateur dans le journal sur disque (~35 jours à raison d'un point / 5 min)
+	public static final int DEFAULT_LOCATION_JOURNAL_RETENTION = 10000;
+
+	// Mode d'exécution par défaut des appels parallèles (pools de threads système)
+	public static final ExecutionMode DEFAULT_EXECUTION_MODE = ExecutionMode.PLATFORM;
+
+	// Threads d'évaluation des récompenses par défaut : seule la lecture du catalogue GpsUtil y est bloquante
+	// (10 ms, 1000 appels/s au plus), une quinzaine de threads suffit à suivre ce débit
+	private static final int DEFAULT_REWARDS_EVALUATION_THREADS = 16;
+
 	private final Logger logger = LoggerFactory.getLogger(TourGuideService.class);
 
 	// Dépendance I/O : positions & attractions
@@ -57,10 +116,10 @@ public class TourGuideService {
 	// Dépendance métier : attribution des récompenses
 	private final RewardsService rewardsService;
 
-	// Dépendance I/O : fournisseurs d’offres de voyage
-	private final TripPricer tripPricer = new TripPricer();
+	// Dépendance I/O : fournisseurs d’offres de voyage (remplaçable, voir setTripPricer)
+	private volatile TripPricer tripPricer = new TripPricer();
 
-	// Thread de suivi (hérité du projet de départ)
+	// Ordonnanceur du suivi périodique (échéance par utilisateur, shards)
 	public final Tracker tracker;
 
 	// Active les données internes (utilisateurs de démo) si vrai
@@ -70,41 +129,172 @@ public class TourGuideService {
 	// Pool pour paralléliser les appels GPS (I/O majoritaire)
 	private final ExecutorService gpsExecutor;
 
-	// Pool pour paralléliser les calculs de récompenses (I/O RewardCentral)
+	// Pool pour l'évaluation des récompenses (l'attente des points RewardCentral ne bloque aucun thread)
 	private final ExecutorService rewardsExecutor;
 
-	// Stockage des users (thread-safe)
-	// Conteneur thread-safe pour les utilisateurs internes (en mémoire)
-	private final Map<String, User> internalUserMap = new java.util.concurrent.ConcurrentHashMap<>();
+	// Pool des appels RewardCentral (I/O), transmis à RewardsService
+	private final ExecutorService rewardCentralExecutor;
+
+	// Pool des appels TripPricer (demandes parallèles et doublons)
+	private final ExecutorService tripPricerExecutor;
+
+	// Appels TripPricer doublés lorsqu'ils dépassent le p95 de latence observé
+	private final HedgedCall tripPricerCalls;
+
+	// Évaluations de récompenses publiées par le suivi (sur rewardsExecutor)
+	private final RewardQueue rewardQueue;
+
+	// Mode d'exécution des pools ci-dessus
+	private final ExecutionMode executionMode;
+
+	// Borne des appels simultanés vers GpsUtil (RewardCentral est borné dans RewardsService)
+	private final ConcurrencyLimit gpsLimit;
+
+	// Délai (-DgpsTimeoutMillis, défaut 5 000 ms, à partir de l'obtention d'une place) et disjoncteur des appels GpsUtil
+	private final CircuitBreaker gpsBreaker = CircuitBreaker.configured("GpsUtil",
+			Duration.ofMillis(Long.getLong("gpsTimeoutMillis", 5000)));
+
+	// Délai (-DtripPricerTimeoutMillis, défaut 2 000 ms) et disjoncteur des demandes de tarif TripPricer
+	private final CircuitBreaker tripPricerBreaker = CircuitBreaker.configured("TripPricer",
+			Duration.ofMillis(Long.getLong("tripPricerTimeoutMillis", 2000)));
+
+	// Offres déjà obtenues de TripPricer par entrées de tarification (utilisateur, composition, durée, points),
+	// paramétrable via -DtripDealsCacheSize (défaut 100 000) et -DtripDealsCacheTtlSeconds (défaut 600)
+	private final ExpiringCache<TripQuoteKey, List<Provider>> tripDealsCache = new ExpiringCache<>(
+			Integer.getInteger("tripDealsCacheSize", 100_000),
+			Duration.ofSeconds(Long.getLong("tripDealsCacheTtlSeconds", 600)));
+
+	// Métriques (latences GpsUtil/TripPricer, pools, passes, Tracker), partagées avec RewardsService
+	private volatile TourGuideMetrics metrics;
+
+	// Utilisateurs internes (en mémoire), répartis en shards fixes (-DuserRegistryShards, défaut 16),
+	// indexés par nom et par identifiant
+	private final UserRegistry userRegistry = new UserRegistry(Integer.getInteger("userRegistryShards", 16));
+
+	// Taille du tampon circulaire d'historique appliqué aux utilisateurs enregistrés (0 = illimité)
+	private final int locationHistorySize;
+
+	// Persistance locale des utilisateurs (instantané + journal), active si -DpersistenceDir est renseigné
+	private final UserStorePersistence persistence;
+
+	// Journal sur disque de toutes les positions suivies, actif si -DlocationJournalDir est renseigné
+	private final LocationJournal locationJournal;
+
+	// Utilisateurs dont ce nœud est propriétaire (tous pour un nœud seul)
+	private final NodePartition partition;
 
 	/**
-	 * Construit le service avec des pools configurables via System properties :
-	 * <ul>
-	 *   <li><code>gpsThreads</code> (défaut 256)</li>
-	 *   <li><code>rewardsThreads</code> (défaut 512)</li>
-	 * </ul>
+	 * Construit le service avec la taille d'historique par défaut ({@value #DEFAULT_LOCATION_HISTORY_SIZE}).
 	 *
 	 * @param gpsUtil        fournisseur de localisations/utilisateurs/attractions
 	 * @param rewardsService service métier de calcul des récompenses
 	 */
 	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService) {
+		this(gpsUtil, rewardsService, DEFAULT_LOCATION_HISTORY_SIZE);
+	}
+
+	/**
+	 * Construit le service en mode d'exécution par défaut ({@link ExecutionMode#PLATFORM}).
+	 *
+	 * @param gpsUtil             fournisseur de localisations/utilisateurs/attractions
+	 * @param rewardsService      service métier de calcul des récompenses
+	 * @param locationHistorySize nombre de visites conservées par utilisateur (0 = illimité)
+	 */
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, int locationHistorySize) {
+		this(gpsUtil, rewardsService, locationHistorySize, DEFAULT_EXECUTION_MODE);
+	}
+
+	/**
+	 * Construit le service avec une concurrence configurable via System properties :
+	 * <ul>
+	 *   <li><code>gpsThreads</code> (défaut 256) : appels simultanés vers GpsUtil (au plus)</li>
+	 *   <li><code>rewardsThreads</code> (défaut 512) : appels simultanés vers RewardCentral (au plus)</li>
+	 *   <li><code>rewardsEvaluationThreads</code> (défaut 16) : évaluation des récompenses</li>
+	 *   <li><code>adaptiveConcurrency</code> (défaut true) : la concurrence vers GpsUtil et RewardCentral s'ajuste
+	 *       à leur latence sous ces bornes ({@link AdaptiveLimit}) ; {@code false} la fixe aux bornes</li>
+	 *   <li><code>rewardQueueCapacity</code> (défaut 200 000) et <code>rewardQueueConcurrency</code> (défaut 2 000) :
+	 *       utilisateurs en attente et évaluations simultanées de la file des récompenses ({@link RewardQueue})</li>
+	 *   <li><code>gpsTimeoutMillis</code> (défaut 5 000), <code>tripPricerTimeoutMillis</code> (défaut 2 000) et
+	 *       <code>circuitBreaker*</code> : délais et disjoncteurs des appels (voir {@link CircuitBreaker#configured})</li>
+	 * </ul>
+	 * En mode {@link ExecutionMode#PLATFORM} ces valeurs sont aussi la taille des pools ; en mode
+	 * {@link ExecutionMode#VIRTUAL} chaque tâche a son thread virtuel et seules les bornes s'appliquent.
+	 * La rétention d'historique et le mode se règlent via les propriétés Spring
+	 * <code>tourguide.location-history.max-size</code> et <code>tourguide.execution.mode</code>.
+	 *
+	 * @param gpsUtil             fournisseur de localisations/utilisateurs/attractions
+	 * @param rewardsService      service métier de calcul des récompenses
+	 * @param locationHistorySize nombre de visites conservées par utilisateur (0 = illimité)
+	 * @param executionMode       threads système ou threads virtuels pour les appels parallèles
+	 */
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, int locationHistorySize,
+			ExecutionMode executionMode) {
+		this(gpsUtil, rewardsService, locationHistorySize, executionMode, NodePartition.standalone());
+	}
+
+	/**
+	 * Construit le service d'un nœud d'un déploiement partitionné : seuls les utilisateurs dont ce nœud est
+	 * propriétaire sont initialisés et suivis (voir {@link NodePartition}).
+	 *
+	 * @param gpsUtil             fournisseur de localisations/utilisateurs/attractions
+	 * @param rewardsService      service métier de calcul des récompenses
+	 * @param locationHistorySize nombre de visites conservées par utilisateur (0 = illimité)
+	 * @param executionMode       threads système ou threads virtuels pour les appels parallèles
+	 * @param partition           partition de ce nœud ({@link NodePartition#standalone()} pour un nœud seul)
+	 */
+	@Autowired
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService,
+			@Value("${tourguide.location-history.max-size:" + DEFAULT_LOCATION_HISTORY_SIZE + "}") int locationHistorySize,
+			@Value("${tourguide.execution.mode:PLATFORM}") ExecutionMode executionMode,
+			NodePartition partition) {
 		this.gpsUtil = gpsUtil;
+		this.partition = partition;
 		this.rewardsService = rewardsService;
+		this.locationHistorySize = locationHistorySize;
+		this.executionMode = executionMode;
 
-		// Paramétrage via -DgpsThreads, -DrewardsThreads (valeurs par défaut adaptées I/O)
+		// Paramétrage via -DgpsThreads, -DrewardsThreads (valeurs par défaut adaptées I/O), -DrewardsEvaluationThreads
 		int gpsThreads = Integer.getInteger("gpsThreads", 256);
 		int rewardsThreads = Integer.getInteger("rewardsThreads", 512);
-		this.gpsExecutor = Executors.newFixedThreadPool(gpsThreads);
-		this.rewardsExecutor = Executors.newFixedThreadPool(rewardsThreads);
+		int evaluationThreads = Integer.getInteger("rewardsEvaluationThreads", DEFAULT_REWARDS_EVALUATION_THREADS);
+		this.gpsExecutor = executionMode.newExecutor(gpsThreads);
+		this.rewardsExecutor = executionMode.newExecutor(evaluationThreads);
+		this.rewardCentralExecutor = executionMode.newExecutor(rewardsThreads);
+		this.tripPricerExecutor = executionMode.newExecutor(Integer.getInteger("tripPricerThreads", 64));
+		this.tripPricerCalls = new HedgedCall("TripPricer", tripPricerExecutor, 0.95, 256,
+				Duration.ofMillis(TRIP_DEALS_DEADLINE_MILLIS / 3));
+		this.gpsLimit = new ConcurrencyLimit("GpsUtil", AdaptiveLimit.configured(gpsThreads));
+		this.rewardQueue = new RewardQueue(rewardsService, rewardsExecutor,
+				Integer.getInteger("rewardQueueCapacity", 200_000), Integer.getInteger("rewardQueueConcurrency", 2000));
+		rewardsService.setRewardCentralExecutor(rewardCentralExecutor, rewardsThreads);
+		bindMetrics(rewardsService.getMetrics());
+		logger.debug("Execution mode {} (GpsUtil <= {}, RewardCentral <= {} concurrent calls)",
+				executionMode, gpsThreads, rewardsThreads);
 
 		Locale.setDefault(Locale.US);
 
-		if (testMode) {
+		// Démarrage à chaud : les utilisateurs persistés remplacent la génération des données de démo
+		String persistenceDir = System.getProperty("persistenceDir");
+		this.persistence = (persistenceDir == null) ? null
+				: new UserStorePersistence(Paths.get(persistenceDir),
+						Duration.ofSeconds(Long.getLong("snapshotIntervalSeconds", 300)), Duration.ofSeconds(1));
+		int restored = (persistence == null) ? 0 : persistence.restore(user -> {
+			user.setLocationHistoryCapacity(locationHistorySize);
+			userRegistry.add(user);
+		});
+		String journalDir = System.getProperty("locationJournalDir");
+		this.locationJournal = (journalDir == null) ? null
+				: new LocationJournal(Paths.get(journalDir), Integer.getInteger("locationJournalSegmentRecords", 1 << 20),
+						Integer.getInteger("locationJournalRetention", DEFAULT_LOCATION_JOURNAL_RETENTION));
+		if (testMode && restored == 0) {
 			logger.info("TestMode enabled");
 			logger.debug("Initializing users");
 			initializeInternalUsers();
 			logger.debug("Finished initializing users");
 		}
+		if (persistence != null) {
+			persistence.start(userRegistry::values);
+		}
 		tracker = new Tracker(this);
 		addShutDownHook();
 	}
@@ -114,11 +304,55 @@ public class TourGuideService {
 	 * ========================= */
 
 	/**
-	 * Renvoie la liste complète des attractions (source {@link GpsUtil}).
+	 * Définit les métriques de publication (ce service, {@link RewardsService} et le {@link Tracker}).
+	 * <p>Par défaut, {@link TourGuideMetrics#global()}, exposé par {@code /actuator/prometheus}.</p>
+	 * @param metrics métriques à alimenter
+	 */
+	public void setMetrics(TourGuideMetrics metrics) {
+		rewardsService.setMetrics(metrics);
+		bindMetrics(metrics);
+	}
+
+	/** @return métriques alimentées par ce service */
+	public TourGuideMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Remplace le client TripPricer (client alternatif, injection de pannes dans les tests).
+	 * @param tripPricer client des demandes de tarif
+	 */
+	public void setTripPricer(TripPricer tripPricer) {
+		this.tripPricer = tripPricer;
+	}
+
+	/** @return file des évaluations de récompenses publiées par le suivi (attente, fusions, abandons) */
+	public RewardQueue getRewardQueue() {
+		return rewardQueue;
+	}
+
+	/** @return disjoncteur des appels GpsUtil (état, refus, échéances) */
+	public CircuitBreaker getGpsBreaker() {
+		return gpsBreaker;
+	}
+
+	/** @return disjoncteur des demandes de tarif TripPricer (état, refus, échéances) */
+	public CircuitBreaker getTripPricerBreaker() {
+		return tripPricerBreaker;
+	}
+
+	/** @return mode d'exécution des appels parallèles (GPS et récompenses) */
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Renvoie la liste complète des attractions (catalogue {@link GpsUtil} en cache, voir
+	 * {@link RewardsService#refreshAttractionCatalog()}).
 	 * @return liste d’attractions.
 	 */
 	public List<Attraction> getAllAttractions() {
-		return gpsUtil.getAttractions();
+		return rewardsService.getAttractions();
 	}
 
 	/**
@@ -132,13 +366,102 @@ public class TourGuideService {
 
 	/**
 	 * Renvoie la dernière position connue d’un utilisateur, ou la calcule si nécessaire.
+	 * <p>Si l'historique en mémoire est vide (redémarrage sans persistance), la dernière position du journal sur
+	 * disque est lue directement dans sa projection avant tout appel GPS.</p>
 	 * @param user utilisateur concerné
 	 * @return dernière {@link VisitedLocation}
 	 */
 	public VisitedLocation getUserLocation(User user) {
-		return (user.getVisitedLocations().size() > 0)
-				? user.getLastVisitedLocation()
-				: trackUserLocation(user);
+		VisitedLocation known = getLastKnownLocation(user);
+		return (known != null) ? known : trackUserLocation(user);
+	}
+
+	/**
+	 * Version asynchrone de {@link #getUserLocation(User)} : futur déjà terminé si la position est connue (mémoire
+	 * ou journal), sinon suivi via {@link #trackUserLocationAsync(User)} sans bloquer le thread appelant.
+	 * @param user utilisateur concerné
+	 * @return futur de la dernière {@link VisitedLocation}
+	 */
+	public CompletableFuture<VisitedLocation> getUserLocationAsync(User user) {
+		VisitedLocation known = getLastKnownLocation(user);
+		return (known != null) ? CompletableFuture.completedFuture(known) : trackUserLocationAsync(user);
+	}
+
+	// Dernière position en mémoire, sinon dans le journal sur disque, sans appel GPS (null si aucune)
+	private VisitedLocation getLastKnownLocation(User user) {
+		if (user.getVisitedLocations().size() > 0) {
+			return user.getLastVisitedLocation();
+		}
+		return (locationJournal == null) ? null : locationJournal.latest(user.getUserId());
+	}
+
+	/**
+	 * Renvoie les {@value #NEARBY_ATTRACTIONS_COUNT} attractions les plus proches de la dernière position de
+	 * l'utilisateur, avec distance et points de récompense.
+	 * <p>
+	 * Les demandes de points partent toutes en même temps ({@link RewardsService#getRewardPointsAsync}, regroupées
+	 * en lots vers RewardCentral) : la latence est celle de l'appel le plus lent et non leur somme. Aucun thread
+	 * n'attend : le futur se termine sur le thread qui reçoit la dernière réponse.
+	 * </p>
+	 * <p>
+	 * Si les points d'une attraction ne peuvent être obtenus (RewardCentral en panne, sans valeur en cache), ceux
+	 * de la récompense déjà acquise pour cette attraction sont affichés, sinon 0 : la liste reste servie.
+	 * </p>
+	 * @param user utilisateur concerné
+	 * @return futur de la liste des attractions, par distance croissante
+	 */
+	public CompletableFuture<List<NearbyAttractionDto>> getNearbyAttractionsAsync(User user) {
+		return getUserLocationAsync(user).thenCompose(visitedLocation -> {
+			Location userLocation = visitedLocation.location;
+			List<AttractionDistance> nearest =
+					rewardsService.getNearestAttractions(userLocation, NEARBY_ATTRACTIONS_COUNT);
+			List<CompletableFuture<Integer>> points = nearest.stream()
+					.map(nearby -> rewardsService.getRewardPointsAsync(nearby.attraction, user)
+							.exceptionally(failure -> earnedPoints(user, nearby.attraction)))
+					.collect(Collectors.toList());
+			return CompletableFuture.allOf(points.toArray(new CompletableFuture<?>[0]))
+					.thenApply(ignored -> IntStream.range(0, nearest.size())
+							.mapToObj(i -> {
+								Attraction attraction = nearest.get(i).attraction;
+								return new NearbyAttractionDto(
+										attraction.attractionName,
+										attraction.latitude,
+										attraction.longitude,
+										userLocation.latitude,
+										userLocation.longitude,
+										nearest.get(i).distance,
+										points.get(i).join()
+								);
+							})
+							.collect(Collectors.toList()));
+		});
+	}
+
+	// Points de la récompense déjà acquise pour une attraction (0 sinon), affichés quand RewardCentral ne répond pas
+	private int earnedPoints(User user, Attraction attraction) {
+		metrics.fallbackUsed("RewardCentral");
+		for (UserReward reward : user.getUserRewards()) {
+			if (reward.attraction.attractionName.equals(attraction.attractionName)) {
+				return reward.getRewardPoints();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Renvoie l'historique des positions d'un utilisateur, de la plus récente à la plus ancienne : journal sur
+	 * disque s'il est actif (au-delà de la rétention en mémoire), sinon historique conservé en mémoire.
+	 * @param user  utilisateur concerné
+	 * @param limit nombre maximal de positions
+	 * @return positions visitées
+	 */
+	public List<VisitedLocation> getLocationHistory(User user, int limit) {
+		if (locationJournal != null) {
+			return locationJournal.history(user.getUserId(), limit);
+		}
+		List<VisitedLocation> history = new ArrayList<>(user.getVisitedLocations());
+		Collections.reverse(history);
+		return history.subList(0, Math.min(Math.max(limit, 0), history.size()));
 	}
 
 	/**
@@ -147,162 +470,426 @@ public class TourGuideService {
 	 * @return utilisateur ou {@code null} si absent
 	 */
 	public User getUser(String userName) {
-		return internalUserMap.get(userName);
+		return userRegistry.get(userName);
+	}
+
+	/**
+	 * Récupère un utilisateur interne par son identifiant.
+	 * @param userId identifiant de l'utilisateur
+	 * @return utilisateur ou {@code null} si absent
+	 */
+	public User getUser(UUID userId) {
+		return userRegistry.get(userId);
 	}
 
 	/**
 	 * Renvoie la liste des utilisateurs internes (copie de protection).
+	 * <p>Les parcours de masse utilisent plutôt {@link #getUserRegistry()}, parcouru shard par shard sans copie.</p>
 	 * @return liste des utilisateurs
 	 */
 	public List<User> getAllUsers() {
-		return internalUserMap.values().stream().collect(Collectors.toList());
+		return new ArrayList<>(userRegistry.values());
+	}
+
+	/** @return partition de ce nœud (utilisateurs possédés, propriétaire des autres) */
+	public NodePartition getPartition() {
+		return partition;
+	}
+
+	/** @return registre des utilisateurs internes (index par nom et identifiant, parcours par shard sans copie) */
+	public UserRegistry getUserRegistry() {
+		return userRegistry;
+	}
+
+	/**
+	 * Produit le résumé (dernière position connue, nombre et total des récompenses) de tous les utilisateurs ou
+	 * d'une liste de noms, un par un, pour une réponse en flux.
+	 * <p>
+	 * Le parcours lit directement le registre des utilisateurs (itération faiblement cohérente, sans copie) : la mémoire
+	 * utilisée ne dépend pas du nombre d'utilisateurs. Aucun appel GPS n'est fait : un utilisateur sans visite
+	 * (ni en mémoire, ni dans le journal) est résumé sans position. Les noms inconnus sont ignorés.
+	 * </p>
+	 * <p>
+	 * Dans un déploiement partitionné, seuls les utilisateurs dont ce nœud est propriétaire sont résumés (y compris
+	 * après un changement d'anneau : une ancienne copie locale n'est plus résumée) ; les autres sont demandés à leur
+	 * propriétaire ({@link com.openclassrooms.tourguide.cluster.PartitionFanOut}).
+	 * </p>
+	 * @param userNames noms des utilisateurs à résumer, ou {@code null} pour tous
+	 * @param action    traitement de chaque résumé (écriture dans la réponse)
+	 * @return nombre de résumés produits
+	 */
+	public int forEachUserSummary(Collection<String> userNames, Consumer<UserSummaryDto> action) {
+		int count = 0;
+		if (userNames == null) {
+			for (User user : userRegistry) {
+				if (partition.owns(user.getUserName())) {
+					action.accept(summarize(user));
+					count++;
+				}
+			}
+			return count;
+		}
+		for (String userName : userNames) {
+			User user = userRegistry.get(userName);
+			if (user != null && partition.owns(userName)) {
+				action.accept(summarize(user));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private UserSummaryDto summarize(User user) {
+		List<UserReward> rewards = user.getUserRewards();
+		int rewardPoints = 0;
+		for (UserReward reward : rewards) {
+			rewardPoints += reward.getRewardPoints();
+		}
+		VisitedLocation last = getLastKnownLocation(user);
+		return (last == null)
+				? new UserSummaryDto(user.getUserId(), user.getUserName(), null, null, null, rewards.size(), rewardPoints)
+				: new UserSummaryDto(user.getUserId(), user.getUserName(), last.location.latitude,
+						last.location.longitude, last.timeVisited, rewards.size(), rewardPoints);
 	}
 
 	/**
-	 * Ajoute un utilisateur s’il n’existe pas déjà (idempotent).
+	 * Ajoute un utilisateur s’il n’existe pas déjà (idempotent), lui applique la rétention d’historique,
+	 * le journalise (si la persistance est active) et le confie au {@link Tracker}.
 	 * @param user utilisateur à enregistrer
 	 */
 	public void addUser(User user) {
-		internalUserMap.putIfAbsent(user.getUserName(), user);
+		if (userRegistry.add(user)) {
+			user.setLocationHistoryCapacity(locationHistorySize);
+			if (persistence != null) {
+				persistence.track(user);
+			}
+			tracker.track(user);
+		}
 	}
 
 	/**
 	 * Récupère et enregistre des offres de voyage pour un utilisateur.
 	 * <p>
-	 * TripPricer renvoie souvent 5 entrées : on duplique à 10 pour respecter les tests/fonctionnalités existants.
+	 * Plusieurs demandes de tarif identiques ({@code -DtripQuoteFanOut}, 3 par défaut) partent en parallèle :
+	 * chacune renvoie une sélection aléatoire de fournisseurs. Une demande plus lente que le p95 observé est
+	 * doublée ({@link HedgedCall}). Les tarifs reçus avant le délai ({@code -DtripDealsDeadlineMillis}, 150 ms
+	 * par défaut) sont fusionnés (prix le plus bas par fournisseur) et triés par prix ; si aucun n'est arrivé à
+	 * temps, la première réponse fait foi. La latence est ainsi bornée par le délai et non par l'appel le plus lent.
+	 * </p>
+	 * <p>
+	 * Le tarif ne dépend que de l'utilisateur, de la composition du groupe, de la durée du séjour et du cumul des
+	 * points : les offres sont mises en cache sur ces entrées. Une nouvelle récompense ou un changement de
+	 * préférences change la clé, donc déclenche une nouvelle recherche ; les demandes identiques simultanées
+	 * partagent une seule recherche.
+	 * </p>
+	 * <p>
+	 * Les {@value #TRIP_DEALS_COUNT} meilleures offres sont renvoyées ; s'il y a moins de fournisseurs distincts,
+	 * la liste est répétée jusqu'à {@value #TRIP_DEALS_COUNT} pour respecter les tests/fonctionnalités existants,
+	 * par une vue en lecture seule (aucune copie).
+	 * </p>
+	 * <p>
+	 * Chaque demande de tarif a un délai et passe par un disjoncteur ; si aucune n'aboutit, les offres précédentes de
+	 * l'utilisateur sont renvoyées s'il en a.
 	 * </p>
 	 * @param user utilisateur
-	 * @return liste de 10 {@link Provider}
+	 * @return liste de 10 {@link Provider} (non modifiable), par prix croissant
 	 */
 	public List<Provider> getTripDeals(User user) {
+		return join(getTripDealsAsync(user));
+	}
+
+	/**
+	 * Version asynchrone de {@link #getTripDeals(User)} : aucun thread n'attend les tarifs, le délai de
+	 * fusion est armé par une minuterie et le futur se termine dès qu'il expire ou que toutes les demandes ont répondu.
+	 * @param user utilisateur
+	 * @return futur de la liste de 10 {@link Provider} (non modifiable), par prix croissant
+	 */
+	public CompletableFuture<List<Provider>> getTripDealsAsync(User user) {
 		int cumulatativeRewardPoints = user.getUserRewards()
 				.stream()
 				.mapToInt(UserReward::getRewardPoints)
 				.sum();
+		UserPreferences preferences = user.getUserPreferences();
+		TripQuoteKey key = new TripQuoteKey(user.getUserId(), preferences.getNumberOfAdults(),
+				preferences.getNumberOfChildren(), preferences.getTripDuration(), cumulatativeRewardPoints);
+
+		return tripDealsCache.getAsync(key, () -> quoteTripDeals(key))
+				.handle((providers, failure) -> {
+					if (failure == null) {
+						user.setTripDeals(providers);
+						return providers;
+					}
+					// TripPricer indisponible : offres précédentes de l'utilisateur, s'il en a
+					List<Provider> previous = user.getTripDeals();
+					if (previous.isEmpty()) {
+						throw (failure instanceof CompletionException) ? (CompletionException) failure
+								: new CompletionException(failure);
+					}
+					metrics.fallbackUsed("TripPricer");
+					return previous;
+				});
+	}
+
+	/** @return appels TripPricer (nombre d'appels, de doublons, délai courant avant doublon) */
+	public HedgedCall getTripPricerCalls() {
+		return tripPricerCalls;
+	}
 
-		List<Provider> providers = tripPricer.getPrice(
-				tripPricerApiKey,
-				user.getUserId(),
-				user.getUserPreferences().getNumberOfAdults(),
-				user.getUserPreferences().getNumberOfChildren(),
-				user.getUserPreferences().getTripDuration(),
-				cumulatativeRewardPoints
-		);
-
-		if (providers.size() < 10) {
-			// duplication contrôlée jusqu’à 10 éléments
-			List<Provider> duplicated = new ArrayList<>(providers);
-			while (duplicated.size() < 10) {
-				duplicated.addAll(providers);
+	/** @return cache des offres de voyage (taille et compteurs succès/échecs/regroupements) */
+	public ExpiringCache<?, List<Provider>> getTripDealsCache() {
+		return tripDealsCache;
+	}
+
+	// Demandes de tarif en parallèle, fusion des réponses reçues avant le délai, meilleures offres par prix
+	private CompletableFuture<List<Provider>> quoteTripDeals(TripQuoteKey key) {
+		List<CompletableFuture<List<Provider>>> quotes = new ArrayList<>(TRIP_QUOTE_FAN_OUT);
+		for (int i = 0; i < TRIP_QUOTE_FAN_OUT; i++) {
+			TripPricer pricer = tripPricer;
+			quotes.add(tripPricerBreaker.callAsync(() -> tripPricerCalls.call(() -> metrics.timeTripPrice(
+					() -> pricer.getPrice(
+							tripPricerApiKey,
+							key.userId,
+							key.adults,
+							key.children,
+							key.nightsStay,
+							key.rewardPoints
+					)))));
+		}
+		CompletableFuture<Void> all = CompletableFuture.allOf(quotes.toArray(new CompletableFuture<?>[0]));
+		// Délai dépassé ou demande en échec : on garde les tarifs déjà reçus
+		CompletableFuture<Void> deadline = all.exceptionally(failure -> null)
+				.completeOnTimeout(null, TRIP_DEALS_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+
+		return deadline.thenCompose(ignored -> {
+			Map<String, Provider> cheapest = new HashMap<>();
+			for (CompletableFuture<List<Provider>> quote : quotes) {
+				if (quote.isDone() && !quote.isCompletedExceptionally()) {
+					mergeCheapest(cheapest, quote.join());
+				}
 			}
-			providers = duplicated.subList(0, 10);
+			if (!cheapest.isEmpty()) {
+				return CompletableFuture.completedFuture(rankTripDeals(cheapest));
+			}
+			// Aucune réponse à temps : la première réponse réussie fait foi
+			CompletableFuture<List<Provider>> first = new CompletableFuture<>();
+			quotes.forEach(quote -> quote.thenAccept(first::complete));
+			all.whenComplete((unused, failure) -> first.completeExceptionally(
+					(failure != null) ? failure : new IllegalStateException("Aucun tarif TripPricer")));
+			return first.thenApply(providers -> {
+				mergeCheapest(cheapest, providers);
+				return rankTripDeals(cheapest);
+			});
+		});
+	}
+
+	private static List<Provider> rankTripDeals(Map<String, Provider> cheapest) {
+		List<Provider> best = new ArrayList<>(cheapest.values());
+		best.sort(Comparator.comparingDouble(provider -> provider.price));
+		return new RepeatedList<>(best.subList(0, Math.min(TRIP_DEALS_COUNT, best.size())), TRIP_DEALS_COUNT);
+	}
+
+	// Attente d'un futur en propageant l'exception d'origine (sans l'enveloppe CompletionException)
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static void mergeCheapest(Map<String, Provider> cheapest, List<Provider> providers) {
+		for (Provider provider : providers) {
+			cheapest.merge(provider.name, provider, (a, b) -> (a.price <= b.price) ? a : b);
 		}
-		user.setTripDeals(providers);
-		return providers;
 	}
 
 	/**
-	 * Traite un utilisateur : récupération GPS + calcul des rewards.
+	 * Traite un utilisateur : récupération GPS, puis publication de la nouvelle position dans la file des
+	 * récompenses.
 	 * <p>
 	 * Méthode unitaire (conservative) utilisée par le code applicatif et certains tests unitaires.
 	 * Les méthodes “bulk” asynchrones ci-dessous sont à privilégier pour les tests de performance.
 	 * </p>
+	 * <p>
+	 * La position est renvoyée dès que GpsUtil a répondu ; les récompenses sont évaluées ensuite par
+	 * {@link RewardQueue} (voir {@link RewardQueue#settled(User)} pour les attendre).
+	 * </p>
 	 * @param user utilisateur
 	 * @return {@link VisitedLocation} ajoutée
 	 */
 	public VisitedLocation trackUserLocation(User user) {
-		VisitedLocation visitedLocation = fetchLocationOnly(user); // GPS
-		rewardsService.calculateRewards(user);                      // Rewards
-		return visitedLocation;
+		return join(trackUserLocationAsync(user));
+	}
+
+	/**
+	 * Version asynchrone de {@link #trackUserLocation(User)} : récupération GPS sur {@code gpsExecutor}, puis
+	 * publication de la nouvelle position dans la file des récompenses ({@link RewardQueue}), sans attendre
+	 * l'évaluation.
+	 * <p>
+	 * Si GpsUtil ne répond pas à temps ou que son circuit est ouvert, la dernière position connue est renvoyée
+	 * (sans être ajoutée à l'historique) ; le futur n'échoue que pour un utilisateur sans aucune position.
+	 * </p>
+	 * <p>
+	 * Utilisée par le {@link Tracker} et par {@link #trackAndRewardAllUsersAsync()}.
+	 * </p>
+	 * @param user utilisateur
+	 * @return futur de la {@link VisitedLocation} ajoutée, terminé dès la réponse de GpsUtil
+	 */
+	public CompletableFuture<VisitedLocation> trackUserLocationAsync(User user) {
+		return fetchLocationAsync(user, true);
 	}
 
 	/**
 	 * Renvoie les <b>5 attractions les plus proches</b> du point visité fourni (peu importe la distance).
 	 * <p>
-	 * Tri croissant par distance (miles) en s’appuyant sur {@link RewardsService#getDistance(Location, Location)}.
+	 * Ordre croissant par distance (miles), via la recherche k-NN de
+	 * {@link RewardsService#getNearestAttractions(Location, int)} (tas borné, sans tri complet).
 	 * </p>
 	 * @param visitedLocation point de référence (dernier point de l’utilisateur en général)
 	 * @return liste de 5 {@link Attraction}
 	 */
 	public List<Attraction> getNearByAttractions(VisitedLocation visitedLocation) {
-		List<Attraction> allAttractions = gpsUtil.getAttractions();
-		return allAttractions.stream()
-				.sorted(Comparator.comparingDouble(a ->
-						rewardsService.getDistance(a, visitedLocation.location)))
-				.limit(5)
+		return rewardsService.getNearestAttractions(visitedLocation.location, NEARBY_ATTRACTIONS_COUNT)
+				.stream()
+				.map(nearby -> nearby.attraction)
 				.collect(Collectors.toList());
 	}
 
 
 	/**
-	 * Récupère la localisation GPS et l’ajoute à l’historique de l’utilisateur (sans calculer les rewards).
+	 * Récupère la localisation GPS sur {@code gpsExecutor}, sous délai et disjoncteur, et l’ajoute à l’historique de
+	 * l’utilisateur (sans calculer les rewards).
 	 * <p>
-	 * Méthode utilitaire appelée en parallèle dans {@link #trackAllUsersLocationAsync()}.
+	 * Méthode utilitaire du suivi unitaire et des passes {@link #trackAllUsersLocationAsync()} et
+	 * {@link #trackAndRewardAllUsersAsync()}. En cas d'échec, la dernière position connue est renvoyée telle quelle.
 	 * </p>
-	 * @param user utilisateur
-	 * @return {@link VisitedLocation} ajoutée
+	 * @param user    utilisateur
+	 * @param publish {@code true} pour publier la nouvelle position dans la file des récompenses
+	 * @return futur de la {@link VisitedLocation} ajoutée (ou de la dernière connue)
 	 */
-	private VisitedLocation fetchLocationOnly(User user) {
-		VisitedLocation v = gpsUtil.getUserLocation(user.getUserId());
-		user.addToVisitedLocations(v);
-		return v;
-	}
-
-	/**
-	 * Découpe une liste en sous-listes de taille fixe (dernier lot partiel si nécessaire).
-	 * @param list liste source
-	 * @param size taille d’un lot (&gt;= 1)
-	 * @param <T>  type des éléments
-	 * @return liste de lots (vue par sous-listes)
-	 */
-	private static <T> List<List<T>> partition(List<T> list, int size) {
-		List<List<T>> out = new ArrayList<>();
-		for (int i = 0; i < list.size(); i += size) {
-			out.add(list.subList(i, Math.min(i + size, list.size())));
-		}
-		return out;
+	private CompletableFuture<VisitedLocation> fetchLocationAsync(User user, boolean publish) {
+		return gpsBreaker.call(() -> metrics.timeGpsUserLocation(() -> gpsUtil.getUserLocation(user.getUserId())),
+						gpsLimit, gpsExecutor)
+				.handle((v, failure) -> {
+					if (failure == null) {
+						user.addToVisitedLocations(v);
+						if (locationJournal != null) {
+							locationJournal.append(user.getUserId(), v);
+						}
+						if (publish) {
+							rewardQueue.publish(user);
+						}
+						return v;
+					}
+					VisitedLocation known = getLastKnownLocation(user);
+					if (known == null) {
+						throw (failure instanceof CompletionException) ? (CompletionException) failure
+								: new CompletionException(failure);
+					}
+					logger.debug("GpsUtil unavailable for {}, serving last known location: {}",
+							user.getUserName(), failure.toString());
+					metrics.fallbackUsed("GpsUtil");
+					return known;
+				});
 	}
 
 	/**
 	 * <b>Performance GPS :</b> récupération des positions pour tous les utilisateurs en parallèle (sans rewards).
 	 * <ul>
-	 *   <li>Utilise le pool {@code gpsExecutor} (I/O bound).</li>
-	 *   <li>Batching via {@code -DbatchSize} (défaut 2000) pour limiter l’empreinte mémoire.</li>
+	 *   <li>Utilise le pool {@code gpsExecutor} (I/O bound), threads système ou virtuels selon le mode.</li>
+	 *   <li>Flux continu borné par {@code -DmaxInFlight} (voir {@link #forEachUserPipelined(Function)}).</li>
 	 * </ul>
 	 * Conçu pour satisfaire : <i>100 000 users &le; 15 minutes</i> (tests de perf).
 	 */
 	public void trackAllUsersLocationAsync() {
-		List<User> users = getAllUsers();
-		int batch = Integer.getInteger("batchSize", 2000);
-
-		for (List<User> chunk : partition(users, batch)) {
-			List<CompletableFuture<Void>> futures = chunk.stream()
-					.map(u -> CompletableFuture.runAsync(() -> fetchLocationOnly(u), gpsExecutor))
-					.collect(Collectors.toList());
-			futures.forEach(CompletableFuture::join);
-		}
+		metrics.timePass("trackLocation",
+				() -> forEachUserPipelined(u -> fetchLocationAsync(u, false)));
 	}
 
 	/**
 	 * <b>Performance Rewards :</b> calcul des récompenses pour tous les utilisateurs en parallèle.
 	 * <ul>
-	 *   <li>Utilise le pool {@code rewardsExecutor} (I/O RewardCentral).</li>
-	 *   <li>Batching via {@code -DbatchSize} (défaut 2000).</li>
+	 *   <li>Évaluation sur le pool {@code rewardsExecutor} ; les appels RewardCentral sont regroupés
+	 *       par lots et bornés à {@code -DrewardsThreads} (pool {@code rewardCentralExecutor}).</li>
+	 *   <li>Flux continu borné par {@code -DmaxInFlight} (voir {@link #forEachUserPipelined(Function)}).</li>
 	 * </ul>
 	 * Conçu pour satisfaire : <i>100 000 users &le; 20 minutes</i> (tests de perf).
 	 */
 	public void calculateAllRewardsAsync() {
-		List<User> users = getAllUsers();
-		int batch = Integer.getInteger("batchSize", 2000);
+		metrics.timePass("calculateRewards", () -> forEachUserPipelined(
+				u -> CompletableFuture.supplyAsync(() -> rewardsService.calculateRewardsAsync(u), rewardsExecutor)
+						.thenCompose(Function.identity())));
+	}
 
-		for (List<User> chunk : partition(users, batch)) {
-			List<CompletableFuture<Void>> futures = chunk.stream()
-					.map(u -> CompletableFuture.runAsync(() -> rewardsService.calculateRewards(u), rewardsExecutor))
-					.collect(Collectors.toList());
-			futures.forEach(CompletableFuture::join);
+	/**
+	 * <b>Passe complète :</b> pour chaque utilisateur, récupération GPS puis calcul des récompenses, enchaînés.
+	 * <p>
+	 * Le calcul des récompenses d’un utilisateur démarre dès que sa position est connue, pendant que les autres
+	 * appels GPS sont encore en cours (GPS sur {@code gpsExecutor}, récompenses sur {@code rewardsExecutor}).
+	 * La passe attend les récompenses de chaque utilisateur : elle ne passe pas par la file des récompenses.
+	 * </p>
+	 */
+	public void trackAndRewardAllUsersAsync() {
+		metrics.timePass("trackAndReward", () -> forEachUserPipelined(u -> fetchLocationAsync(u, false)
+				.thenComposeAsync(visitedLocation -> rewardsService.calculateRewardsAsync(u), rewardsExecutor)));
+	}
+
+	/**
+	 * Applique un traitement asynchrone à tous les utilisateurs en flux continu, avec contre-pression.
+	 * <ul>
+	 *   <li>Les utilisateurs sont lus directement dans le registre, shard par shard (pas de copie de la liste).</li>
+	 *   <li>Au plus {@code -DmaxInFlight} traitements (défaut {@code -DbatchSize}, sinon 2000) sont en cours :
+	 *       une place libérée est réattribuée immédiatement, un appel lent ne retient donc que sa propre place.</li>
+	 *   <li>Une erreur sur un utilisateur n’interrompt pas la passe ; la première est relancée à la fin.</li>
+	 * </ul>
+	 * @param pipeline traitement d’un utilisateur (la place est libérée à la fin du futur renvoyé)
+	 * @throws CompletionException si au moins un traitement a échoué
+	 */
+	private void forEachUserPipelined(Function<User, CompletableFuture<?>> pipeline) {
+		int maxInFlight = Integer.getInteger("maxInFlight", Integer.getInteger("batchSize", 2000));
+		Semaphore slots = new Semaphore(maxInFlight);
+		AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+		try {
+			for (User user : userRegistry) {
+				slots.acquire();
+				pipeline.apply(user).whenComplete((ignored, failure) -> {
+					if (failure != null && firstFailure.compareAndSet(null, failure)) {
+						logger.warn("Processing failed for user {}: {}", user.getUserName(), failure.toString());
+					}
+					slots.release();
+				});
+			}
+			// Attendre la fin des derniers traitements
+			slots.acquire(maxInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrompu pendant le traitement des utilisateurs", e);
+		}
+
+		Throwable failure = firstFailure.get();
+		if (failure != null) {
+			throw (failure instanceof CompletionException) ? (CompletionException) failure : new CompletionException(failure);
 		}
 	}
 
+	// Jauges des pools et des appels GpsUtil, rattachées aux métriques courantes
+	private void bindMetrics(TourGuideMetrics metrics) {
+		this.metrics = metrics;
+		metrics.monitorExecutor("gps", gpsExecutor);
+		metrics.monitorExecutor("rewards", rewardsExecutor);
+		metrics.monitorExecutor("rewardCentral", rewardCentralExecutor);
+		metrics.monitorExecutor("tripPricer", tripPricerExecutor);
+		metrics.monitorClient("GpsUtil", gpsLimit::getInFlight, gpsLimit::getQueuedCount);
+		metrics.monitorLimit("GpsUtil", gpsLimit::getMaxConcurrency, gpsLimit.getLimit()::getRejectedCount);
+		metrics.monitorCircuitBreaker("GpsUtil", gpsBreaker);
+		metrics.monitorCircuitBreaker("TripPricer", tripPricerBreaker);
+		metrics.monitorRewardQueue(rewardQueue::getBacklog, rewardQueue::getEvaluatingCount,
+				rewardQueue::getCoalescedCount, rewardQueue::getDroppedCount);
+	}
 
 	/**
 	 * Enregistre un hook d’arrêt pour :
@@ -313,15 +900,31 @@ public class TourGuideService {
 	 * Important pour éviter les fuites de threads lors de l’arrêt de l’application/tests.
 	 */
 	private void addShutDownHook() {
-		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-			tracker.stopTracking();
-			gpsExecutor.shutdownNow();
-			rewardsExecutor.shutdownNow();
-		}));
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+	}
+
+	/**
+	 * Arrête le {@link Tracker} et les pools d'exécution, puis écrit un dernier instantané et ferme le journal des
+	 * positions s'ils sont actifs (appelé à l'arrêt de la JVM, ou par les tests qui construisent plusieurs services successivement).
+	 */
+	public void shutdown() {
+		tracker.stopTracking();
+		gpsExecutor.shutdownNow();
+		rewardsExecutor.shutdownNow();
+		rewardCentralExecutor.shutdownNow();
+		tripPricerExecutor.shutdownNow();
+		tripPricerCalls.shutdown();
+		if (persistence != null) {
+			persistence.close();
+		}
+		if (locationJournal != null) {
+			locationJournal.close();
+		}
 	}
 
 	/**
 	 * Initialise les utilisateurs internes (données de démo) lorsque {@link #testMode} est actif.
+	 * Dans un déploiement partitionné, chaque nœud ne crée que les utilisateurs dont il est propriétaire.
 	 * <p>
 	 * Remarque : pour des tests 100% déterministes, on pourrait semer les aléas
 	 * (Random seedé via propriété système), mais ce n’est pas requis par les tests actuels.
@@ -330,13 +933,18 @@ public class TourGuideService {
 	private void initializeInternalUsers() {
 		IntStream.range(0, InternalTestHelper.getInternalUserNumber()).forEach(i -> {
 			String userName = "internalUser" + i;
+			if (!partition.owns(userName)) {
+				return;
+			}
 			String phone = "000";
 			String email = userName + "@tourGuide.com";
 			User user = new User(UUID.randomUUID(), userName, phone, email);
+			user.setLocationHistoryCapacity(locationHistorySize);
 			generateUserLocationHistory(user);
-			internalUserMap.put(userName, user);
+			userRegistry.add(user);
 		});
-		logger.debug("Created " + InternalTestHelper.getInternalUserNumber() + " internal test users.");
+		logger.debug("Created " + userRegistry.size() + " of " + InternalTestHelper.getInternalUserNumber()
+				+ " internal test users on node " + partition.getNodeId() + ".");
 	}
 
 	/**
@@ -375,4 +983,61 @@ public class TourGuideService {
 		LocalDateTime localDateTime = LocalDateTime.now().minusDays(new Random().nextInt(30));
 		return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
 	}
+
+	// Clé du cache des offres : entrées de TripPricer.getPrice
+	private static final class TripQuoteKey {
+		private final UUID userId;
+		private final int adults;
+		private final int children;
+		private final int nightsStay;
+		private final int rewardPoints;
+
+		TripQuoteKey(UUID userId, int adults, int children, int nightsStay, int rewardPoints) {
+			this.userId = userId;
+			this.adults = adults;
+			this.children = children;
+			this.nightsStay = nightsStay;
+			this.rewardPoints = rewardPoints;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof TripQuoteKey)) {
+				return false;
+			}
+			TripQuoteKey other = (TripQuoteKey) o;
+			return adults == other.adults && children == other.children && nightsStay == other.nightsStay
+					&& rewardPoints == other.rewardPoints && userId.equals(other.userId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(userId, adults, children, nightsStay, rewardPoints);
+		}
+	}
+
+	// Vue en lecture seule répétant une liste jusqu'à une taille minimale (liste vide conservée vide)
+	private static final class RepeatedList<E> extends AbstractList<E> implements RandomAccess {
+		private final List<E> elements;
+		private final int size;
+
+		RepeatedList(List<E> elements, int minimumSize) {
+			this.elements = List.copyOf(elements);
+			this.size = this.elements.isEmpty() ? 0 : Math.max(minimumSize, this.elements.size());
+		}
+
+		@Override
+		public E get(int index) {
+			Objects.checkIndex(index, size);
+			return elements.get(index % elements.size());
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
 }
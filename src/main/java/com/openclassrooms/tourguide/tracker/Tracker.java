@@ -1,110 +1,261 @@
 package com.openclassrooms.tourguide.tracker;
 
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
-import org.apache.commons.lang3.time.StopWatch;
+import com.openclassrooms.tourguide.user.UserRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.time.Duration;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Thread de suivi périodique des utilisateurs.
+ * Ordonnanceur de suivi périodique des utilisateurs, réparti en <i>shards</i>.
  *
  * <p>Rôle :
  * <ul>
- *   <li>À intervalle fixe, itère sur tous les utilisateurs et appelle
- *       {@link TourGuideService#trackUserLocation(User)}.</li>
- *   <li>Fonctionne en arrière-plan sur un thread <i>daemon</i> (ne bloque pas l’arrêt de la JVM).</li>
+ *   <li>Chaque utilisateur a sa propre échéance ; il est suivi une fois par intervalle
+ *       (par défaut 5 minutes) via {@link TourGuideService#trackUserLocationAsync(User)} : le suivi se termine à la
+ *       réponse de GpsUtil, les récompenses sont évaluées ensuite par la file des récompenses.</li>
+ *   <li>Les échéances initiales sont réparties uniformément sur l’intervalle : la charge est lissée au lieu
+ *       d’une rafale de 100 000 appels toutes les 5 minutes.</li>
  *   <li>Arrêt propre via {@link #stopTracking()} (utilisé par les tests).</li>
  * </ul>
  *
  * <p>Concurrence & robustesse :
  * <ul>
- *   <li>Exécuté dans un {@link ExecutorService} mono-thread dédié (daemon) pour éviter de bloquer la JVM.</li>
- *   <li>Une erreur sur un utilisateur n’arrête pas la boucle complète (try/catch par utilisateur).</li>
- *   <li>Intervalle de polling : 5 minutes (en secondes), ajustable en recompilant si besoin.</li>
+ *   <li>Les utilisateurs sont répartis entre plusieurs shards d’après leur shard dans le {@link UserRegistry}
+ *       (affinité : un shard du registre est toujours distribué par le même shard du Tracker) ; chaque shard a sa
+ *       file d’échéances ({@link DelayQueue}) et un thread <i>daemon</i> qui distribue les utilisateurs échus.</li>
+ *   <li>Au plus {@code maxInFlight} suivis sont en cours simultanément (contre-pression) ; l’exécution
+ *       parallèle elle-même est faite par les pools de {@link TourGuideService}.</li>
+ *   <li>Cadence fixe : l’échéance suivante est calculée depuis l’échéance précédente, et non depuis la fin du
+ *       suivi, donc la fréquence ne dérive pas. Un utilisateur en retard de plus d’un intervalle n’accumule pas
+ *       de rattrapage : il est replanifié à l’instant présent.</li>
+ *   <li>Retard par shard exposé par {@link #getLagMillis(int)} : écart entre l’échéance et la distribution
+ *       effective du dernier utilisateur traité. Retard et durée de chaque suivi sont aussi publiés dans
+ *       {@link TourGuideMetrics} ({@code tourguide.tracker.lag}, {@code tourguide.tracker.track}).</li>
+ *   <li>Une erreur sur un utilisateur n’arrête pas le suivi (journalisée, utilisateur replanifié).</li>
+ *   <li>Déploiement partitionné : seuls les utilisateurs dont le nœud est propriétaire
+ *       ({@link TourGuideService#getPartition()}) sont suivis.</li>
  * </ul>
  */
-public class Tracker extends Thread {
+public class Tracker {
 	private static final Logger logger = LoggerFactory.getLogger(Tracker.class);
 
-	// Intervalle entre deux passes de tracking (en secondes). Ici: 5 minutes
-	private static final long trackingPollingInterval = TimeUnit.MINUTES.toSeconds(5);
-
-	// Factory de threads DAEMON pour ne pas empêcher l'arrêt de la JVM
-	private static final ThreadFactory daemonFactory = r -> {
-		Thread t = new Thread(r, "tracker-exec");
-		t.setDaemon(true);
-		return t;
-	};
-
-	// Exécuteur mono-thread daemon qui pilote l'exécution de run()
-	private final ExecutorService executorService = Executors.newSingleThreadExecutor(daemonFactory);
+	// Intervalle entre deux suivis d'un même utilisateur. Ici: 5 minutes
+	private static final Duration trackingPollingInterval = Duration.ofMinutes(5);
 
 	private final TourGuideService tourGuideService;
+	private final UserRegistry registry;
+	private final long intervalNanos;
+	private final Shard[] shards;
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final ExecutorService dispatchers;
 	private final AtomicBoolean stop = new AtomicBoolean(false);
 
 	/**
-	 * Construit le Tracker et lance immédiatement son exécution en arrière-plan.
-	 * @param tourGuideService service applicatif à appeler à intervalle régulier
+	 * Construit le Tracker avec l'intervalle par défaut et un paramétrage via System properties :
+	 * <ul>
+	 *   <li><code>trackerShards</code> (défaut 4, de préférence un diviseur de <code>userRegistryShards</code>)</li>
+	 *   <li><code>trackerMaxInFlight</code> (défaut 1000)</li>
+	 * </ul>
+	 * et lance immédiatement le suivi des utilisateurs déjà enregistrés.
+	 * @param tourGuideService service applicatif à appeler pour chaque utilisateur
 	 */
 	public Tracker(TourGuideService tourGuideService) {
+		this(tourGuideService, trackingPollingInterval, Integer.getInteger("trackerShards", 4),
+				Integer.getInteger("trackerMaxInFlight", 1000));
+	}
+
+	/**
+	 * @param tourGuideService service applicatif à appeler pour chaque utilisateur
+	 * @param interval         intervalle entre deux suivis d'un même utilisateur
+	 * @param shardCount       nombre de shards (&gt;= 1)
+	 * @param maxInFlight      nombre maximal de suivis simultanés (&gt;= 1)
+	 */
+	public Tracker(TourGuideService tourGuideService, Duration interval, int shardCount, int maxInFlight) {
+		if (interval.isNegative() || interval.isZero() || shardCount < 1 || maxInFlight < 1) {
+			throw new IllegalArgumentException("Paramètres du tracker invalides : interval=" + interval
+					+ ", shards=" + shardCount + ", maxInFlight=" + maxInFlight);
+		}
 		this.tourGuideService = tourGuideService;
-		// Lance run() sur le thread daemon de l'exécuteur (pas de .start() nécessaire)
-		executorService.submit(this);
+		this.intervalNanos = interval.toNanos();
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard();
+		}
+
+		// Échéances initiales réparties uniformément sur l'intervalle, en parcourant le registre sans copie
+		this.registry = tourGuideService.getUserRegistry();
+		long userCount = Math.max(1, registry.size());
+		long start = System.nanoTime();
+		long index = 0;
+		for (User user : registry) {
+			schedule(user, start + intervalNanos * Math.min(index++, userCount - 1) / userCount);
+		}
+		logger.debug("Tracker started: {} users over {} shards, interval {}", index, shardCount, interval);
+
+		ThreadFactory daemonFactory = r -> {
+			Thread t = new Thread(r, "tracker-exec");
+			t.setDaemon(true);
+			return t;
+		};
+		this.dispatchers = Executors.newFixedThreadPool(shardCount, daemonFactory);
+		for (Shard shard : shards) {
+			dispatchers.submit(() -> dispatch(shard));
+		}
 	}
 
 	/**
-	 * Demande un arrêt propre : positionne le flag, interrompt le thread d'exécution
-	 * et attend brièvement la terminaison.
+	 * Ajoute un utilisateur au suivi, avec une échéance aléatoire dans le prochain intervalle
+	 * (sans effet après {@link #stopTracking()}).
+	 * @param user utilisateur à suivre
+	 */
+	public void track(User user) {
+		schedule(user, System.nanoTime() + ThreadLocalRandom.current().nextLong(intervalNanos));
+	}
+
+	/**
+	 * Demande un arrêt propre : positionne le flag, interrompt les threads de distribution
+	 * et attend brièvement leur terminaison.
 	 */
 	public void stopTracking() {
 		stop.set(true);
-		executorService.shutdownNow();
+		dispatchers.shutdownNow();
 		try {
-			executorService.awaitTermination(5, TimeUnit.SECONDS);
+			dispatchers.awaitTermination(5, TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 		}
 	}
 
-	@Override public void run() {
-		// Boucle principale : stop/interrupt -> sortie
-		while (true) {
-			if (Thread.currentThread().isInterrupted() || stop.get()) {
-				logger.debug("Tracker stopping");
-				break;
-			}
+	/** @return nombre de shards */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @param shard index du shard
+	 * @return retard (ms) du dernier utilisateur distribué par ce shard par rapport à son échéance
+	 */
+	public long getLagMillis(int shard) {
+		return TimeUnit.NANOSECONDS.toMillis(shards[shard].lastLagNanos.get());
+	}
+
+	/**
+	 * @param shard index du shard
+	 * @return retard maximal (ms) observé sur ce shard depuis le démarrage
+	 */
+	public long getMaxLagMillis(int shard) {
+		return TimeUnit.NANOSECONDS.toMillis(shards[shard].maxLagNanos.get());
+	}
 
-			List<User> users = tourGuideService.getAllUsers();
-			logger.debug("Begin Tracker. Tracking {} users.", users.size());
+	/** @return nombre d'utilisateurs planifiés (en attente d'échéance ou en cours de suivi) */
+	public int getTrackedUserCount() {
+		int count = 0;
+		for (Shard shard : shards) {
+			count += shard.queue.size();
+		}
+		return count + (maxInFlight - inFlight.availablePermits());
+	}
 
-			StopWatch stopWatch = new StopWatch();
-			stopWatch.start();
-			// Une erreur sur un user n'interrompt pas la passe
-			for (User u : users) {
+	private void schedule(User user, long dueAtNanos) {
+		if (!stop.get()) {
+			shardOf(user).queue.put(new DueUser(user, dueAtNanos));
+		}
+	}
+
+	// Shard du registre → shard du Tracker : un shard du registre est toujours distribué par le même thread
+	private Shard shardOf(User user) {
+		return shards[registry.shardOf(user.getUserId()) % shards.length];
+	}
+
+	// Boucle d'un shard : attend l'échéance suivante, distribue l'utilisateur, le replanifie une fois suivi ; seuls
+	// l'arrêt et l'interruption y mettent fin
+	private void dispatch(Shard shard) {
+		try {
+			while (!stop.get()) {
+				DueUser due = shard.queue.take();
+				boolean acquired = false;
 				try {
-					tourGuideService.trackUserLocation(u);
-				} catch (Exception ex) {
-					logger.warn("Tracking failed for user {}: {}", u.getUserName(), ex.toString());
+					// Utilisateur passé à un autre nœud : plus suivi ici, mais replanifié au cas où il reviendrait
+					if (!tourGuideService.getPartition().owns(due.user.getUserName())) {
+						schedule(due.user, due.dueAtNanos + intervalNanos);
+						continue;
+					}
+					inFlight.acquire();
+					acquired = true;
+					long lag = Math.max(0, System.nanoTime() - due.dueAtNanos);
+					shard.lastLagNanos.set(lag);
+					shard.maxLagNanos.accumulateAndGet(lag, Math::max);
+					TourGuideMetrics metrics = tourGuideService.getMetrics();
+					metrics.recordTrackerLag(lag);
+
+					long started = System.nanoTime();
+					tourGuideService.trackUserLocationAsync(due.user).whenComplete((visitedLocation, failure) -> {
+						metrics.recordTracking(System.nanoTime() - started);
+						inFlight.release();
+						// Après stopTracking(), les échecs viennent de l'arrêt des pools : inutile de les journaliser
+						if (failure != null && !stop.get()) {
+							logger.warn("Tracking failed for user {}: {}", due.user.getUserName(), failure.toString());
+						}
+						reschedule(due);
+					});
+				} catch (RuntimeException e) {
+					// Échec à la distribution (et non pendant le suivi) : place rendue, utilisateur replanifié
+					if (acquired) {
+						inFlight.release();
+					}
+					if (!stop.get()) {
+						logger.warn("Tracking dispatch failed for user {}: {}", due.user.getUserName(), e.toString());
+					}
+					reschedule(due);
 				}
 			}
-			stopWatch.stop();
-
-			logger.debug("Tracker Time Elapsed: {} seconds.",
-					TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()));
-
-			// Attente avant la prochaine passe
-			try {
-				logger.debug("Tracker sleeping");
-				TimeUnit.SECONDS.sleep(trackingPollingInterval);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				break;
-			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.debug("Tracker shard stopping");
+	}
+
+	// Échéance suivante à cadence fixe, sans rattrapage d'un retard de plus d'un intervalle
+	private void reschedule(DueUser due) {
+		long next = due.dueAtNanos + intervalNanos;
+		schedule(due.user, Math.max(next, System.nanoTime()));
+	}
+
+	// File d'échéances et mesures de retard d'un shard
+	private static final class Shard {
+		final DelayQueue<DueUser> queue = new DelayQueue<>();
+		final AtomicLong lastLagNanos = new AtomicLong();
+		final AtomicLong maxLagNanos = new AtomicLong();
+	}
+
+	// Utilisateur et sa prochaine échéance (horloge System.nanoTime)
+	private static final class DueUser implements Delayed {
+		final User user;
+		final long dueAtNanos;
+
+		DueUser(User user, long dueAtNanos) {
+			this.user = user;
+			this.dueAtNanos = dueAtNanos;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(dueAtNanos, ((DueUser) other).dueAtNanos);
 		}
 	}
 }
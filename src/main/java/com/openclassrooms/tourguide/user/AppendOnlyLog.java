@@ -0,0 +1,112 @@
+package com.openclassrooms.tourguide.user;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Journal en ajout seul, sans verrou, utilisé par {@link User} pour ses récompenses.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Les éléments sont rangés dans des blocs atomiques de taille fixe ; un ajout réserve la case libre
+ *       par CAS, puis publie la nouvelle fin par CAS sur l'état courant (les autres threads « aident »
+ *       à la publication).</li>
+ *   <li>Une case publiée n'est plus jamais modifiée : une lecture renvoie une <b>vue figée</b>
+ *       sans copie, cohérente même si d'autres ajouts ont lieu ensuite.</li>
+ * </ul>
+ *
+ * @param <T> type des éléments
+ */
+class AppendOnlyLog<T> {
+
+	// Taille d'un bloc de stockage
+	static final int CHUNK_SIZE = 32;
+
+	private final AtomicReference<State<T>> state = new AtomicReference<>(State.empty());
+
+	/**
+	 * Ajoute un élément en fin de journal.
+	 * @param item élément non {@code null}
+	 */
+	void append(T item) {
+		while (true) {
+			State<T> current = state.get();
+			int chunk = current.end / CHUNK_SIZE;
+			if (chunk == current.chunks.length) {
+				state.compareAndSet(current, current.withNewChunk());
+			} else if (current.chunks[chunk].compareAndSet(current.end % CHUNK_SIZE, null, item)) {
+				state.compareAndSet(current, current.advance());
+				return;
+			} else {
+				// Case réservée par un autre thread : on l'aide à publier la fin, puis on réessaie
+				state.compareAndSet(current, current.advance());
+			}
+		}
+	}
+
+	/** @return vue figée et non modifiable du contenu actuel (aucune copie) */
+	List<T> snapshot() {
+		return new Snapshot<>(state.get());
+	}
+
+	/** @return nombre d'éléments publiés */
+	int size() {
+		return state.get().end;
+	}
+
+	// État immuable : les cases [0, end) sont publiées et définitives
+	private static final class State<T> {
+		final AtomicReferenceArray<T>[] chunks;
+		final int end;
+
+		State(AtomicReferenceArray<T>[] chunks, int end) {
+			this.chunks = chunks;
+			this.end = end;
+		}
+
+		@SuppressWarnings("unchecked")
+		static <T> State<T> empty() {
+			return new State<>(new AtomicReferenceArray[0], 0);
+		}
+
+		T get(int index) {
+			return chunks[index / CHUNK_SIZE].get(index % CHUNK_SIZE);
+		}
+
+		State<T> advance() {
+			return new State<>(chunks, end + 1);
+		}
+
+		State<T> withNewChunk() {
+			AtomicReferenceArray<T>[] next = Arrays.copyOf(chunks, chunks.length + 1);
+			next[chunks.length] = new AtomicReferenceArray<>(CHUNK_SIZE);
+			return new State<>(next, end);
+		}
+	}
+
+	// Vue en lecture seule sur un état figé
+	private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+		private final State<T> state;
+
+		Snapshot(State<T> state) {
+			this.state = state;
+		}
+
+		@Override
+		public T get(int index) {
+			if (index < 0 || index >= state.end) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + state.end);
+			}
+			return state.get(index);
+		}
+
+		@Override
+		public int size() {
+			return state.end;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package com.openclassrooms.tourguide.user;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Historique des visites d'un utilisateur en stockage <b>colonnaire primitif</b>.
+ *
+ * <p><b>Stockage :</b>
+ * <ul>
+ *   <li>Au lieu d'un objet {@link VisitedLocation} (+ {@link Location} + {@link Date}) par point, chaque bloc
+ *       est un unique {@code long[]} rangé en colonnes : latitudes, longitudes (bits IEEE 754) et horodatages
+ *       (epoch millis). Soit 24 octets par point, sans objet à parcourir pour le GC.</li>
+ *   <li>L'identifiant utilisateur est stocké une seule fois.</li>
+ *   <li>Les lectures renvoient des vues {@link VisitedLocation} reconstruites à la demande (compatibilité API) ;
+ *       seule la visite la plus récente est gardée telle quelle, pour un accès O(1) sans allocation.</li>
+ * </ul>
+ *
+ * <p><b>Concurrence (sans verrou) :</b> un ajout dépose par CAS une visite <i>en attente</i> dans l'état courant ;
+ * tout thread qui la rencontre (son auteur ou un autre ajout) écrit ses colonnes puis publie la nouvelle fin par
+ * CAS. Personne n'attend un autre thread. Une case publiée n'est plus modifiée : les vues obtenues restent figées,
+ * sans copie.</p>
+ *
+ * <p><b>Rétention :</b> avec {@code maxRetained > 0}, seules les dernières visites restent visibles et les blocs
+ * entièrement périmés sont libérés ; chaque visite garde un numéro de séquence absolu.</p>
+ */
+class LocationHistory {
+
+	// Nombre de points par bloc
+	static final int CHUNK_SIZE = 16;
+
+	private static final int LATITUDES = 0;
+	private static final int LONGITUDES = CHUNK_SIZE;
+	private static final int TIMES = 2 * CHUNK_SIZE;
+
+	private final UUID userId;
+	private final AtomicReference<State> state = new AtomicReference<>(State.EMPTY);
+
+	/**
+	 * @param userId identifiant de l'utilisateur propriétaire (stocké une seule fois)
+	 */
+	LocationHistory(UUID userId) {
+		this.userId = userId;
+	}
+
+	/**
+	 * Modifie la rétention ; les visites en trop sont masquées immédiatement et libérées au prochain bloc.
+	 * @param maxRetained nombre maximal de visites conservées ({@code 0} = illimité)
+	 */
+	void setMaxRetained(int maxRetained) {
+		if (maxRetained < 0) {
+			throw new IllegalArgumentException("maxRetained doit être >= 0 : " + maxRetained);
+		}
+		state.updateAndGet(current -> current.withMaxRetained(maxRetained));
+	}
+
+	/** @return rétention courante ({@code 0} = illimité) */
+	int getMaxRetained() {
+		return state.get().maxRetained;
+	}
+
+	/**
+	 * Ajoute une visite (seules les coordonnées et l'horodatage sont conservés).
+	 * @param visitedLocation visite à enregistrer
+	 * @return séquence attribuée à la visite
+	 */
+	long append(VisitedLocation visitedLocation) {
+		return append(new Pending(visitedLocation.location.latitude, visitedLocation.location.longitude,
+				visitedLocation.timeVisited.getTime(), visitedLocation));
+	}
+
+	/**
+	 * Ajoute une visite sous forme primitive.
+	 * @param latitude    latitude (degrés)
+	 * @param longitude   longitude (degrés)
+	 * @param epochMillis horodatage (ms depuis l'epoch)
+	 * @return séquence attribuée à la visite
+	 */
+	long append(double latitude, double longitude, long epochMillis) {
+		return append(new Pending(latitude, longitude, epochMillis, null));
+	}
+
+	private long append(Pending pending) {
+		while (true) {
+			State current = state.get();
+			if (current.pending != null) {
+				// Aide l'ajout en cours avant de déposer le sien
+				state.compareAndSet(current, current.complete());
+			} else {
+				State claimed = current.withPending(pending);
+				if (state.compareAndSet(current, claimed)) {
+					// Échec = un autre thread a déjà publié cet ajout
+					state.compareAndSet(claimed, claimed.complete());
+					return claimed.end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fait démarrer un historique encore vide à la séquence donnée (restauration d'un historique persisté
+	 * dont les premières visites ont été abandonnées).
+	 * @param firstSequence séquence de la prochaine visite ajoutée
+	 * @throws IllegalStateException si une visite a déjà été ajoutée
+	 */
+	void startAt(long firstSequence) {
+		State current = state.get();
+		if (current.end != 0 || current.pending != null) {
+			throw new IllegalStateException("Historique déjà commencé (séquence " + current.end + ")");
+		}
+		State started = new State(new long[0][], firstSequence, firstSequence, firstSequence, current.maxRetained,
+				null, null);
+		if (!state.compareAndSet(current, started)) {
+			throw new IllegalStateException("Historique modifié pendant sa restauration");
+		}
+	}
+
+	/** @return vue figée (non modifiable, sans copie) des visites conservées */
+	List<VisitedLocation> snapshot() {
+		State current = state.get();
+		return new Snapshot(userId, current, current.start(), current.end);
+	}
+
+	/**
+	 * Renvoie une vue figée des visites conservées de séquence comprise dans {@code [fromSequence, toSequence)}.
+	 * @param fromSequence première séquence (incluse)
+	 * @param toSequence   dernière séquence (exclue)
+	 * @return vue figée, éventuellement vide
+	 */
+	List<VisitedLocation> snapshot(long fromSequence, long toSequence) {
+		State current = state.get();
+		long from = Math.max(fromSequence, current.start());
+		long to = Math.min(toSequence, current.end);
+		return new Snapshot(userId, current, Math.min(from, to), to);
+	}
+
+	/** @return nombre de visites conservées */
+	int size() {
+		State current = state.get();
+		return (int) (current.end - current.start());
+	}
+
+	/** @return nombre total de visites publiées depuis la création (séquence de la prochaine visite) */
+	long sequence() {
+		return state.get().end;
+	}
+
+	/** @return dernière visite publiée, ou {@code null} si l'historique est vide */
+	VisitedLocation last() {
+		State current = state.get();
+		return (current.end == current.start()) ? null : current.toVisitedLocation(userId, current.end - 1);
+	}
+
+	/** @return nombre de points alloués (mesure de l'empreinte mémoire de l'historique) */
+	int allocatedSlots() {
+		return state.get().chunks.length * CHUNK_SIZE;
+	}
+
+	/** Masque toutes les visites publiées (les vues déjà obtenues restent inchangées ; les séquences continuent). */
+	void clear() {
+		state.updateAndGet(current -> current.withFloor(current.end));
+	}
+
+	// État immuable : les séquences [start(), end) sont publiées et définitives ; pending sera la séquence end
+	private static final class State {
+		static final State EMPTY = new State(new long[0][], 0, 0, 0, 0, null, null);
+
+		final long[][] chunks;
+		final long chunkBase;
+		final long end;
+		final long floor;
+		final int maxRetained;
+		// Objet d'origine de la visite de séquence end - 1 (renvoyé tel quel, sans reconstruction), ou null
+		final VisitedLocation last;
+		// Ajout déposé mais pas encore publié, ou null
+		final Pending pending;
+
+		State(long[][] chunks, long chunkBase, long end, long floor, int maxRetained, VisitedLocation last,
+				Pending pending) {
+			this.chunks = chunks;
+			this.chunkBase = chunkBase;
+			this.end = end;
+			this.floor = floor;
+			this.maxRetained = maxRetained;
+			this.last = last;
+			this.pending = pending;
+		}
+
+		// Première séquence visible, compte tenu du vidage et de la rétention
+		long start() {
+			long lowest = Math.max(chunkBase, floor);
+			return (maxRetained == 0) ? lowest : Math.max(lowest, end - maxRetained);
+		}
+
+		VisitedLocation toVisitedLocation(UUID userId, long sequence) {
+			if (sequence == end - 1 && last != null) {
+				return last;
+			}
+			long[] chunk = chunks[(int) ((sequence - chunkBase) / CHUNK_SIZE)];
+			int offset = (int) ((sequence - chunkBase) % CHUNK_SIZE);
+			return new VisitedLocation(userId,
+					new Location(Double.longBitsToDouble(chunk[LATITUDES + offset]),
+							Double.longBitsToDouble(chunk[LONGITUDES + offset])),
+					new Date(chunk[TIMES + offset]));
+		}
+
+		// Dépose un ajout pour la séquence end, en allouant son bloc si nécessaire
+		State withPending(Pending next) {
+			if ((end - chunkBase) / CHUNK_SIZE < chunks.length) {
+				return new State(chunks, chunkBase, end, floor, maxRetained, last, next);
+			}
+			// Nouveau bloc ; les blocs dont toutes les visites sont hors rétention sont libérés
+			int dropped = (int) ((start() - chunkBase) / CHUNK_SIZE);
+			long[][] grown = Arrays.copyOfRange(chunks, dropped, chunks.length + 1);
+			grown[grown.length - 1] = new long[3 * CHUNK_SIZE];
+			return new State(grown, chunkBase + (long) dropped * CHUNK_SIZE, end, floor, maxRetained, last, next);
+		}
+
+		// Écrit les colonnes de l'ajout en attente (écriture idempotente, plusieurs threads peuvent aider) et le publie
+		State complete() {
+			long[] chunk = chunks[(int) ((end - chunkBase) / CHUNK_SIZE)];
+			int offset = (int) ((end - chunkBase) % CHUNK_SIZE);
+			chunk[LATITUDES + offset] = Double.doubleToRawLongBits(pending.latitude);
+			chunk[LONGITUDES + offset] = Double.doubleToRawLongBits(pending.longitude);
+			chunk[TIMES + offset] = pending.epochMillis;
+			return new State(chunks, chunkBase, end + 1, floor, maxRetained, pending.original, null);
+		}
+
+		State withMaxRetained(int retention) {
+			return new State(chunks, chunkBase, end, floor, retention, last, pending);
+		}
+
+		State withFloor(long newFloor) {
+			return new State(chunks, chunkBase, end, newFloor, maxRetained, last, pending);
+		}
+	}
+
+	// Ajout en attente de publication
+	private static final class Pending {
+		final double latitude;
+		final double longitude;
+		final long epochMillis;
+		final VisitedLocation original;
+
+		Pending(double latitude, double longitude, long epochMillis, VisitedLocation original) {
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.epochMillis = epochMillis;
+			this.original = original;
+		}
+	}
+
+	// Vue en lecture seule sur un état figé ; les VisitedLocation sont reconstruites à la demande
+	private static final class Snapshot extends AbstractList<VisitedLocation> implements RandomAccess {
+		private final UUID userId;
+		private final State state;
+		private final long from;
+		private final int size;
+
+		Snapshot(UUID userId, State state, long from, long to) {
+			this.userId = userId;
+			this.state = state;
+			this.from = from;
+			this.size = (int) (to - from);
+		}
+
+		@Override
+		public VisitedLocation get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			return state.toVisitedLocation(userId, from + index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
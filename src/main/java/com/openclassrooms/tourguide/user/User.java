@@ -1,9 +1,11 @@
 package com.openclassrooms.tourguide.user;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import gpsUtil.location.VisitedLocation;
 import tripPricer.Provider;
@@ -17,23 +19,39 @@ import tripPricer.Provider;
  *   <li>Maintenir l'historique de ses localisations visitées.</li>
  *   <li>Stocker ses récompenses ({@link UserReward}) et préférences de voyage ({@link UserPreferences}).</li>
  *   <li>Mémoriser les offres de voyage proposées ({@link Provider}).</li>
-
+ * </ul>
+ *
+ * <p><b>Concurrence :</b> l'agrégat est écrit en parallèle par le tracking GPS, le calcul des récompenses
+ * et le {@code Tracker}, et lu par les contrôleurs REST. Aucun verrou n'est utilisé :
+ * <ul>
+ *   <li>les visites sont stockées en colonnes primitives dans un {@link LocationHistory}, les récompenses
+ *       dans un {@link AppendOnlyLog} (ajout sans verrou, lectures = vues figées sans copie) ;</li>
+ *   <li>l'unicité des récompenses repose sur un {@code putIfAbsent} atomique par attraction.</li>
+ * </ul>
  */
 public class User {
 	private final UUID userId;
 	private final String userName;
 	private String phoneNumber;
 	private String emailAddress;
-	private Date latestLocationTimestamp;
-	private List<VisitedLocation> visitedLocations = new ArrayList<>();
-	private List<UserReward> userRewards = new ArrayList<>();
-	private UserPreferences userPreferences = new UserPreferences();
-	private List<Provider> tripDeals = new ArrayList<>();
+	private volatile Date latestLocationTimestamp;
+	private final LocationHistory visitedLocations;
+	private final AppendOnlyLog<UserReward> userRewards = new AppendOnlyLog<>();
+	// Récompenses indexées par nom d'attraction (GpsUtil régénère les attractionId à chaque appel)
+	private final ConcurrentMap<String, UserReward> rewardsByAttraction = new ConcurrentHashMap<>();
+	// Nombre de visites déjà évaluées pour les récompenses, et version des règles utilisée pour cette évaluation
+	private final AtomicReference<RewardWatermark> rewardWatermark =
+			new AtomicReference<>(RewardWatermark.NONE);
+	private volatile UserPreferences userPreferences = new UserPreferences();
+	private volatile List<Provider> tripDeals = List.of();
+	// Notifié à chaque visite ou récompense ajoutée (persistance), ou null
+	private volatile UserChangeListener changeListener;
 	public User(UUID userId, String userName, String phoneNumber, String emailAddress) {
 		this.userId = userId;
 		this.userName = userName;
 		this.phoneNumber = phoneNumber;
 		this.emailAddress = emailAddress;
+		this.visitedLocations = new LocationHistory(userId);
 	}
 
 	public UUID getUserId() {
@@ -69,27 +87,143 @@ public class User {
 	}
 
 	public void addToVisitedLocations(VisitedLocation visitedLocation) {
-		visitedLocations.add(visitedLocation);
+		long sequence = visitedLocations.append(visitedLocation);
+		UserChangeListener listener = changeListener;
+		if (listener != null) {
+			listener.visitedLocationAdded(this, sequence, visitedLocation.location.latitude,
+					visitedLocation.location.longitude, visitedLocation.timeVisited.getTime());
+		}
+	}
+
+	/**
+	 * Ajoute une visite sous forme primitive (restauration d'un historique persisté).
+	 * @param latitude    latitude (degrés)
+	 * @param longitude   longitude (degrés)
+	 * @param epochMillis horodatage (ms depuis l'epoch)
+	 * @return séquence attribuée à la visite
+	 */
+	public long addToVisitedLocations(double latitude, double longitude, long epochMillis) {
+		long sequence = visitedLocations.append(latitude, longitude, epochMillis);
+		UserChangeListener listener = changeListener;
+		if (listener != null) {
+			listener.visitedLocationAdded(this, sequence, latitude, longitude, epochMillis);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Fait démarrer un historique encore vide à la séquence donnée, pour restaurer un historique
+	 * dont les premières visites avaient été abandonnées.
+	 * @param firstSequence séquence de la prochaine visite ajoutée
+	 * @throws IllegalStateException si l'historique contient déjà des visites
+	 */
+	public void restoreVisitedLocationSequence(long firstSequence) {
+		visitedLocations.startAt(firstSequence);
 	}
 
+	/**
+	 * @return vue figée (non modifiable, sans copie) de l'historique conservé des visites ; les
+	 *         {@link VisitedLocation} sont reconstruites à la lecture à partir du stockage colonnaire
+	 */
 	public List<VisitedLocation> getVisitedLocations() {
-		return visitedLocations;
+		return visitedLocations.snapshot();
+	}
+
+	/**
+	 * Limite l'historique aux {@code capacity} dernières visites (tampon circulaire) : les plus anciennes
+	 * sont abandonnées et la mémoire occupée par utilisateur reste constante.
+	 * @param capacity nombre maximal de visites conservées ({@code 0} = illimité)
+	 */
+	public void setLocationHistoryCapacity(int capacity) {
+		visitedLocations.setMaxRetained(capacity);
+	}
+
+	/** @return nombre maximal de visites conservées ({@code 0} = illimité) */
+	public int getLocationHistoryCapacity() {
+		return visitedLocations.getMaxRetained();
+	}
+
+	/** @return nombre de cases allouées pour l'historique (empreinte mémoire, utile au suivi) */
+	public int getLocationHistoryAllocatedSlots() {
+		return visitedLocations.allocatedSlots();
+	}
+
+	/**
+	 * @return nombre total de visites ajoutées depuis la création, y compris celles déjà abandonnées
+	 *         (séquence de la prochaine visite)
+	 */
+	public long getVisitedLocationSequence() {
+		return visitedLocations.sequence();
+	}
+
+	/**
+	 * Renvoie les visites encore conservées dont la séquence est dans {@code [fromSequence, toSequence)}.
+	 * @param fromSequence séquence de la première visite (incluse)
+	 * @param toSequence   séquence de fin (exclue), par ex. {@link #getVisitedLocationSequence()}
+	 * @return vue figée, éventuellement vide
+	 */
+	public List<VisitedLocation> getVisitedLocationsFrom(long fromSequence, long toSequence) {
+		return visitedLocations.snapshot(fromSequence, toSequence);
 	}
 
 	public void clearVisitedLocations() {
 		visitedLocations.clear();
 	}
 
-	public void addUserReward(UserReward userReward) {
-		boolean alreadyPresent = userRewards.stream()
-				.anyMatch(r -> r.attraction.attractionName.equals(userReward.attraction.attractionName));
-		if(!alreadyPresent){
-			userRewards.add(userReward);
+	/**
+	 * Renvoie la séquence de la première visite pas encore évaluée pour les récompenses avec la version
+	 * de règles donnée.
+	 * <p>Si l'évaluation précédente a été faite avec d'autres règles (rayon, catalogue), renvoie 0 :
+	 * tout l'historique conservé doit être réévalué.</p>
+	 *
+	 * @param rulesVersion version courante des règles de récompense
+	 * @return séquence de la première visite à évaluer
+	 */
+	public long getRewardWatermark(long rulesVersion) {
+		RewardWatermark current = rewardWatermark.get();
+		return (current.rulesVersion == rulesVersion) ? current.evaluatedCount : 0;
+	}
+
+	/**
+	 * Enregistre que les visites de séquence &lt; {@code evaluatedCount} ont été évaluées avec la version de règles donnée.
+	 * @param evaluatedCount séquence de fin de l'évaluation
+	 * @param rulesVersion   version des règles utilisée
+	 */
+	public void setRewardWatermark(long evaluatedCount, long rulesVersion) {
+		RewardWatermark next = new RewardWatermark(evaluatedCount, rulesVersion);
+		rewardWatermark.accumulateAndGet(next, (current, candidate) ->
+				(candidate.rulesVersion != current.rulesVersion || candidate.evaluatedCount > current.evaluatedCount)
+						? candidate : current);
+	}
+
+	/**
+	 * @param attractionName nom de l'attraction
+	 * @return {@code true} si l'utilisateur a déjà une récompense pour cette attraction (O(1))
+	 */
+	public boolean hasRewardFor(String attractionName) {
+		return rewardsByAttraction.containsKey(attractionName);
+	}
+
+	/**
+	 * Ajoute une récompense si l'attraction n'est pas déjà récompensée (put-if-absent atomique, O(1)).
+	 * @param userReward récompense à ajouter
+	 * @return {@code true} si la récompense a été ajoutée, {@code false} si l'attraction était déjà récompensée
+	 */
+	public boolean addUserReward(UserReward userReward) {
+		if (rewardsByAttraction.putIfAbsent(userReward.attraction.attractionName, userReward) != null) {
+			return false;
 		}
+		userRewards.append(userReward);
+		UserChangeListener listener = changeListener;
+		if (listener != null) {
+			listener.userRewardAdded(this, userReward);
+		}
+		return true;
 	}
 
+	/** @return vue figée (non modifiable, sans copie) des récompenses, dans l'ordre d'attribution */
 	public List<UserReward> getUserRewards() {
-		return userRewards;
+		return userRewards.snapshot();
 	}
 
 	public UserPreferences getUserPreferences() {
@@ -101,15 +235,39 @@ public class User {
 	}
 
 	public VisitedLocation getLastVisitedLocation() {
-		return visitedLocations.get(visitedLocations.size() - 1);
+		VisitedLocation last = visitedLocations.last();
+		if (last == null) {
+			throw new IndexOutOfBoundsException("Aucune visite pour l'utilisateur : " + userName);
+		}
+		return last;
 	}
 
 	public void setTripDeals(List<Provider> tripDeals) {
-		this.tripDeals = tripDeals;
+		this.tripDeals = List.copyOf(tripDeals);
 	}
 
 	public List<Provider> getTripDeals() {
 		return tripDeals;
 	}
 
+	/**
+	 * Définit l'objet notifié des visites et récompenses ajoutées.
+	 * @param changeListener écouteur, ou {@code null} pour n'en plus notifier aucun
+	 */
+	public void setChangeListener(UserChangeListener changeListener) {
+		this.changeListener = changeListener;
+	}
+
+	// Marque d'évaluation immuable, remplacée atomiquement
+	private static final class RewardWatermark {
+		static final RewardWatermark NONE = new RewardWatermark(0, -1);
+
+		final long evaluatedCount;
+		final long rulesVersion;
+
+		RewardWatermark(long evaluatedCount, long rulesVersion) {
+			this.evaluatedCount = evaluatedCount;
+			this.rulesVersion = rulesVersion;
+		}
+	}
 }
@@ -0,0 +1,29 @@
+package com.openclassrooms.tourguide.user;
+
+/**
+ * Notification des modifications d'un {@link User} (journalisation, persistance).
+ *
+ * <p>Appelée dans le thread qui modifie l'utilisateur, juste après la modification : l'implémentation doit
+ * être rapide et thread-safe.</p>
+ */
+public interface UserChangeListener {
+
+	/**
+	 * Une visite vient d'être ajoutée à l'historique.
+	 *
+	 * @param user        utilisateur modifié
+	 * @param sequence    séquence attribuée à la visite
+	 * @param latitude    latitude (degrés)
+	 * @param longitude   longitude (degrés)
+	 * @param epochMillis horodatage (ms depuis l'epoch)
+	 */
+	void visitedLocationAdded(User user, long sequence, double latitude, double longitude, long epochMillis);
+
+	/**
+	 * Une récompense vient d'être attribuée (jamais appelée pour une attraction déjà récompensée).
+	 *
+	 * @param user       utilisateur modifié
+	 * @param userReward récompense ajoutée
+	 */
+	void userRewardAdded(User user, UserReward userReward);
+}
@@ -0,0 +1,168 @@
+package com.openclassrooms.tourguide.user;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Registre des utilisateurs, réparti en un nombre fixe de <i>shards</i>.
+ *
+ * <p><b>Principe :</b>
+ * <ul>
+ *   <li>Un utilisateur appartient au shard {@link #shardOf(UUID)} de son identifiant ; le nombre de shards est fixé
+ *       à la construction, l'affectation d'un utilisateur ne change donc jamais. Les traitements de masse
+ *       (Tracker, passes) peuvent confier chaque shard au même worker, exécuteur ou nœud d'une passe à l'autre.</li>
+ *   <li>Deux index : par identifiant (une map par shard, qui définit aussi son contenu) et par nom (map commune,
+ *       qui garantit l'unicité du nom).</li>
+ *   <li>Les parcours lisent directement les maps (itération faiblement cohérente) : ni les parcours complets
+ *       ni {@link #values()} ne copient les références des utilisateurs.</li>
+ * </ul>
+ *
+ * <p><b>Concurrence :</b> sans verrou. Un utilisateur est d'abord réservé par son nom, puis ajouté à son shard :
+ * pendant cet intervalle il est trouvé par son nom mais pas encore par son identifiant ni par les parcours.</p>
+ */
+public class UserRegistry implements Iterable<User> {
+
+	private final ConcurrentMap<String, User> byName = new ConcurrentHashMap<>();
+	private final Shard[] shards;
+
+	/**
+	 * @param shardCount nombre de shards (&gt;= 1)
+	 */
+	public UserRegistry(int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("Nombre de shards invalide : " + shardCount);
+		}
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard();
+		}
+	}
+
+	/**
+	 * Ajoute un utilisateur si son nom n'est pas déjà enregistré (idempotent).
+	 * @param user utilisateur à ajouter
+	 * @return {@code true} si l'utilisateur a été ajouté, {@code false} si le nom existait déjà
+	 */
+	public boolean add(User user) {
+		if (byName.putIfAbsent(user.getUserName(), user) != null) {
+			return false;
+		}
+		shards[shardOf(user.getUserId())].byId.put(user.getUserId(), user);
+		return true;
+	}
+
+	/**
+	 * @param userName nom d'utilisateur
+	 * @return utilisateur, ou {@code null} si absent
+	 */
+	public User get(String userName) {
+		return byName.get(userName);
+	}
+
+	/**
+	 * @param userId identifiant de l'utilisateur
+	 * @return utilisateur, ou {@code null} si absent
+	 */
+	public User get(UUID userId) {
+		return shards[shardOf(userId)].byId.get(userId);
+	}
+
+	/** @return nombre de shards */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @param userId identifiant d'un utilisateur
+	 * @return index du shard auquel il appartient (stable pour un nombre de shards donné)
+	 */
+	public int shardOf(UUID userId) {
+		return Math.floorMod(userId.hashCode(), shards.length);
+	}
+
+	/**
+	 * @param shard index du shard
+	 * @return vue non modifiable (sans copie) des utilisateurs du shard
+	 */
+	public Collection<User> shard(int shard) {
+		return shards[shard].view;
+	}
+
+	/** @return nombre d'utilisateurs enregistrés */
+	public int size() {
+		int size = 0;
+		for (Shard shard : shards) {
+			size += shard.byId.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Parcourt tous les utilisateurs, shard par shard, sans copie.
+	 * @param action traitement de chaque utilisateur
+	 */
+	@Override
+	public void forEach(Consumer<? super User> action) {
+		for (Shard shard : shards) {
+			shard.byId.values().forEach(action);
+		}
+	}
+
+	/** @return itérateur sur tous les utilisateurs, shard par shard (faiblement cohérent, lecture seule) */
+	@Override
+	public Iterator<User> iterator() {
+		return new Iterator<>() {
+			private int shard;
+			private Iterator<User> current = shards[0].view.iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && shard + 1 < shards.length) {
+					current = shards[++shard].view.iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public User next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+	}
+
+	/** @return vue non modifiable (sans copie) de tous les utilisateurs */
+	public Collection<User> values() {
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<User> iterator() {
+				return UserRegistry.this.iterator();
+			}
+
+			@Override
+			public int size() {
+				return UserRegistry.this.size();
+			}
+
+			@Override
+			public void forEach(Consumer<? super User> action) {
+				UserRegistry.this.forEach(action);
+			}
+		};
+	}
+
+	// Utilisateurs d'un shard, indexés par identifiant
+	private static final class Shard {
+		final ConcurrentMap<UUID, User> byId = new ConcurrentHashMap<>();
+		final Collection<User> view = Collections.unmodifiableCollection(byId.values());
+	}
+}
@@ -0,0 +1,104 @@
+package com.openclassrooms.tourguide;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import tripPricer.Provider;
+import tripPricer.TripPricer;
+
+/**
+ * Doublures des bibliothèques de {@code libs/} (GpsUtil, RewardCentral, TripPricer) à pannes injectables.
+ *
+ * <p>Sans panne injectée, chaque doublure délègue à la bibliothèque réelle. {@link Faults#inject(Fault)} fait
+ * échouer ({@link Fault#FAIL}) ou bloquer ({@link Fault#HANG}) les appels suivants ; {@link Faults#heal()} rétablit
+ * le service et libère les appels bloqués.</p>
+ */
+final class FaultInjection {
+
+	/** Panne simulée. */
+	enum Fault {
+		NONE, FAIL, HANG
+	}
+
+	private FaultInjection() {
+	}
+
+	/** Interrupteur de pannes d'une doublure. */
+	static final class Faults {
+		private volatile Fault fault = Fault.NONE;
+		private volatile CountDownLatch hung = new CountDownLatch(1);
+		private final AtomicInteger calls = new AtomicInteger();
+
+		void inject(Fault fault) {
+			this.fault = fault;
+		}
+
+		void heal() {
+			fault = Fault.NONE;
+			CountDownLatch released = hung;
+			hung = new CountDownLatch(1);
+			released.countDown();
+		}
+
+		/** @return nombre d'appels reçus par la doublure (y compris en panne) */
+		int getCallCount() {
+			return calls.get();
+		}
+
+		<T> T apply(String library, Supplier<T> real) {
+			calls.incrementAndGet();
+			switch (fault) {
+				case FAIL:
+					throw new IllegalStateException(library + " indisponible (panne injectée)");
+				case HANG:
+					try {
+						hung.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException(library + " interrompu (panne injectée)", e);
+					}
+					return real.get();
+				default:
+					return real.get();
+			}
+		}
+	}
+
+	/** GpsUtil à pannes injectables ({@code getUserLocation}). */
+	static final class Gps extends GpsUtil {
+		final Faults faults = new Faults();
+
+		@Override
+		public VisitedLocation getUserLocation(UUID userId) {
+			return faults.apply("GpsUtil", () -> super.getUserLocation(userId));
+		}
+	}
+
+	/** RewardCentral à pannes injectables ({@code getAttractionRewardPoints}). */
+	static final class Rewards extends RewardCentral {
+		final Faults faults = new Faults();
+
+		@Override
+		public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+			return faults.apply("RewardCentral", () -> super.getAttractionRewardPoints(attractionId, userId));
+		}
+	}
+
+	/** TripPricer à pannes injectables ({@code getPrice}). */
+	static final class Pricer extends TripPricer {
+		final Faults faults = new Faults();
+
+		@Override
+		public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+				int rewardsPoints) {
+			return faults.apply("TripPricer",
+					() -> super.getPrice(apiKey, attractionId, adults, children, nightsStay, rewardsPoints));
+		}
+	}
+}
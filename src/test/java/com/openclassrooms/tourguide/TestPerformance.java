@@ -3,16 +3,23 @@ package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.time.StopWatch;
 import org.junit.jupiter.api.Test;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.execution.ExecutionMode;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
@@ -97,4 +104,265 @@ public class TestPerformance {
 		assertTrue(TimeUnit.MINUTES.toSeconds(20) >= TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()));
 	}
 
+	/**
+	 * Passe complète en flux continu : GPS puis récompenses enchaînés pour chaque utilisateur.
+	 * <p>Le calcul des récompenses démarre pendant que d’autres appels GPS sont encore en cours.</p>
+	 *
+	 * <p><b>Attendu :</b> chaque utilisateur a une visite de plus et au moins une récompense, et la passe tient
+	 * dans le budget GPS (15 minutes).</p>
+	 */
+	@Test
+	public void highVolumeTrackAndReward() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+
+		int n = Integer.getInteger("userCount", 100);
+		InternalTestHelper.setInternalUserNumber(n);
+
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		List<User> allUsers = tourGuideService.getAllUsers();
+		allUsers.forEach(u -> u.addToVisitedLocations(new VisitedLocation(u.getUserId(), attraction, new Date())));
+		// Le Tracker a pu suivre (ou être en train de suivre) quelques utilisateurs à échéance immédiate avant son arrêt
+		Map<User, Integer> visitsBefore = new HashMap<>();
+		allUsers.forEach(u -> visitsBefore.put(u, u.getVisitedLocations().size()));
+
+		StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+
+		tourGuideService.trackAndRewardAllUsersAsync();
+
+		stopWatch.stop();
+		tourGuideService.shutdown();
+
+		System.out.println("highVolumeTrackAndReward (" + n + "): "
+				+ TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " s");
+
+		for (User user : allUsers) {
+			assertTrue(user.getVisitedLocations().size() > visitsBefore.get(user));
+			assertTrue(user.getUserRewards().size() > 0);
+		}
+		assertTrue(TimeUnit.MINUTES.toSeconds(15) >= TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()));
+	}
+
+	/**
+	 * Mémoire : simule 30 jours de tracking (un point toutes les 5 minutes) pour N utilisateurs avec
+	 * un historique borné à 1 jour, et compare le tas occupé après 10 puis 30 jours.
+	 *
+	 * <p><b>Attendu :</b> l'empreinte reste stable (pas de croissance proportionnelle au nombre de jours).</p>
+	 */
+	@Test
+	public void locationHistoryMemoryIsSteady() {
+		int n = Integer.getInteger("memoryUserCount", 200);
+		int pointsPerDay = (int) (TimeUnit.DAYS.toMinutes(1) / 5);
+
+		List<User> users = new java.util.ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			User user = new User(UUID.randomUUID(), "memoryUser" + i, "000", "memoryUser" + i + "@tourGuide.com");
+			user.setLocationHistoryCapacity(pointsPerDay);
+			users.add(user);
+		}
+
+		long heapAfter10Days = 0;
+		for (int day = 1; day <= 30; day++) {
+			for (User user : users) {
+				for (int p = 0; p < pointsPerDay; p++) {
+					user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(p % 90, p % 180), new Date()));
+				}
+			}
+			if (day == 10) {
+				heapAfter10Days = usedHeap();
+			}
+		}
+		long heapAfter30Days = usedHeap();
+
+		System.out.println("locationHistoryMemoryIsSteady (" + n + "): day 10 = " + heapAfter10Days / 1024
+				+ " KB, day 30 = " + heapAfter30Days / 1024 + " KB");
+
+		for (User user : users) {
+			assertTrue(user.getVisitedLocations().size() == pointsPerDay);
+		}
+		// Sans rétention, l'historique triplerait entre le 10e et le 30e jour
+		assertTrue(heapAfter30Days < heapAfter10Days * 1.5);
+	}
+
+	/**
+	 * Mémoire et GC : compare le stockage colonnaire de {@link User} à une {@code List<VisitedLocation>}
+	 * classique pour N utilisateurs × P points (cible : 100 000 × 1 000 via -DcolumnarUserCount / -DcolumnarPoints,
+	 * avec un tas suffisant).
+	 *
+	 * <p><b>Attendu :</b> le stockage colonnaire occupe au moins deux fois moins de tas, et le temps de GC
+	 * mesuré pour un cycle complet est affiché pour les deux représentations.</p>
+	 */
+	@Test
+	public void columnarLocationHistoryFootprint() {
+		int n = Integer.getInteger("columnarUserCount", 1000);
+		int points = Integer.getInteger("columnarPoints", 1000);
+
+		long baseline = usedHeap();
+		List<List<VisitedLocation>> objectHistories = new java.util.ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			UUID userId = UUID.randomUUID();
+			List<VisitedLocation> history = new java.util.ArrayList<>();
+			for (int p = 0; p < points; p++) {
+				history.add(new VisitedLocation(userId, new Location(p % 90, p % 180), new Date()));
+			}
+			objectHistories.add(history);
+		}
+		long objectHeap = usedHeap() - baseline;
+		long objectGcMillis = fullGcMillis();
+		objectHistories = null;
+
+		baseline = usedHeap();
+		List<User> users = new java.util.ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			User user = new User(UUID.randomUUID(), "columnarUser" + i, "000", "columnarUser" + i + "@tourGuide.com");
+			for (int p = 0; p < points; p++) {
+				user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(p % 90, p % 180), new Date()));
+			}
+			users.add(user);
+		}
+		long columnarHeap = usedHeap() - baseline;
+		long columnarGcMillis = fullGcMillis();
+
+		System.out.println("columnarLocationHistoryFootprint (" + n + " x " + points + "): List<VisitedLocation> = "
+				+ objectHeap / 1024 + " KB, GC " + objectGcMillis + " ms ; columnar = "
+				+ columnarHeap / 1024 + " KB, GC " + columnarGcMillis + " ms");
+
+		for (User user : users) {
+			assertTrue(user.getVisitedLocations().size() == points);
+		}
+		assertTrue(columnarHeap * 2 < objectHeap);
+	}
+
+	/**
+	 * Compare les deux modes d'exécution ({@link ExecutionMode}) sur le tracking puis le calcul des récompenses
+	 * de N utilisateurs (cible : 100 000 via -DuserCount) : durée, pic de threads et pic de RSS du processus
+	 * (VmHWM, cumulatif d'un mode à l'autre : le second mode n'en montre que le dépassement éventuel).
+	 *
+	 * <p>Sur une JVM antérieure à Java 21, le mode VIRTUAL se replie sur des threads système (signalé dans la sortie).</p>
+	 *
+	 * <p><b>Attendu :</b> chaque mode respecte les budgets de temps (15 min GPS, 20 min récompenses).</p>
+	 */
+	@Test
+	public void executionModesComparison() {
+		int n = Integer.getInteger("userCount", 100);
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		System.out.println("executionModesComparison: virtual threads available = "
+				+ ExecutionMode.virtualThreadsAvailable());
+
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			GpsUtil gpsUtil = new GpsUtil();
+			RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+			InternalTestHelper.setInternalUserNumber(n);
+			TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService,
+					TourGuideService.DEFAULT_LOCATION_HISTORY_SIZE, mode);
+			tourGuideService.tracker.stopTracking();
+			threads.resetPeakThreadCount();
+
+			StopWatch stopWatch = new StopWatch();
+			stopWatch.start();
+			tourGuideService.trackAllUsersLocationAsync();
+			stopWatch.split();
+			tourGuideService.calculateAllRewardsAsync();
+			stopWatch.stop();
+			int peakThreads = threads.getPeakThreadCount();
+			tourGuideService.shutdown();
+
+			System.out.println("executionModesComparison " + mode + " (" + n + "): track "
+					+ TimeUnit.MILLISECONDS.toSeconds(stopWatch.getSplitTime()) + " s, rewards "
+					+ TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime() - stopWatch.getSplitTime()) + " s, peak threads "
+					+ peakThreads + ", peak RSS so far " + residentSetKb() + " KB");
+
+			assertTrue(TimeUnit.MINUTES.toMillis(15) >= stopWatch.getSplitTime());
+			assertTrue(TimeUnit.MINUTES.toMillis(20) >= stopWatch.getTime() - stopWatch.getSplitTime());
+		}
+	}
+
+	/**
+	 * Compare le tracking de N utilisateurs (-DuserCount) avec une concurrence GpsUtil fixe (faible, puis la borne
+	 * par défaut de 256) et avec la limite adaptative ({@code -DadaptiveConcurrency}, bornée à 256), sans réglage.
+	 *
+	 * <p><b>Attendu :</b> la limite adaptative atteint un débit proche du meilleur réglage fixe (au plus 1,5 fois
+	 * sa durée, à une seconde près).</p>
+	 */
+	@Test
+	public void adaptiveConcurrencyComparison() {
+		int n = Integer.getInteger("userCount", 100);
+		String[][] settings = { { "16", "false" }, { "256", "false" }, { "256", "true" } };
+		long[] millis = new long[settings.length];
+		String gpsThreads = System.getProperty("gpsThreads");
+		String adaptive = System.getProperty("adaptiveConcurrency");
+		try {
+			for (int i = 0; i < settings.length; i++) {
+				System.setProperty("gpsThreads", settings[i][0]);
+				System.setProperty("adaptiveConcurrency", settings[i][1]);
+				GpsUtil gpsUtil = new GpsUtil();
+				RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+				InternalTestHelper.setInternalUserNumber(n);
+				TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+				tourGuideService.tracker.stopTracking();
+
+				StopWatch stopWatch = new StopWatch();
+				stopWatch.start();
+				tourGuideService.trackAllUsersLocationAsync();
+				stopWatch.stop();
+				tourGuideService.shutdown();
+				millis[i] = stopWatch.getTime();
+				System.out.println("adaptiveConcurrencyComparison (" + n + "): gpsThreads=" + settings[i][0]
+						+ " adaptive=" + settings[i][1] + " -> " + millis[i] + " ms");
+			}
+		} finally {
+			restoreProperty("gpsThreads", gpsThreads);
+			restoreProperty("adaptiveConcurrency", adaptive);
+		}
+
+		long bestFixed = Math.min(millis[0], millis[1]);
+		assertTrue(millis[2] <= bestFixed * 3 / 2 + 1000, "adaptatif " + millis[2] + " ms, meilleur fixe " + bestFixed + " ms");
+	}
+
+	private static void restoreProperty(String name, String value) {
+		if (value == null) {
+			System.clearProperty(name);
+		} else {
+			System.setProperty(name, value);
+		}
+	}
+
+	// Pic de mémoire résidente du processus (VmHWM, Linux), ou -1 si indisponible
+	private static long residentSetKb() {
+		try {
+			return java.nio.file.Files.readAllLines(java.nio.file.Paths.get("/proc/self/status")).stream()
+					.filter(line -> line.startsWith("VmHWM:"))
+					.mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")))
+					.findFirst()
+					.orElse(-1);
+		} catch (java.io.IOException e) {
+			return -1;
+		}
+	}
+
+	// Durée cumulée (ms) rapportée par les collecteurs pour un GC complet
+	private static long fullGcMillis() {
+		long before = gcMillis();
+		System.gc();
+		return gcMillis() - before;
+	}
+
+	private static long gcMillis() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(java.lang.management.GarbageCollectorMXBean::getCollectionTime)
+				.filter(time -> time > 0)
+				.sum();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
 }
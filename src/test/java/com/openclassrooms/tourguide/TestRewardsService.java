@@ -1,20 +1,50 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.cache.ExpiringCache;
+import com.openclassrooms.tourguide.execution.AdaptiveLimit;
+import com.openclassrooms.tourguide.execution.CircuitBreaker;
+import com.openclassrooms.tourguide.execution.RequestBatcher;
+import com.openclassrooms.tourguide.geo.AttractionDistance;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.DistanceMode;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
@@ -50,7 +80,8 @@ public class TestRewardsService {
 	 * <ol>
 	 *   <li>Créer un utilisateur sans historiques internes.</li>
 	 *   <li>Ajouter une visite positionnée sur la première attraction retournée par {@code GpsUtil}.</li>
-	 *   <li>Appeler {@code trackUserLocation(user)} qui déclenche le calcul des récompenses.</li>
+	 *   <li>Appeler {@code trackUserLocation(user)} qui publie la nouvelle position dans la file des récompenses,
+	 *       puis attendre l'évaluation.</li>
 	 * </ol>
 	 *
 	 * <p><b>Attendu :</b> la liste des récompenses de l’utilisateur contient exactement 1 élément.</p>
@@ -67,6 +98,7 @@ public class TestRewardsService {
 		Attraction attraction = gpsUtil.getAttractions().get(0);
 		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
 		tourGuideService.trackUserLocation(user);
+		tourGuideService.getRewardQueue().settled(user).join();
 		List<UserReward> userRewards = user.getUserRewards();
 		tourGuideService.tracker.stopTracking();
 		assertTrue(userRewards.size() == 1);
@@ -98,8 +130,8 @@ public class TestRewardsService {
 	 *
 	 * <p><b>Attendu :</b> le nombre de récompenses de l’utilisateur est égal au nombre total d’attractions.</p>
 	 *
-	 * <p><b>Robustesse :</b> le calcul dans {@code RewardsService} utilise des copies défensives des listes pour
-	 * éviter toute {@code ConcurrentModificationException} si le tracker modifie les visites en parallèle.</p>
+	 * <p><b>Robustesse :</b> {@code User} expose des vues figées de ses listes : le calcul dans {@code RewardsService}
+	 * ne risque aucune {@code ConcurrentModificationException} si le tracker ajoute des visites en parallèle.</p>
 	 */
 	//@Disabled
 	@Test
@@ -117,5 +149,483 @@ public class TestRewardsService {
 
 		assertEquals(gpsUtil.getAttractions().size(), userRewards.size());
 	}
-}
 
+	/**
+	 * Vérifie que l'{@link AttractionIndex} renvoie exactement les mêmes attractions que le parcours
+	 * exhaustif une fois le filtre de distance appliqué, y compris près de l'antiméridien et des pôles.
+	 *
+	 * <p><b>Attendu :</b> pour chaque point et chaque rayon, les deux listes (dans l'ordre du catalogue)
+	 * sont identiques.</p>
+	 */
+	@Test
+	public void attractionIndexMatchesBruteForce() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		Random random = new Random(42);
+
+		List<Attraction> catalog = new ArrayList<>(gpsUtil.getAttractions());
+		for (int i = 0; i < 500; i++) {
+			catalog.add(new Attraction("synthetic" + i, "city", "state",
+					-90 + random.nextDouble() * 180, -180 + random.nextDouble() * 360));
+		}
+		catalog.add(new Attraction("antimeridianEast", "city", "state", 10, 179.99));
+		catalog.add(new Attraction("northPole", "city", "state", 89.999, 12));
+
+		for (double cellSize : new double[] { 0.5, 1.0, 7.0 }) {
+			AttractionIndex index = new AttractionIndex(catalog, cellSize);
+			for (int i = 0; i < 300; i++) {
+				Location location = (i == 0) ? new Location(10, -179.99)
+						: (i == 1) ? new Location(89.9, -170)
+						: new Location(-90 + random.nextDouble() * 180, -180 + random.nextDouble() * 360);
+				for (double radius : new double[] { 0, 10, 200, 1500, 20000 }) {
+					List<String> expected = catalog.stream()
+							.filter(a -> rewardsService.getDistance(a, location) <= radius)
+							.map(a -> a.attractionName)
+							.collect(Collectors.toList());
+					List<String> actual = index.candidates(location, radius).stream()
+							.filter(a -> rewardsService.getDistance(a, location) <= radius)
+							.map(a -> a.attractionName)
+							.collect(Collectors.toList());
+					assertEquals(expected, actual);
+					assertEquals(expected, index.within(location, radius, DistanceMode.HAVERSINE).stream()
+							.map(a -> a.attractionName)
+							.collect(Collectors.toList()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Vérifie que la recherche k-NN (tas borné) renvoie les mêmes attractions, dans le même ordre,
+	 * qu'un tri complet du catalogue par distance, avec les distances déjà calculées.
+	 */
+	@Test
+	public void nearestAttractionsMatchesFullSort() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		Random random = new Random(7);
+
+		AttractionIndex index = new AttractionIndex(gpsUtil.getAttractions());
+		for (int i = 0; i < 200; i++) {
+			Location location = new Location(-90 + random.nextDouble() * 180, -180 + random.nextDouble() * 360);
+			for (int k : new int[] { 0, 1, 5, 26, 40 }) {
+				List<String> expected = index.getAttractions().stream()
+						.sorted(Comparator.comparingDouble(a -> rewardsService.getDistance(a, location)))
+						.limit(k)
+						.map(a -> a.attractionName)
+						.collect(Collectors.toList());
+				List<AttractionDistance> nearest = index.nearest(location, k, rewardsService::getDistance);
+				assertEquals(expected, nearest.stream().map(n -> n.attraction.attractionName).collect(Collectors.toList()));
+				nearest.forEach(n -> assertEquals(rewardsService.getDistance(n.attraction, location), n.distance));
+
+				List<AttractionDistance> prepared = index.nearest(location, k);
+				assertEquals(expected, prepared.stream().map(n -> n.attraction.attractionName).collect(Collectors.toList()));
+				prepared.forEach(n -> assertEquals(rewardsService.getDistance(n.attraction, location), n.distance));
+			}
+		}
+	}
+
+	/**
+	 * Vérifie l'enveloppe de précision documentée dans {@link DistanceMode} : l'approximation équirectangulaire
+	 * reste à moins de 0,03 % de la haversine jusqu'à 50 miles (|latitude| &lt;= 80°), la loi des cosinus à moins
+	 * de 1e-5 mile au-delà d'un mile, y compris au passage de l'antiméridien.
+	 */
+	@Test
+	public void distanceModesStayWithinAccuracyEnvelope() {
+		Random random = new Random(11);
+		for (int i = 0; i < 100_000; i++) {
+			double lat1 = -79 + random.nextDouble() * 158;
+			double lon1 = -180 + random.nextDouble() * 360;
+			double lat2 = lat1 + (random.nextDouble() - 0.5) * 1.2;
+			double lon2 = lon1 + (random.nextDouble() - 0.5) * 1.2;
+			lon2 = (lon2 > 180) ? lon2 - 360 : (lon2 < -180) ? lon2 + 360 : lon2;
+
+			double haversine = DistanceMode.HAVERSINE.miles(lat1, lon1, lat2, lon2);
+			if (haversine < 1 || haversine > 50) {
+				continue;
+			}
+			double equirectangular = DistanceMode.EQUIRECTANGULAR.miles(lat1, lon1, lat2, lon2);
+			assertTrue(Math.abs(equirectangular - haversine) <= haversine * 3e-4, "equirectangular " + equirectangular + " vs " + haversine);
+			assertEquals(haversine, DistanceMode.LAW_OF_COSINES.miles(lat1, lon1, lat2, lon2), 1e-5);
+			assertEquals(haversine, DistanceMode.HAVERSINE.miles(lat2, lon2, lat1, lon1));
+		}
+		// Points confondus : la haversine renvoie exactement 0
+		assertEquals(0.0, DistanceMode.HAVERSINE.miles(33.817595, -117.922008, 33.817595, -117.922008));
+	}
+
+	/**
+	 * Évaluation incrémentale : un second appel à {@code calculateRewards} ne traite que la nouvelle visite,
+	 * et un appel sans nouvelle visite ne change rien.
+	 *
+	 * <p><b>Attendu :</b> 1 récompense après la première visite, 2 après la seconde (rattachée à la nouvelle
+	 * visite), toujours 2 après un appel supplémentaire.</p>
+	 */
+	@Test
+	public void calculateRewardsOnlyEvaluatesNewLocations() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		List<Attraction> attractions = gpsUtil.getAttractions();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attractions.get(0), new Date()));
+		rewardsService.calculateRewards(user);
+		assertEquals(1, user.getUserRewards().size());
+
+		VisitedLocation secondVisit = new VisitedLocation(user.getUserId(), attractions.get(9), new Date());
+		user.addToVisitedLocations(secondVisit);
+		rewardsService.calculateRewards(user);
+		assertEquals(2, user.getUserRewards().size());
+		assertTrue(user.getUserRewards().get(1).visitedLocation == secondVisit);
+
+		rewardsService.calculateRewards(user);
+		assertEquals(2, user.getUserRewards().size());
+	}
+
+	/**
+	 * Cache des points : des demandes simultanées pour la même (attraction, utilisateur) ne donnent lieu qu'à
+	 * un seul appel à {@link RewardCentral}, et les demandes suivantes sont servies par le cache.
+	 *
+	 * <p><b>Attendu :</b> 1 appel amont pour 8 threads × 10 demandes, toutes avec le même nombre de points.</p>
+	 */
+	@Test
+	public void rewardPointsAreCachedAndCoalesced() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		RewardCentral countingRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				upstreamCalls.incrementAndGet();
+				return super.getAttractionRewardPoints(attractionId, userId);
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, countingRewardCentral);
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> points = new ArrayList<>();
+		for (int i = 0; i < 80; i++) {
+			points.add(executor.submit(() -> rewardsService.getRewardPoints(attraction, user)));
+		}
+		Set<Integer> distinctPoints = new HashSet<>();
+		for (Future<Integer> p : points) {
+			distinctPoints.add(p.get());
+		}
+		executor.shutdown();
+
+		assertEquals(1, upstreamCalls.get());
+		assertEquals(1, distinctPoints.size());
+		assertEquals(1, rewardsService.getRewardPointsCache().getMissCount());
+		assertEquals(79, rewardsService.getRewardPointsCache().getHitCount()
+				+ rewardsService.getRewardPointsCache().getCoalescedCount());
+	}
+
+	/**
+	 * Regroupement des appels à {@link RewardCentral} : 200 demandes distinctes déposées d'un coup sont traitées par
+	 * au plus 4 workers, en lots, sans bloquer le thread appelant.
+	 *
+	 * <p><b>Attendu :</b> jamais plus de 4 appels simultanés ni plus de 4 threads utilisés, nettement moins de
+	 * lots que de demandes, et des points pour chaque demande.</p>
+	 */
+	@Test
+	public void rewardCentralCallsAreBatchedAndBounded() {
+		GpsUtil gpsUtil = new GpsUtil();
+		AtomicInteger concurrentCalls = new AtomicInteger();
+		AtomicInteger maxConcurrentCalls = new AtomicInteger();
+		Set<String> callerThreads = ConcurrentHashMap.newKeySet();
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+				callerThreads.add(Thread.currentThread().getName());
+				try {
+					TimeUnit.MILLISECONDS.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				concurrentCalls.decrementAndGet();
+				return 42;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, slowRewardCentral);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		rewardsService.setRewardCentralExecutor(executor, 4);
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+
+		List<CompletableFuture<Integer>> points = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			User user = new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com");
+			points.add(rewardsService.getRewardPointsAsync(attraction, user));
+		}
+		CompletableFuture.allOf(points.toArray(new CompletableFuture<?>[0])).join();
+		executor.shutdown();
+
+		points.forEach(p -> assertEquals(42, p.join().intValue()));
+		assertTrue(maxConcurrentCalls.get() <= 4, "max concurrent calls " + maxConcurrentCalls.get());
+		assertTrue(callerThreads.size() <= 4, "threads used " + callerThreads.size());
+		assertEquals(200, rewardsService.getRewardPointsBatcher().getSubmittedCount());
+		assertTrue(rewardsService.getRewardPointsBatcher().getBatchCount() < 50,
+				"batches " + rewardsService.getRewardPointsBatcher().getBatchCount());
+	}
+
+	/**
+	 * Délais d'un lot de demandes derrière un appel bloqué : ils sont armés au prélèvement du lot.
+	 *
+	 * <p><b>Attendu :</b> un seul worker prélève les 5 demandes d'un coup ; le service ne répond pas à la première,
+	 * et toutes échouent au délai (et non à la seule réponse du service), sans autre appel.</p>
+	 */
+	@Test
+	public void requestBatcherTimesOutWholeBatchBehindHungCall() throws Exception {
+		CountDownLatch go = new CountDownLatch(1);
+		CountDownLatch hung = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		RequestBatcher<Integer, Integer> batcher = new RequestBatcher<>("test", key -> {
+			calls.incrementAndGet();
+			try {
+				hung.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return key;
+		}, task -> new Thread(() -> {
+			try {
+				go.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			task.run();
+		}).start(), 1, 10);
+		try {
+			List<CompletableFuture<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				results.add(batcher.submit(i, Duration.ofMillis(200)));
+			}
+			long started = System.nanoTime();
+			go.countDown();
+			for (CompletableFuture<Integer> result : results) {
+				assertTrue(assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS))
+						.getCause() instanceof TimeoutException);
+			}
+			assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+			assertEquals(1L, batcher.getBatchCount());
+			assertEquals(1, calls.get());
+		} finally {
+			hung.countDown();
+		}
+	}
+
+	/**
+	 * Éviction du cache : au-delà de la taille maximale les plus anciennes entrées sont évincées, et une entrée
+	 * expirée est rechargée.
+	 *
+	 * <p><b>Attendu :</b> taille bornée à 2, la clé la plus ancienne est rechargée, puis tout est rechargé après le TTL.</p>
+	 */
+	@Test
+	public void expiringCacheEvictsBySizeAndTtl() throws Exception {
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>(2, Duration.ofMillis(200));
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get("a", loads::incrementAndGet);
+		cache.get("b", loads::incrementAndGet);
+		cache.get("c", loads::incrementAndGet);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+
+		assertEquals(3, (int) cache.get("c", loads::incrementAndGet));
+		assertEquals(4, (int) cache.get("a", loads::incrementAndGet));
+		assertEquals(1, cache.getHitCount());
+
+		TimeUnit.MILLISECONDS.sleep(250);
+		assertEquals(5, (int) cache.get("a", loads::incrementAndGet));
+		assertEquals(5, cache.getMissCount());
+	}
+
+	/**
+	 * Vérifie l'instrumentation : latence des appels GpsUtil, RewardCentral et TripPricer, récompenses attribuées,
+	 * passes et jauges des pools.
+	 *
+	 * <p><b>Attendu :</b> après un suivi, une passe de récompenses et une recherche d'offres, chaque timer a au
+	 * moins une mesure, le compteur de récompenses vaut le nombre de récompenses de l'utilisateur et les jauges du
+	 * pool GPS sont lisibles (pool système).</p>
+	 */
+	@Test
+	public void servicesPublishMetrics() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		MeterRegistry registry = new SimpleMeterRegistry();
+		tourGuideService.setMetrics(new TourGuideMetrics(registry));
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		tourGuideService.addUser(user);
+		tourGuideService.trackUserLocation(user);
+		tourGuideService.getRewardQueue().settled(user).join();
+		tourGuideService.calculateAllRewardsAsync();
+		tourGuideService.getTripDeals(user);
+		tourGuideService.shutdown();
+
+		assertTrue(registry.get("tourguide.client.calls").tag("client", "GpsUtil").timer().count() >= 1);
+		assertTrue(registry.get("tourguide.client.calls").tag("client", "RewardCentral").timer().count() >= 1);
+		assertTrue(registry.get("tourguide.client.calls").tag("client", "TripPricer").timer().count() >= 1);
+		assertEquals(1, registry.get("tourguide.pass").tag("operation", "calculateRewards").timer().count());
+		assertEquals(user.getUserRewards().size(), (int) registry.get("tourguide.rewards.granted").counter().count());
+		assertTrue(user.getUserRewards().size() >= 1);
+		assertEquals(0.0, registry.get("tourguide.executor.queued").tag("executor", "gps").gauge().value());
+		assertEquals(0.0, registry.get("tourguide.client.in.flight").tag("client", "GpsUtil").gauge().value());
+		assertEquals(0.0, registry.get("tourguide.rewards.queue").tag("state", "pending").gauge().value());
+		assertTrue(registry.get("tourguide.client.limit").tag("client", "RewardCentral").gauge().value() >= 1);
+		assertTrue(registry.get("tourguide.client.limit.rejections").tag("client", "GpsUtil").functionCounter().count() >= 0);
+	}
+
+	/**
+	 * Vérifie la limite adaptative : elle croît tant que la latence est stable, baisse quand une file se forme
+	 * côté service (latence multipliée) ou en cas d'échec, et reste dans ses bornes.
+	 *
+	 * <p><b>Attendu :</b> partie de 10, la limite atteint sa borne de 100 sous latence stable ; une latence
+	 * décuplée la fait redescendre, jusqu'au minimum de 5 ; un échec la réduit ; une limite fixe ne bouge pas.</p>
+	 */
+	@Test
+	public void adaptiveLimitFollowsLatency() {
+		AdaptiveLimit limit = new AdaptiveLimit(10, 5, 100);
+		long millis = TimeUnit.MILLISECONDS.toNanos(1);
+		for (int i = 0; i < 500; i++) {
+			limit.onSample(10 * millis, limit.getLimit(), false);
+		}
+		assertEquals(100, limit.getLimit());
+
+		// Échantillons pris sous faible charge : pas d'information, pas de hausse
+		AdaptiveLimit idle = new AdaptiveLimit(10, 5, 100);
+		for (int i = 0; i < 500; i++) {
+			idle.onSample(10 * millis, 1, false);
+		}
+		assertEquals(10, idle.getLimit());
+
+		// Latence décuplée : la limite baisse à la fin de chaque fenêtre (la moitié de la limite), de 10 % au plus
+		for (int i = 0; i < 400; i++) {
+			limit.onSample(100 * millis, limit.getLimit(), false);
+		}
+		int congested = limit.getLimit();
+		assertTrue(congested < 60, "limite sous congestion : " + congested);
+		for (int i = 0; i < 500; i++) {
+			limit.onSample(100 * millis, limit.getLimit(), false);
+		}
+		assertTrue(limit.getLimit() >= 5);
+
+		AdaptiveLimit failing = new AdaptiveLimit(50, 5, 100);
+		for (int i = 0; i < 25; i++) {
+			failing.onSample(10 * millis, 50, true);
+		}
+		assertEquals(45, failing.getLimit());
+
+		AdaptiveLimit fixed = AdaptiveLimit.fixed(8);
+		fixed.onSample(millis, 8, true);
+		assertEquals(8, fixed.getLimit());
+	}
+
+	/**
+	 * Vérifie les replis face à une panne de RewardCentral : disjoncteur, points expirés servis en secours,
+	 * récompense reportée.
+	 *
+	 * <p><b>Attendu :</b> le disjoncteur s'ouvre à 50 % d'échecs sur sa fenêtre, refuse alors les appels, puis se
+	 * referme après des appels d'essai réussis. Un rechargement en échec sert la valeur expirée du cache. Un
+	 * RewardCentral bloqué laisse le calcul des récompenses se terminer au délai, sans récompense ; la récompense est
+	 * attribuée au calcul suivant une fois le service rétabli.</p>
+	 */
+	@Test
+	public void rewardCentralOutageServesStaleOrDefers() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", Duration.ofSeconds(1), 4, 0.5, Duration.ofMillis(100));
+		for (int i = 0; i < 4; i++) {
+			boolean fail = i % 2 == 0;
+			breaker.callAsync(() -> fail ? CompletableFuture.failedFuture(new IllegalStateException("échec"))
+					: CompletableFuture.completedFuture(0)).exceptionally(failure -> -1).join();
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertTrue(breaker.callAsync(() -> CompletableFuture.completedFuture(1)).isCompletedExceptionally());
+		assertEquals(1, breaker.getShortCircuitedCount());
+		TimeUnit.MILLISECONDS.sleep(150);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(1, (int) breaker.callAsync(() -> CompletableFuture.completedFuture(1)).join());
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>(10, Duration.ofMillis(50), Duration.ofMinutes(1));
+		cache.get("a", () -> 1);
+		TimeUnit.MILLISECONDS.sleep(80);
+		assertEquals(1, (int) cache.getAsync("a",
+				() -> CompletableFuture.failedFuture(new IllegalStateException("panne"))).join());
+		assertEquals(1, cache.getStaleCount());
+		assertEquals(2, (int) cache.get("a", () -> 2));
+
+		String timeout = System.getProperty("rewardCentralTimeoutMillis");
+		System.setProperty("rewardCentralTimeoutMillis", "1500");
+		FaultInjection.Rewards rewardCentral = new FaultInjection.Rewards();
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService;
+		try {
+			rewardsService = new RewardsService(gpsUtil, rewardCentral);
+		} finally {
+			if (timeout == null) {
+				System.clearProperty("rewardCentralTimeoutMillis");
+			} else {
+				System.setProperty("rewardCentralTimeoutMillis", timeout);
+			}
+		}
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+
+		rewardCentral.faults.inject(FaultInjection.Fault.HANG);
+		try {
+			long started = System.nanoTime();
+			rewardsService.calculateRewards(user);
+			assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(4));
+			assertEquals(0, user.getUserRewards().size());
+			assertEquals(1, rewardsService.getRewardCentralBreaker().getTimeoutCount());
+		} finally {
+			rewardCentral.faults.heal();
+		}
+		rewardsService.calculateRewards(user);
+		assertEquals(1, user.getUserRewards().size());
+	}
+
+	/**
+	 * Vérifie que le catalogue d'attractions est lu une seule fois auprès de GpsUtil, puis servi depuis l'index en
+	 * cache, et qu'une relecture explicite prend en compte un catalogue modifié.
+	 *
+	 * <p><b>Attendu :</b> un seul appel à {@code getAttractions} pour de nombreuses recherches ; après ajout d'une
+	 * attraction et {@code refreshAttractionCatalog}, elle est la plus proche de sa position.</p>
+	 */
+	@Test
+	public void attractionCatalogIsCachedUntilRefreshed() {
+		AtomicInteger catalogReads = new AtomicInteger();
+		List<Attraction> extra = new CopyOnWriteArrayList<>();
+		GpsUtil gpsUtil = new GpsUtil() {
+			@Override
+			public List<Attraction> getAttractions() {
+				catalogReads.incrementAndGet();
+				List<Attraction> catalog = new ArrayList<>(super.getAttractions());
+				catalog.addAll(extra);
+				return catalog;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		Location location = new Location(10, 10);
+		for (int i = 0; i < 100; i++) {
+			rewardsService.getNearestAttractions(location, 5);
+		}
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), location, new Date()));
+		rewardsService.calculateRewards(user);
+		assertEquals(1, catalogReads.get());
+
+		extra.add(new Attraction("synthetic", "city", "state", 10, 10));
+		assertTrue(!"synthetic".equals(rewardsService.getNearestAttractions(location, 1).get(0).attraction.attractionName));
+		rewardsService.refreshAttractionCatalog();
+		assertEquals(2, catalogReads.get());
+		assertEquals("synthetic", rewardsService.getNearestAttractions(location, 1).get(0).attraction.attractionName);
+	}
+}
@@ -1,22 +1,61 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.DTO.NearbyAttractionDto;
+import com.openclassrooms.tourguide.cluster.ConsistentHashRing;
+import com.openclassrooms.tourguide.cluster.LocalCoordinator;
+import com.openclassrooms.tourguide.cluster.NodePartition;
+import com.openclassrooms.tourguide.DTO.UserSummaryDto;
+import com.openclassrooms.tourguide.execution.CircuitBreaker;
+import com.openclassrooms.tourguide.execution.HedgedCall;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.persistence.LocationJournal;
+import com.openclassrooms.tourguide.persistence.UserStorePersistence;
+import com.openclassrooms.tourguide.service.RewardQueue;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.Tracker;
 import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserRegistry;
+import com.openclassrooms.tourguide.user.UserReward;
 import tripPricer.Provider;
 
 /**
@@ -171,4 +210,979 @@ public class TestTourGuideService {
 
 		assertEquals(10, providers.size());
 	}
+
+	/**
+	 * Vérifie le cache des offres : appels répétés et simultanés servis par un seul appel à TripPricer, nouvel
+	 * appel quand les entrées de tarification (récompenses, préférences) changent.
+	 *
+	 * <p><b>Attendu :</b> 8 demandes simultanées puis une demande répétée : 1 chargement, même liste ; après une
+	 * récompense puis un changement de durée de séjour : 1 chargement de plus à chaque fois.</p>
+	 */
+	@Test
+	public void tripDealsAreCachedAndCoalesced() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<List<Provider>>> concurrent = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			concurrent.add(executor.submit(() -> tourGuideService.getTripDeals(user)));
+		}
+		List<Provider> first = concurrent.get(0).get();
+		for (Future<List<Provider>> deals : concurrent) {
+			assertTrue(deals.get() == first);
+		}
+		executor.shutdown();
+		assertTrue(tourGuideService.getTripDeals(user) == first);
+		assertEquals(1, tourGuideService.getTripDealsCache().getMissCount());
+		assertEquals(10, first.size());
+
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addUserReward(new UserReward(new VisitedLocation(user.getUserId(), attraction, new Date()), attraction, 100));
+		tourGuideService.getTripDeals(user);
+		user.getUserPreferences().setTripDuration(3);
+		tourGuideService.getTripDeals(user);
+		tourGuideService.shutdown();
+
+		assertEquals(3, tourGuideService.getTripDealsCache().getMissCount());
+	}
+
+	/**
+	 * Vérifie la recherche d'offres parallèle : fusion des tarifs par fournisseur, tri par prix, et doublement
+	 * d'un appel lent ({@link HedgedCall}).
+	 *
+	 * <p><b>Attendu :</b> 10 offres dont les fournisseurs distincts sont triés par prix croissant, une demande
+	 * par branche ; un appel bloqué 2 s est servi par son doublon bien avant, et un appel dont les deux tentatives
+	 * échouent renvoie l'erreur.</p>
+	 */
+	@Test
+	public void tripDealsFanOutIsSortedAndHedged() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		List<Provider> deals = tourGuideService.getTripDeals(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"));
+		tourGuideService.shutdown();
+		assertEquals(10, deals.size());
+		Set<String> names = new HashSet<>();
+		for (int i = 0; i < deals.size() && names.add(deals.get(i).name); i++) {
+			assertTrue(i == 0 || deals.get(i - 1).price <= deals.get(i).price);
+		}
+		assertTrue(tourGuideService.getTripPricerCalls().getCallCount() >= 3);
+
+		ExecutorService executor = Executors.newCachedThreadPool();
+		HedgedCall hedged = new HedgedCall("slow", executor, 0.95, 20, Duration.ofMillis(20));
+		AtomicInteger attempts = new AtomicInteger();
+		long started = System.nanoTime();
+		String value = hedged.call(() -> {
+			if (attempts.incrementAndGet() == 1) {
+				sleep(2000);
+			}
+			return "ok";
+		}).get(1, TimeUnit.SECONDS);
+		assertEquals("ok", value);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+		assertEquals(1, hedged.getHedgeCount());
+		assertEquals(1, hedged.getHedgeWinCount());
+
+		CompletableFuture<String> failing = hedged.call(() -> {
+			sleep(50);
+			throw new IllegalStateException("indisponible");
+		});
+		ExecutionException failure = assertThrows(ExecutionException.class, () -> failing.get(1, TimeUnit.SECONDS));
+		assertEquals("indisponible", failure.getCause().getMessage());
+		hedged.shutdown();
+		executor.shutdownNow();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Vérifie que l'agrégat {@link User} supporte des écritures concurrentes sans verrou :
+	 * plusieurs threads ajoutent des visites et tentent d'attribuer les mêmes récompenses.
+	 *
+	 * <p><b>Attendu :</b> aucune visite perdue, une seule récompense par attraction, et une vue
+	 * obtenue avant les écritures reste inchangée.</p>
+	 */
+	@Test
+	public void userAggregateIsThreadSafe() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		List<VisitedLocation> before = user.getVisitedLocations();
+
+		int threads = 8;
+		int perThread = 5000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.submit(() -> {
+				for (int i = 0; i < perThread; i++) {
+					VisitedLocation visit = new VisitedLocation(user.getUserId(), new Location(i % 90, i % 180), new Date());
+					user.addToVisitedLocations(visit);
+					user.addUserReward(new UserReward(visit, attractions.get(i % attractions.size()), i));
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		assertEquals(threads * perThread, user.getVisitedLocations().size());
+		assertEquals(attractions.size(), user.getUserRewards().size());
+		assertEquals(0, before.size());
+	}
+
+	/**
+	 * Vérifie la rétention bornée de l'historique : seules les dernières visites sont conservées,
+	 * la dernière reste accessible et l'empreinte allouée ne grossit plus.
+	 *
+	 * <p><b>Attendu :</b> après 10 000 visites avec une capacité de 288, l'historique contient les 288
+	 * dernières dans l'ordre, et le nombre de cases allouées est identique à celui mesuré après 1 000 visites.</p>
+	 */
+	@Test
+	public void locationHistoryIsBounded() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, 288);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+		tourGuideService.tracker.stopTracking();
+
+		int allocatedAfterWarmUp = 0;
+		VisitedLocation last = null;
+		for (int i = 0; i < 10000; i++) {
+			last = new VisitedLocation(user.getUserId(), new Location(i % 90, i % 180), new Date());
+			user.addToVisitedLocations(last);
+			if (i == 999) {
+				allocatedAfterWarmUp = user.getLocationHistoryAllocatedSlots();
+			}
+		}
+
+		List<VisitedLocation> history = user.getVisitedLocations();
+		assertEquals(288, history.size());
+		assertTrue(history.get(0).location.latitude == (10000 - 288) % 90);
+		assertTrue(user.getLastVisitedLocation() == last);
+		assertEquals(10000, user.getVisitedLocationSequence());
+		assertEquals(allocatedAfterWarmUp, user.getLocationHistoryAllocatedSlots());
+	}
+
+	/**
+	 * Vérifie l'ordonnanceur du {@link Tracker} : chaque utilisateur est suivi une fois par intervalle,
+	 * à cadence fixe, quelle que soit sa position dans la liste.
+	 *
+	 * <p><b>Attendu :</b> avec un intervalle de 500 ms sur 2,2 s, chaque utilisateur reçoit 4 à 5 nouvelles visites
+	 * (première échéance répartie dans le premier intervalle), et le retard mesuré par shard reste inférieur à un
+	 * intervalle.</p>
+	 */
+	@Test
+	public void trackerKeepsSteadyFrequency() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		for (int i = 0; i < 50; i++) {
+			tourGuideService.addUser(new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com"));
+		}
+		Tracker tracker = new Tracker(tourGuideService, Duration.ofMillis(500), 4, 100);
+		TimeUnit.MILLISECONDS.sleep(2200);
+		tracker.stopTracking();
+		tourGuideService.shutdown();
+
+		for (User user : tourGuideService.getAllUsers()) {
+			int visits = user.getVisitedLocations().size();
+			assertTrue(visits >= 4 && visits <= 5, user.getUserName() + " : " + visits + " visites");
+		}
+		for (int shard = 0; shard < tracker.getShardCount(); shard++) {
+			assertTrue(tracker.getMaxLagMillis(shard) < 500);
+		}
+	}
+
+	/**
+	 * Vérifie qu'une erreur à la distribution d'un utilisateur n'arrête pas le shard du {@link Tracker}.
+	 *
+	 * <p><b>Attendu :</b> un seul shard et un seul suivi simultané ; le lancement du suivi d'un utilisateur échoue
+	 * deux fois. La place est rendue et l'utilisateur replanifié : tous les utilisateurs, lui compris, continuent
+	 * d'être suivis à chaque intervalle.</p>
+	 */
+	@Test
+	public void trackerSurvivesDispatchFailures() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		AtomicInteger failures = new AtomicInteger(2);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService) {
+			@Override
+			public CompletableFuture<VisitedLocation> trackUserLocationAsync(User user) {
+				if (user.getUserName().equals("jon0") && failures.getAndDecrement() > 0) {
+					throw new IllegalStateException("Échec simulé");
+				}
+				return super.trackUserLocationAsync(user);
+			}
+		};
+		tourGuideService.tracker.stopTracking();
+
+		for (int i = 0; i < 5; i++) {
+			tourGuideService.addUser(new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com"));
+		}
+		Tracker tracker = new Tracker(tourGuideService, Duration.ofMillis(200), 1, 1);
+		TimeUnit.MILLISECONDS.sleep(1300);
+		tracker.stopTracking();
+		tourGuideService.shutdown();
+
+		assertTrue(failures.get() < 0);
+		for (User user : tourGuideService.getAllUsers()) {
+			int visits = user.getVisitedLocations().size();
+			int expected = user.getUserName().equals("jon0") ? 2 : 4;
+			assertTrue(visits >= expected, user.getUserName() + " : " + visits + " visites");
+		}
+	}
+
+	/**
+	 * Vérifie le démarrage à chaud : instantané puis rejeu du journal, sans arrêt propre (le dernier instantané
+	 * n'est pas écrit avant la restauration).
+	 *
+	 * <p><b>Attendu :</b> identité, préférences, historique conservé (avec sa séquence), récompenses et
+	 * utilisateurs ajoutés après l'instantané sont restaurés à l'identique.</p>
+	 */
+	@Test
+	public void persistenceRestoresSnapshotAndJournal() throws Exception {
+		Path directory = Files.createTempDirectory("tourguide-persistence");
+		Map<UUID, User> users = new ConcurrentHashMap<>();
+		User jon = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		jon.setLocationHistoryCapacity(3);
+		jon.getUserPreferences().setTripDuration(7);
+		for (int i = 0; i < 5; i++) {
+			jon.addToVisitedLocations(new VisitedLocation(jon.getUserId(), new Location(i, -i), new Date(1000L * i)));
+		}
+		Attraction disney = new Attraction("Disneyland", "Anaheim", "CA", 33.817595D, -117.922008D);
+		jon.addUserReward(new UserReward(jon.getLastVisitedLocation(), disney, 42));
+		users.put(jon.getUserId(), jon);
+
+		UserStorePersistence persistence = new UserStorePersistence(directory, Duration.ofHours(1), Duration.ofMillis(20));
+		persistence.start(users::values);
+
+		// Modifications postérieures à l'instantané : seulement dans le journal
+		jon.addToVisitedLocations(new VisitedLocation(jon.getUserId(), new Location(5, -5), new Date(5000)));
+		User ann = new User(UUID.randomUUID(), "ann", "111", "ann@tourGuide.com");
+		users.put(ann.getUserId(), ann);
+		persistence.track(ann);
+		ann.addToVisitedLocations(new VisitedLocation(ann.getUserId(), new Location(1, 2), new Date(3000)));
+		ann.addUserReward(new UserReward(ann.getLastVisitedLocation(), disney, 7));
+		TimeUnit.MILLISECONDS.sleep(300);
+
+		Map<UUID, User> restored = new ConcurrentHashMap<>();
+		int count = new UserStorePersistence(directory, Duration.ofHours(1), Duration.ofSeconds(1))
+				.restore(user -> {
+					user.setLocationHistoryCapacity(3);
+					restored.put(user.getUserId(), user);
+				});
+		persistence.close();
+
+		assertEquals(2, count);
+		for (User original : users.values()) {
+			User copy = restored.get(original.getUserId());
+			assertEquals(original.getUserName(), copy.getUserName());
+			assertEquals(original.getEmailAddress(), copy.getEmailAddress());
+			assertEquals(original.getVisitedLocationSequence(), copy.getVisitedLocationSequence());
+			List<VisitedLocation> expected = original.getVisitedLocations();
+			List<VisitedLocation> actual = copy.getVisitedLocations();
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).location.latitude, actual.get(i).location.latitude);
+				assertEquals(expected.get(i).timeVisited, actual.get(i).timeVisited);
+			}
+			assertEquals(original.getUserRewards().size(), copy.getUserRewards().size());
+			assertEquals(original.getUserRewards().get(0).getRewardPoints(), copy.getUserRewards().get(0).getRewardPoints());
+		}
+		assertEquals(6, restored.get(jon.getUserId()).getVisitedLocationSequence());
+		assertEquals(7, restored.get(jon.getUserId()).getUserPreferences().getTripDuration());
+	}
+
+	/**
+	 * Vérifie le journal des positions : rotation des segments, compactage à la rétention par utilisateur et
+	 * réouverture (index reconstruits depuis les segments projetés).
+	 *
+	 * <p><b>Attendu :</b> avec des segments de 10 positions et une rétention de 5, les deux segments scellés ne
+	 * contenant que d'anciennes positions de jon sont supprimés ; l'historique relu après réouverture est
+	 * identique, du plus récent au plus ancien.</p>
+	 */
+	@Test
+	public void locationJournalRollsCompactsAndReopens() throws Exception {
+		Path directory = Files.createTempDirectory("tourguide-journal");
+		UUID jon = UUID.randomUUID();
+		UUID ann = UUID.randomUUID();
+		try (LocationJournal journal = new LocationJournal(directory, 10, 5)) {
+			for (int i = 0; i < 25; i++) {
+				journal.append(jon, i, -i, i);
+			}
+			for (int i = 0; i < 5; i++) {
+				journal.append(ann, 10 + i, 20 + i, 100 + i);
+			}
+			journal.compact();
+
+			assertEquals(1, journal.getSegmentCount());
+			assertEquals(5, journal.count(jon));
+			assertEquals(24L, journal.latest(jon).timeVisited.getTime());
+		}
+
+		try (LocationJournal reopened = new LocationJournal(directory, 10, 5)) {
+			List<VisitedLocation> history = reopened.history(jon, 100);
+			assertEquals(5, history.size());
+			for (int i = 0; i < 5; i++) {
+				assertEquals(24 - i, history.get(i).location.latitude);
+				assertEquals(jon, history.get(i).userId);
+			}
+			assertEquals(14.0, reopened.latest(ann).location.latitude);
+
+			reopened.append(ann, 1, 2, 200);
+			assertEquals(2, reopened.getSegmentCount());
+			assertEquals(200L, reopened.latest(ann).timeVisited.getTime());
+			// La rotation lance un compactage en arrière-plan : on le force pour un résultat déterministe
+			reopened.compact();
+			assertEquals(5, reopened.count(ann));
+			assertEquals(200L, reopened.history(ann, 1).get(0).timeVisited.getTime());
+		}
+	}
+
+	/**
+	 * Vérifie que le compactage ne réécrit que les segments contenant des positions au-delà de la rétention.
+	 *
+	 * <p><b>Attendu :</b> le segment des anciennes positions de jon est réécrit ; celui d'ann et bob, sous la
+	 * rétention, garde son fichier d'origine ; un second compactage, sans nouvelle position, ne touche à rien.</p>
+	 */
+	@Test
+	public void locationJournalCompactionSkipsSegmentsWithinRetention() throws Exception {
+		Path directory = Files.createTempDirectory("tourguide-journal");
+		UUID jon = UUID.randomUUID();
+		UUID ann = UUID.randomUUID();
+		UUID bob = UUID.randomUUID();
+		try (LocationJournal journal = new LocationJournal(directory, 10, 5)) {
+			for (int i = 0; i < 10; i++) {
+				journal.append(jon, i, i, i);
+			}
+			Object jonSegment = fileKey(directory.resolve("locations-0.seg"));
+			for (int i = 0; i < 5; i++) {
+				journal.append(ann, i, i, 100 + i);
+				journal.append(bob, i, i, 200 + i);
+			}
+			Object annAndBobSegment = fileKey(directory.resolve("locations-1.seg"));
+			journal.append(jon, 10, 10, 10);
+			journal.compact();
+
+			assertEquals(5, journal.count(jon));
+			assertEquals(10L, journal.latest(jon).timeVisited.getTime());
+			assertEquals(5, journal.count(ann));
+			assertTrue(!jonSegment.equals(fileKey(directory.resolve("locations-0.seg"))));
+			assertEquals(annAndBobSegment, fileKey(directory.resolve("locations-1.seg")));
+
+			Object compactedJonSegment = fileKey(directory.resolve("locations-0.seg"));
+			assertEquals(0L, journal.compact());
+			assertEquals(compactedJonSegment, fileKey(directory.resolve("locations-0.seg")));
+		}
+	}
+
+	/**
+	 * Vérifie la réouverture d'un journal dont {@code users.idx} n'a pas reçu le dernier utilisateur (arrêt brutal).
+	 *
+	 * <p><b>Attendu :</b> pas d'erreur à l'ouverture ; le segment s'arrête au premier enregistrement de l'utilisateur
+	 * inconnu, la suite est effacée et les positions suivantes sont journalisées normalement.</p>
+	 */
+	@Test
+	public void locationJournalEndsSegmentAtUnindexedUser() throws Exception {
+		Path directory = Files.createTempDirectory("tourguide-journal");
+		UUID jon = UUID.randomUUID();
+		UUID ann = UUID.randomUUID();
+		try (LocationJournal journal = new LocationJournal(directory, 10, 0)) {
+			journal.append(jon, 1, 1, 1);
+			journal.append(jon, 2, 2, 2);
+			journal.append(ann, 3, 3, 3);
+			journal.append(jon, 4, 4, 4);
+		}
+		try (FileChannel users = FileChannel.open(directory.resolve("users.idx"), StandardOpenOption.WRITE)) {
+			users.truncate(16);
+		}
+
+		try (LocationJournal reopened = new LocationJournal(directory, 10, 0)) {
+			assertEquals(2, reopened.count(jon));
+			assertEquals(2L, reopened.latest(jon).timeVisited.getTime());
+			assertEquals(0, reopened.count(ann));
+			reopened.append(ann, 5, 5, 5);
+		}
+		try (LocationJournal reopened = new LocationJournal(directory, 10, 0)) {
+			assertEquals(2, reopened.count(jon));
+			assertEquals(1, reopened.count(ann));
+			assertEquals(5L, reopened.latest(ann).timeVisited.getTime());
+		}
+	}
+
+	private static Object fileKey(Path file) throws IOException {
+		return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+	}
+
+	/**
+	 * Vérifie la version asynchrone des attractions proches : les 5 demandes de points partent en parallèle.
+	 *
+	 * <p><b>Attendu :</b> avec un RewardCentral répondant en 200 ms, les 5 attractions (avec leurs points) arrivent
+	 * en bien moins que 5 × 200 ms, et l'appelant récupère le futur sans attendre.</p>
+	 */
+	@Test
+	public void nearbyAttractionsAsyncLookUpPointsConcurrently() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		AtomicInteger concurrentCalls = new AtomicInteger();
+		AtomicInteger maxConcurrentCalls = new AtomicInteger();
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+				sleep(200);
+				concurrentCalls.decrementAndGet();
+				return 42;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, slowRewardCentral);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		try {
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(33.8, -117.9), new Date()));
+
+			long started = System.nanoTime();
+			CompletableFuture<List<NearbyAttractionDto>> pending = tourGuideService.getNearbyAttractionsAsync(user);
+			long returnedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			List<NearbyAttractionDto> attractions = pending.get(5, TimeUnit.SECONDS);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+			assertEquals(5, attractions.size());
+			assertTrue(attractions.stream().allMatch(attraction -> attraction.rewardPoints == 42));
+			assertTrue(returnedMillis < 100, "Futur renvoyé après " + returnedMillis + " ms");
+			assertTrue(elapsedMillis < 600, "Points obtenus en " + elapsedMillis + " ms");
+			assertTrue(maxConcurrentCalls.get() > 1);
+			assertEquals(tourGuideService.getUserLocationAsync(user).join(), user.getLastVisitedLocation());
+		} finally {
+			tourGuideService.shutdown();
+		}
+	}
+
+	/**
+	 * Vérifie les résumés groupés : tous les utilisateurs ou une liste de noms, sans appel GPS.
+	 *
+	 * <p><b>Attendu :</b> un résumé par utilisateur, avec sa dernière position et le total de ses points ;
+	 * un utilisateur sans visite n'a pas de position, et les noms inconnus sont ignorés.</p>
+	 */
+	@Test
+	public void usersSummaryCoversAllOrSelectedUsers() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		try {
+			Attraction attraction = gpsUtil.getAttractions().get(0);
+			User jon = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+			User ann = new User(UUID.randomUUID(), "ann", "111", "ann@tourGuide.com");
+			tourGuideService.addUser(jon);
+			tourGuideService.addUser(ann);
+			jon.addToVisitedLocations(new VisitedLocation(jon.getUserId(), new Location(1, 2), new Date(1000)));
+			jon.addToVisitedLocations(new VisitedLocation(jon.getUserId(), new Location(3, 4), new Date(2000)));
+			jon.addUserReward(new UserReward(jon.getLastVisitedLocation(), attraction, 30));
+
+			Map<String, UserSummaryDto> all = new ConcurrentHashMap<>();
+			int count = tourGuideService.forEachUserSummary(null, summary -> all.put(summary.userName, summary));
+
+			assertEquals(2, count);
+			UserSummaryDto jonSummary = all.get("jon");
+			assertEquals(jon.getUserId(), jonSummary.userId);
+			assertEquals(3.0, (double) jonSummary.latitude);
+			assertEquals(new Date(2000), jonSummary.timeVisited);
+			assertEquals(1, jonSummary.rewardCount);
+			assertEquals(30, jonSummary.rewardPoints);
+			assertEquals(null, all.get("ann").latitude);
+			assertEquals(0, ann.getVisitedLocations().size());
+
+			List<String> selected = new ArrayList<>();
+			assertEquals(1, tourGuideService.forEachUserSummary(List.of("ann", "nobody"),
+					summary -> selected.add(summary.userName)));
+			assertEquals(List.of("ann"), selected);
+		} finally {
+			tourGuideService.shutdown();
+		}
+	}
+
+	/**
+	 * Vérifie le registre des utilisateurs : index par nom et par identifiant, parcours shard par shard.
+	 *
+	 * <p><b>Attendu :</b> chaque utilisateur est trouvé par son nom et son UUID, appartient au shard calculé à partir
+	 * de son identifiant, et les shards réunis contiennent exactement tous les utilisateurs ; un nom déjà
+	 * enregistré n'est pas ajouté une seconde fois.</p>
+	 */
+	@Test
+	public void userRegistryIndexesAndShardsUsers() {
+		UserRegistry registry = new UserRegistry(8);
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			User user = new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com");
+			users.add(user);
+			assertTrue(registry.add(user));
+		}
+		assertEquals(false, registry.add(new User(UUID.randomUUID(), "user0", "111", "other@tourGuide.com")));
+
+		assertEquals(200, registry.size());
+		assertEquals(200, registry.values().size());
+		for (User user : users) {
+			assertTrue(registry.get(user.getUserName()) == user);
+			assertTrue(registry.get(user.getUserId()) == user);
+		}
+		assertEquals(null, registry.get(UUID.randomUUID()));
+
+		Set<UUID> seen = new HashSet<>();
+		for (int shard = 0; shard < registry.getShardCount(); shard++) {
+			for (User user : registry.shard(shard)) {
+				assertEquals(shard, registry.shardOf(user.getUserId()));
+				assertTrue(seen.add(user.getUserId()));
+			}
+		}
+		assertEquals(200, seen.size());
+		AtomicInteger iterated = new AtomicInteger();
+		registry.forEach(user -> iterated.incrementAndGet());
+		assertEquals(200, iterated.get());
+		assertThrows(UnsupportedOperationException.class, () -> registry.shard(0).clear());
+	}
+
+	/**
+	 * Vérifie l'anneau de hachage cohérent : répartition équilibrée et déplacement minimal à l'ajout d'un nœud.
+	 *
+	 * <p><b>Attendu :</b> avec 3 nœuds, chacun possède environ un tiers des 30 000 noms ; après l'ajout d'un
+	 * quatrième nœud, seuls les noms attribués au nouveau nœud ont changé de propriétaire (environ un quart).</p>
+	 */
+	@Test
+	public void consistentHashRingBalancesAndMovesFewKeys() {
+		Map<String, String> nodes = new java.util.LinkedHashMap<>();
+		nodes.put("a", "http://a");
+		nodes.put("b", "http://b");
+		nodes.put("c", "http://c");
+		ConsistentHashRing ring = new ConsistentHashRing(nodes, NodePartition.DEFAULT_VIRTUAL_NODES);
+		nodes.put("d", "http://d");
+		ConsistentHashRing grown = new ConsistentHashRing(nodes, NodePartition.DEFAULT_VIRTUAL_NODES);
+
+		int keys = 30_000;
+		Map<String, Integer> owned = new ConcurrentHashMap<>();
+		int moved = 0;
+		for (int i = 0; i < keys; i++) {
+			String userName = "internalUser" + i;
+			String owner = ring.ownerOf(userName);
+			owned.merge(owner, 1, Integer::sum);
+			String newOwner = grown.ownerOf(userName);
+			if (!newOwner.equals(owner)) {
+				assertEquals("d", newOwner);
+				moved++;
+			}
+		}
+		for (String node : List.of("a", "b", "c")) {
+			assertTrue(Math.abs(owned.get(node) - keys / 3) < keys / 3 * 0.2, node + " possède " + owned.get(node));
+		}
+		assertTrue(moved > keys / 4 * 0.7 && moved < keys / 4 * 1.3, moved + " noms déplacés");
+	}
+
+	/**
+	 * Vérifie deux nœuds inscrits auprès d'un même coordinateur : chacun n'initialise que sa partition.
+	 *
+	 * <p><b>Attendu :</b> les utilisateurs de démo sont répartis sans recouvrement entre les deux nœuds, et chaque
+	 * nœud désigne l'autre comme propriétaire des utilisateurs qu'il ne possède pas.</p>
+	 */
+	@Test
+	public void nodesOwnDisjointPartitions() {
+		GpsUtil gpsUtil = new GpsUtil();
+		LocalCoordinator coordinator = new LocalCoordinator(NodePartition.DEFAULT_VIRTUAL_NODES);
+		NodePartition first = NodePartition.joining("node-1", "http://localhost:8081", coordinator);
+		NodePartition second = NodePartition.joining("node-2", "http://localhost:8082", coordinator);
+		InternalTestHelper.setInternalUserNumber(300);
+		TourGuideService node1 = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()),
+				TourGuideService.DEFAULT_LOCATION_HISTORY_SIZE, TourGuideService.DEFAULT_EXECUTION_MODE, first);
+		TourGuideService node2 = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()),
+				TourGuideService.DEFAULT_LOCATION_HISTORY_SIZE, TourGuideService.DEFAULT_EXECUTION_MODE, second);
+		try {
+			int size1 = node1.getUserRegistry().size();
+			int size2 = node2.getUserRegistry().size();
+			assertEquals(300, size1 + size2);
+			assertTrue(size1 > 100 && size2 > 100, size1 + " / " + size2);
+			for (int i = 0; i < 300; i++) {
+				String userName = "internalUser" + i;
+				boolean onFirst = node1.getUser(userName) != null;
+				assertTrue(onFirst != (node2.getUser(userName) != null));
+				assertEquals(onFirst ? null : "http://localhost:8082", first.ownerBaseUrl(userName));
+				assertEquals(onFirst ? "http://localhost:8081" : null, second.ownerBaseUrl(userName));
+			}
+
+			// Après l'arrivée d'un nœud, les anciennes copies locales ne sont plus résumées ici
+			NodePartition third = NodePartition.joining("node-3", "http://localhost:8083", coordinator);
+			List<String> names = new ArrayList<>();
+			int owned = 0;
+			for (int i = 0; i < 300; i++) {
+				names.add("internalUser" + i);
+				owned += first.owns("internalUser" + i) ? 1 : 0;
+			}
+			assertTrue(owned < size1);
+			assertEquals(owned, node1.forEachUserSummary(null, summary -> { }));
+			assertEquals(owned, node1.forEachUserSummary(names, summary -> { }));
+			Map<String, List<String>> remote = first.remoteOwners(names);
+			assertEquals(Set.of("http://localhost:8082", "http://localhost:8083"), remote.keySet());
+			assertEquals(300 - owned, remote.values().stream().mapToInt(List::size).sum());
+			third.close();
+
+			second.close();
+			assertTrue(first.owns("internalUser0") && first.owns("internalUser1"));
+		} finally {
+			node1.shutdown();
+			node2.shutdown();
+			first.close();
+		}
+	}
+
+	/**
+	 * Vérifie les replis face aux pannes (doublures de {@link FaultInjection}) : GpsUtil bloqué puis en échec,
+	 * TripPricer en échec.
+	 *
+	 * <p><b>Attendu :</b> un GpsUtil bloqué ne retient le suivi que le temps du délai, la dernière position connue
+	 * est renvoyée sans être ajoutée à l'historique ; après quelques échecs le circuit s'ouvre et les appels ne
+	 * parviennent plus à GpsUtil ; un utilisateur sans position échoue. Une fois GpsUtil rétabli, les appels d'essai
+	 * referment le circuit. Sans TripPricer, les offres précédentes de l'utilisateur sont renvoyées.</p>
+	 */
+	@Test
+	public void downstreamOutagesServeFallbacks() throws Exception {
+		String[] names = { "gpsTimeoutMillis", "circuitBreakerWindow", "circuitBreakerOpenMillis" };
+		String[] saved = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			saved[i] = System.getProperty(names[i]);
+		}
+		System.setProperty("gpsTimeoutMillis", "200");
+		System.setProperty("circuitBreakerWindow", "4");
+		System.setProperty("circuitBreakerOpenMillis", "300");
+		FaultInjection.Gps gpsUtil = new FaultInjection.Gps();
+		FaultInjection.Pricer tripPricer = new FaultInjection.Pricer();
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService;
+		try {
+			tourGuideService = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()));
+		} finally {
+			for (int i = 0; i < names.length; i++) {
+				if (saved[i] == null) {
+					System.clearProperty(names[i]);
+				} else {
+					System.setProperty(names[i], saved[i]);
+				}
+			}
+		}
+		tourGuideService.tracker.stopTracking();
+		tourGuideService.setTripPricer(tripPricer);
+		try {
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+			User newcomer = new User(UUID.randomUUID(), "jane", "000", "jane@tourGuide.com");
+			tourGuideService.addUser(user);
+			tourGuideService.addUser(newcomer);
+			VisitedLocation known = tourGuideService.trackUserLocation(user);
+
+			gpsUtil.faults.inject(FaultInjection.Fault.HANG);
+			long started = System.nanoTime();
+			assertTrue(tourGuideService.trackUserLocation(user) == known);
+			assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+			gpsUtil.faults.inject(FaultInjection.Fault.FAIL);
+			for (int i = 0; i < 3; i++) {
+				assertTrue(tourGuideService.trackUserLocationAsync(user).get(2, TimeUnit.SECONDS) == known);
+			}
+			CircuitBreaker breaker = tourGuideService.getGpsBreaker();
+			assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+			int calls = gpsUtil.faults.getCallCount();
+			assertTrue(tourGuideService.trackUserLocation(user) == known);
+			assertEquals(calls, gpsUtil.faults.getCallCount());
+			assertEquals(1, user.getVisitedLocations().size());
+			ExecutionException failure = assertThrows(ExecutionException.class,
+					() -> tourGuideService.trackUserLocationAsync(newcomer).get(2, TimeUnit.SECONDS));
+			assertTrue(failure.getCause() instanceof CircuitBreaker.CircuitOpenException);
+			assertEquals(1, breaker.getTimeoutCount());
+
+			gpsUtil.faults.heal();
+			TimeUnit.MILLISECONDS.sleep(350);
+			for (int i = 0; i < 3; i++) {
+				tourGuideService.trackUserLocation(user);
+			}
+			assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+			assertEquals(4, user.getVisitedLocations().size());
+
+			List<Provider> deals = tourGuideService.getTripDeals(user);
+			tripPricer.faults.inject(FaultInjection.Fault.FAIL);
+			tourGuideService.getTripDealsCache().clear();
+			assertEquals(deals, tourGuideService.getTripDeals(user));
+			assertThrows(IllegalStateException.class, () -> tourGuideService.getTripDeals(newcomer));
+		} finally {
+			gpsUtil.faults.heal();
+			tourGuideService.shutdown();
+		}
+	}
+
+	/**
+	 * Vérifie qu'une passe de suivi se termine quand GpsUtil ne répond plus, avec plus d'utilisateurs que d'appels
+	 * GPS simultanés.
+	 *
+	 * <p><b>Attendu :</b> les appels bloqués échouent au délai, ceux encore en attente d'une place échouent sans
+	 * être tentés ; la passe se termine rapidement et chaque utilisateur garde sa dernière position connue.</p>
+	 */
+	@Test
+	public void hungGpsDoesNotStallTrackingPass() throws Exception {
+		String[] names = { "gpsThreads", "gpsTimeoutMillis" };
+		String[] saved = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			saved[i] = System.getProperty(names[i]);
+		}
+		System.setProperty("gpsThreads", "4");
+		System.setProperty("gpsTimeoutMillis", "200");
+		FaultInjection.Gps gpsUtil = new FaultInjection.Gps();
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService;
+		try {
+			tourGuideService = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()));
+		} finally {
+			for (int i = 0; i < names.length; i++) {
+				if (saved[i] == null) {
+					System.clearProperty(names[i]);
+				} else {
+					System.setProperty(names[i], saved[i]);
+				}
+			}
+		}
+		tourGuideService.tracker.stopTracking();
+		try {
+			List<User> users = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				User user = new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com");
+				user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i, i), new Date()));
+				tourGuideService.addUser(user);
+				users.add(user);
+			}
+
+			gpsUtil.faults.inject(FaultInjection.Fault.HANG);
+			ExecutorService pass = Executors.newSingleThreadExecutor();
+			try {
+				long started = System.nanoTime();
+				pass.submit(tourGuideService::trackAllUsersLocationAsync).get(5, TimeUnit.SECONDS);
+				assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+			} finally {
+				pass.shutdownNow();
+			}
+			assertTrue(gpsUtil.faults.getCallCount() <= 4, "GpsUtil calls " + gpsUtil.faults.getCallCount());
+			for (int i = 0; i < users.size(); i++) {
+				assertEquals(1, users.get(i).getVisitedLocations().size());
+				assertEquals((double) i, users.get(i).getLastVisitedLocation().location.latitude);
+			}
+		} finally {
+			gpsUtil.faults.heal();
+			tourGuideService.shutdown();
+		}
+	}
+
+	/**
+	 * Vérifie que {@code /getNearbyAttractions} se replie quand RewardCentral ne répond plus, avec plus de demandes
+	 * de points que de workers.
+	 *
+	 * <p><b>Attendu :</b> les appels bloqués échouent au délai, les demandes encore dans la file du regroupement
+	 * échouent sans être tentées ; chaque liste arrive rapidement, avec les points de la récompense déjà acquise
+	 * pour l'attraction, sinon 0.</p>
+	 */
+	@Test
+	public void hungRewardCentralDoesNotStallNearbyAttractions() throws Exception {
+		String[] names = { "rewardsThreads", "rewardCentralTimeoutMillis" };
+		String[] saved = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			saved[i] = System.getProperty(names[i]);
+		}
+		System.setProperty("rewardsThreads", "2");
+		System.setProperty("rewardCentralTimeoutMillis", "300");
+		GpsUtil gpsUtil = new GpsUtil();
+		FaultInjection.Rewards rewardCentral = new FaultInjection.Rewards();
+		InternalTestHelper.setInternalUserNumber(0);
+		RewardsService rewardsService;
+		TourGuideService tourGuideService;
+		try {
+			rewardsService = new RewardsService(gpsUtil, rewardCentral);
+			tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		} finally {
+			for (int i = 0; i < names.length; i++) {
+				if (saved[i] == null) {
+					System.clearProperty(names[i]);
+				} else {
+					System.setProperty(names[i], saved[i]);
+				}
+			}
+		}
+		tourGuideService.tracker.stopTracking();
+		try {
+			List<User> users = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				User user = new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com");
+				user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(33.8, -117.9), new Date()));
+				users.add(user);
+			}
+			Attraction nearest = rewardsService.getNearestAttractions(new Location(33.8, -117.9), 1).get(0).attraction;
+			users.get(0).addUserReward(new UserReward(users.get(0).getLastVisitedLocation(), nearest, 77));
+
+			rewardCentral.faults.inject(FaultInjection.Fault.HANG);
+			long started = System.nanoTime();
+			List<CompletableFuture<List<NearbyAttractionDto>>> pending = new ArrayList<>();
+			users.forEach(user -> pending.add(tourGuideService.getNearbyAttractionsAsync(user)));
+			for (int i = 0; i < users.size(); i++) {
+				List<NearbyAttractionDto> attractions = pending.get(i).get(5, TimeUnit.SECONDS);
+				assertEquals(5, attractions.size());
+				for (NearbyAttractionDto attraction : attractions) {
+					int expected = (i == 0 && attraction.attractionName.equals(nearest.attractionName)) ? 77 : 0;
+					assertEquals(expected, attraction.rewardPoints);
+				}
+			}
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			assertTrue(elapsedMillis < 2000, "Listes servies en " + elapsedMillis + " ms");
+			assertTrue(rewardCentral.faults.getCallCount() <= 2, "RewardCentral calls " + rewardCentral.faults.getCallCount());
+		} finally {
+			rewardCentral.faults.heal();
+			tourGuideService.shutdown();
+		}
+	}
+
+	/**
+	 * Vérifie le découplage du suivi et du calcul des récompenses ({@link RewardQueue}).
+	 *
+	 * <p><b>Attendu :</b> RewardCentral bloqué, le suivi renvoie la position dès la réponse de GpsUtil. Pendant
+	 * l'évaluation en cours (une seule évaluation simultanée ici), les événements suivants de l'utilisateur sont
+	 * fusionnés en une seule attente, visible dans les métriques. Une fois RewardCentral rétabli, la récompense est
+	 * attribuée et la file se vide.</p>
+	 */
+	@Test
+	public void trackingPublishesCoalescedRewardEvents() throws Exception {
+		String concurrency = System.getProperty("rewardQueueConcurrency");
+		System.setProperty("rewardQueueConcurrency", "1");
+		GpsUtil gpsUtil = new GpsUtil();
+		FaultInjection.Rewards rewardCentral = new FaultInjection.Rewards();
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService;
+		try {
+			tourGuideService = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, rewardCentral));
+		} finally {
+			if (concurrency == null) {
+				System.clearProperty("rewardQueueConcurrency");
+			} else {
+				System.setProperty("rewardQueueConcurrency", concurrency);
+			}
+		}
+		tourGuideService.tracker.stopTracking();
+		MeterRegistry registry = new SimpleMeterRegistry();
+		tourGuideService.setMetrics(new TourGuideMetrics(registry));
+		RewardQueue queue = tourGuideService.getRewardQueue();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		tourGuideService.addUser(user);
+		CompletableFuture<Void> second;
+		rewardCentral.faults.inject(FaultInjection.Fault.HANG);
+		try {
+			long started = System.nanoTime();
+			tourGuideService.trackUserLocation(user);
+			assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+			while (queue.getEvaluatingCount() == 0 && System.nanoTime() < deadline) {
+				TimeUnit.MILLISECONDS.sleep(10);
+			}
+			assertEquals(1, queue.getEvaluatingCount());
+
+			tourGuideService.trackUserLocation(user);
+			second = queue.publish(user);
+			assertEquals(1, queue.getBacklog());
+			assertEquals(1, queue.getCoalescedCount());
+			assertEquals(3, queue.getPublishedCount());
+			assertEquals(1.0, registry.get("tourguide.rewards.queue").tag("state", "pending").gauge().value());
+			assertEquals(0, user.getUserRewards().size());
+		} finally {
+			rewardCentral.faults.heal();
+		}
+		try {
+			second.get(10, TimeUnit.SECONDS);
+			queue.settled(user).get(10, TimeUnit.SECONDS);
+			assertTrue(user.hasRewardFor(attraction.attractionName));
+			assertEquals(0, queue.getBacklog());
+			assertEquals(0, queue.getEvaluatingCount());
+			assertEquals(0, queue.getDroppedCount());
+		} finally {
+			tourGuideService.shutdown();
+		}
+	}
+
+	/**
+	 * Vérifie qu'un utilisateur n'est jamais évalué deux fois en même temps par la {@link RewardQueue}, même avec
+	 * plusieurs évaluations simultanées permises.
+	 *
+	 * <p><b>Attendu :</b> pendant la première évaluation de jon, un nouvel événement est retenu (puis les suivants s'y
+	 * fusionnent) au lieu de partir en parallèle ; il est évalué dès la fin de la première.</p>
+	 */
+	@Test
+	public void rewardQueueEvaluatesEachUserOnceAtATime() throws Exception {
+		List<CompletableFuture<Void>> evaluations = new CopyOnWriteArrayList<>();
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral()) {
+			@Override
+			public CompletableFuture<Void> calculateRewardsAsync(User user) {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				CompletableFuture<Void> evaluation = new CompletableFuture<>();
+				evaluations.add(evaluation);
+				return evaluation.whenComplete((ignored, failure) -> running.decrementAndGet());
+			}
+		};
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			RewardQueue queue = new RewardQueue(rewardsService, executor, 10, 4);
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+			CompletableFuture<Void> first = queue.publish(user);
+			awaitSize(evaluations, 1);
+			CompletableFuture<Void> second = queue.publish(user);
+			TimeUnit.MILLISECONDS.sleep(100);
+			assertTrue(queue.publish(user) == second);
+			assertEquals(1, evaluations.size());
+			assertEquals(1, queue.getBacklog());
+			assertEquals(1, queue.getEvaluatingCount());
+
+			evaluations.get(0).complete(null);
+			first.get(2, TimeUnit.SECONDS);
+			awaitSize(evaluations, 2);
+			assertEquals(0, queue.getBacklog());
+			evaluations.get(1).complete(null);
+			second.get(2, TimeUnit.SECONDS);
+			queue.settled(user).get(2, TimeUnit.SECONDS);
+			assertEquals(1, maxRunning.get());
+			assertEquals(2, evaluations.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void awaitSize(List<?> list, int size) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+		while (list.size() < size && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		assertEquals(size, list.size());
+	}
 }
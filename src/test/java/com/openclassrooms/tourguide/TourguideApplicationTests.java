@@ -1,13 +1,167 @@
 package com.openclassrooms.tourguide;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.cluster.LocalCoordinator;
+import com.openclassrooms.tourguide.cluster.NodePartition;
+import com.openclassrooms.tourguide.cluster.PartitionForwardingFilter;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.user.User;
 
 @SpringBootTest
 class TourguideApplicationTests {
 
+	private static final int USERS = 40;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final HttpClient client = HttpClient.newHttpClient();
+
 	@Test
 	void contextLoads() {
 	}
 
+	/**
+	 * Deux nœuds dans la même JVM, sur des ports aléatoires, inscrits auprès du coordinateur partagé.
+	 *
+	 * <p><b>Attendu :</b> chaque nœud publie son port effectif ; une requête sur un utilisateur de l'autre nœud lui
+	 * est transmise et renvoie ses données ; une requête déjà transmise est servie localement (le premier nœud,
+	 * démarré seul, garde une ancienne copie de tous les utilisateurs) ; un propriétaire injoignable donne un 502 ;
+	 * le résumé de tous les utilisateurs, ou d'une liste de noms, est complété auprès de l'autre nœud.</p>
+	 */
+	@Test
+	void partitionedNodesForwardRequestsToOwners() throws Exception {
+		InternalTestHelper.setInternalUserNumber(USERS);
+		ConfigurableApplicationContext first = startNode("spring-node-1");
+		ConfigurableApplicationContext second = null;
+		try {
+			second = startNode("spring-node-2");
+			TourGuideService firstService = first.getBean(TourGuideService.class);
+			TourGuideService secondService = second.getBean(TourGuideService.class);
+			NodePartition partition = firstService.getPartition();
+			String firstUrl = baseUrl(first);
+			assertEquals(firstUrl, partition.getRing().getBaseUrl("spring-node-1"));
+			assertEquals(baseUrl(second), partition.getRing().getBaseUrl("spring-node-2"));
+
+			String local = null;
+			String remote = null;
+			for (int i = 0; i < USERS; i++) {
+				String userName = "internalUser" + i;
+				if (partition.owns(userName)) {
+					local = (local == null) ? userName : local;
+				} else {
+					remote = (remote == null) ? userName : remote;
+				}
+			}
+
+			HttpResponse<String> forwarded = get(firstUrl + "/getLocation?userName=" + remote, null);
+			assertEquals(200, forwarded.statusCode());
+			assertTrue(visited(secondService.getUser(remote), latitude(forwarded.body())));
+
+			HttpResponse<String> loop = get(firstUrl + "/getLocation?userName=" + remote, "spring-node-2");
+			assertEquals(200, loop.statusCode());
+			assertTrue(visited(firstService.getUser(remote), latitude(loop.body())));
+
+			String dead = "spring-node-dead";
+			LocalCoordinator.shared().join(dead, "http://localhost:" + unusedPort());
+			try {
+				String unreachable = null;
+				for (int i = 0; unreachable == null; i++) {
+					if (dead.equals(partition.getRing().ownerOf("unreachableUser" + i))) {
+						unreachable = "unreachableUser" + i;
+					}
+				}
+				assertEquals(502, get(firstUrl + "/getLocation?userName=" + unreachable, null).statusCode());
+			} finally {
+				LocalCoordinator.shared().leave(dead);
+			}
+
+			List<JsonNode> all = summaries(get(firstUrl + "/getUsersSummary", null));
+			Set<String> names = new HashSet<>();
+			all.forEach(summary -> names.add(summary.get("userName").asText()));
+			assertEquals(USERS, all.size());
+			assertEquals(USERS, names.size());
+
+			List<JsonNode> selected = summaries(
+					get(firstUrl + "/getUsersSummary?userNames=" + local + "," + remote, null));
+			assertEquals(2, selected.size());
+			JsonNode remoteSummary = selected.get(1);
+			assertEquals(remote, remoteSummary.get("userName").asText());
+			assertTrue(visited(secondService.getUser(remote), remoteSummary.get("latitude").asDouble()));
+		} finally {
+			if (second != null) {
+				second.close();
+			}
+			first.close();
+		}
+	}
+
+	private static ConfigurableApplicationContext startNode(String nodeId) {
+		return new SpringApplicationBuilder(TourguideApplication.class)
+				.properties("server.port=0", "tourguide.cluster.node-id=" + nodeId)
+				.run();
+	}
+
+	private static String baseUrl(ConfigurableApplicationContext context) {
+		return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+	}
+
+	private static int unusedPort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private HttpResponse<String> get(String url, String forwardedBy) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30));
+		if (forwardedBy != null) {
+			request.header(PartitionForwardingFilter.FORWARDED_HEADER, forwardedBy);
+		}
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private double latitude(String visitedLocation) throws Exception {
+		return objectMapper.readTree(visitedLocation).get("location").get("latitude").asDouble();
+	}
+
+	private List<JsonNode> summaries(HttpResponse<String> response) throws Exception {
+		assertEquals(200, response.statusCode());
+		List<JsonNode> summaries = new ArrayList<>();
+		for (String line : response.body().split("\n")) {
+			if (!line.isBlank()) {
+				summaries.add(objectMapper.readTree(line));
+			}
+		}
+		return summaries;
+	}
+
+	// Position présente dans l'historique de cette copie de l'utilisateur
+	private static boolean visited(User user, double latitude) {
+		for (VisitedLocation visit : user.getVisitedLocations()) {
+			if (visit.location.latitude == latitude) {
+				return true;
+			}
+		}
+		return false;
+	}
 }